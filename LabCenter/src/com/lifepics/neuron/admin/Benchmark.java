@@ -0,0 +1,122 @@
+/*
+ * Benchmark.java
+ */
+
+package com.lifepics.neuron.admin;
+
+import com.lifepics.neuron.core.Text;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Timing helpers for the command-line benchmarks.  To compare before
+ * and after, build the tree at each revision and run the same benchmark
+ * against both, on the same machine, with nothing else going on.
+ */
+
+public class Benchmark {
+
+   // the measurement is the simple kind: run the task for a while
+   // to let the JIT settle, then count how many runs fit in a fixed
+   // time.  repeat that a few times and keep the best, since the
+   // noise from GC and other processes only ever makes things slower.
+
+// --- constants ---
+
+   private static final long WARMUP  = 2000; // millis
+   private static final long MEASURE = 1000; // millis per round
+   private static final int  ROUNDS  = 5;
+
+// --- task interface ---
+
+   public interface Task {
+      void run() throws Exception;
+   }
+
+// --- methods ---
+
+   /**
+    * Measure a task, print the result, and return it.
+    *
+    * @return The best time for one run, in microseconds.
+    */
+   public static double measure(String name, Task task) throws Exception {
+
+      run(task,WARMUP);
+
+      double best = Double.MAX_VALUE;
+      for (int i=0; i<ROUNDS; i++) {
+         double t = run(task,MEASURE);
+         if (t < best) best = t;
+      }
+
+      System.out.println(Text.get(Benchmark.class,"s1",new Object[] { name, format(best) }));
+      return best;
+   }
+
+   /**
+    * @return The average time for one run, in microseconds.
+    */
+   private static double run(Task task, long millis) throws Exception {
+      long count = 0;
+      long start = System.currentTimeMillis();
+      long end = start + millis;
+      long now;
+      do {
+         task.run();
+         count++;
+         now = System.currentTimeMillis();
+      } while (now < end);
+      return (now - start) * 1000.0 / count;
+   }
+
+   /**
+    * Time a single run of a task, for things too slow to repeat.
+    *
+    * @return The time in milliseconds.
+    */
+   public static long once(Task task) throws Exception {
+      long start = System.currentTimeMillis();
+      task.run();
+      return System.currentTimeMillis() - start;
+   }
+
+   public static String format(double d) {
+      return Long.toString(Math.round(d * 10) / 10) + "." + Long.toString(Math.round(d * 10) % 10);
+   }
+
+   /**
+    * Get the heap in use, after collecting as much garbage as we can.
+    */
+   public static long usedMemory() {
+      Runtime r = Runtime.getRuntime();
+      long used = Long.MAX_VALUE;
+      for (int i=0; i<5; i++) { // gc is only a hint, so try a few times
+         System.gc();
+         try {
+            Thread.sleep(100);
+         } catch (InterruptedException e) {
+            // won't happen
+         }
+         long temp = r.totalMemory() - r.freeMemory();
+         if (temp < used) used = temp;
+      }
+      return used;
+   }
+
+// --- null stream ---
+
+   /**
+    * A stream that throws away what's written to it, so that we time
+    * the writing and not the disk.
+    */
+   public static class NullStream extends OutputStream {
+      public void close() throws IOException {}
+      public void flush() throws IOException {}
+      public void write(byte[] b                  ) throws IOException {}
+      public void write(byte[] b, int off, int len) throws IOException {}
+      public void write(int b                     ) throws IOException {}
+   }
+
+}
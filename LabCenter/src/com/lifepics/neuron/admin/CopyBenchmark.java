@@ -0,0 +1,113 @@
+/*
+ * CopyBenchmark.java
+ */
+
+package com.lifepics.neuron.admin;
+
+import com.lifepics.neuron.core.Convert;
+import com.lifepics.neuron.core.Text;
+import com.lifepics.neuron.misc.FileUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * A command-line benchmark for the single-file copy functions,
+ * from 1K up to 500M, both the channel copy that file-to-file
+ * copies use and the buffered stream copy that everything else uses.
+ * The test files go in the given directory and are removed at the end.
+ */
+
+public class CopyBenchmark {
+
+   // the small sizes repeat for a while, like the other benchmarks.
+   // the large ones take long enough that we just run them a few times
+   // and keep the best.  either way, each run includes deleting the
+   // copy, since FileUtil won't copy over an existing file.
+
+// --- constants ---
+
+   private static final long K = 1024;
+   private static final long M = 1024 * K;
+
+   private static final long[] SIZES = { K, 64*K, M, 64*M, 500*M };
+   private static final long REPEAT_LIMIT = M; // larger sizes run only a few times
+   private static final int  TRIES = 3;
+
+// --- main ---
+
+   public static void main(String[] args) throws Exception {
+
+      if (args.length < 1) {
+         System.out.println(Text.get(CopyBenchmark.class,"s1"));
+         return;
+      }
+
+      File dir = new File(args[0]);
+      long max = (args.length > 1) ? Convert.toInt(args[1]) * M : Long.MAX_VALUE;
+
+      final File src  = new File(dir,"benchmark.src");
+      final File dest = new File(dir,"benchmark.dest");
+
+      try {
+         for (int i=0; i<SIZES.length && SIZES[i] <= max; i++) {
+
+            create(src,SIZES[i]);
+            String size = describe(SIZES[i]);
+
+            run(Text.get(CopyBenchmark.class,"s2",new Object[] { size }),SIZES[i],new Benchmark.Task() { public void run() throws Exception {
+               FileUtil.makeNotExists(dest);
+               FileUtil.copy(dest,src);
+            } });
+
+            run(Text.get(CopyBenchmark.class,"s3",new Object[] { size }),SIZES[i],new Benchmark.Task() { public void run() throws Exception {
+               FileUtil.makeNotExists(dest);
+               FileUtil.copy(dest,new FileInputStream(src)); // closed by copy
+            } });
+         }
+      } finally {
+         src.delete();
+         dest.delete();
+      }
+   }
+
+   private static void run(String name, long size, Benchmark.Task task) throws Exception {
+      if (size <= REPEAT_LIMIT) {
+         Benchmark.measure(name,task);
+      } else {
+         long best = Long.MAX_VALUE;
+         for (int i=0; i<TRIES; i++) {
+            long t = Benchmark.once(task);
+            if (t < best) best = t;
+         }
+         System.out.println(Text.get(CopyBenchmark.class,"s4",new Object[] { name, Convert.fromLong(best) }));
+      }
+   }
+
+   /**
+    * Make a file of the given size, with random contents so that
+    * nothing along the way can take a shortcut.
+    */
+   private static void create(File file, long size) throws IOException {
+      byte[] b = new byte[(int) Math.min(size,M)];
+      new Random(size).nextBytes(b);
+
+      OutputStream stream = new FileOutputStream(file);
+      try {
+         for (long done = 0; done < size; done += b.length) {
+            stream.write(b,0,(int) Math.min(b.length,size-done));
+         }
+      } finally {
+         stream.close();
+      }
+   }
+
+   private static String describe(long size) {
+      return (size >= M) ? Convert.fromLong(size / M) + "M" : Convert.fromLong(size / K) + "K";
+   }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * FootprintReport.java
+ */
+
+package com.lifepics.neuron.admin;
+
+import com.lifepics.neuron.core.Convert;
+import com.lifepics.neuron.core.Text;
+import com.lifepics.neuron.dendron.Order;
+import com.lifepics.neuron.object.CopyUtil;
+import com.lifepics.neuron.object.XML;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * A command-line report of how much heap the orders take up,
+ * once as loaded and once more as copied, the way the tables
+ * copy them into views.  Point it at an order directory.
+ */
+
+public class FootprintReport {
+
+   // an order directory usually has only a few orders in it, fewer than
+   // a busy lab keeps in its table, so we can load each one several times.
+   // every load makes its own objects, so it's the same as having that many
+   // orders, except that the repeated values are more alike than usual.
+   // that favors interning a bit, so compare against the same directory
+   // and repeat count at each revision, never against real numbers.
+   //
+   // the copies share their strings with the originals, since strings
+   // are immutable, so the second number is mostly the structure objects.
+
+// --- constants ---
+
+   private static final int REPEAT_DEFAULT = 50;
+
+// --- main ---
+
+   public static void main(String[] args) throws Exception {
+
+      if (args.length < 1) {
+         System.out.println(Text.get(FootprintReport.class,"s1"));
+         return;
+      }
+
+      File[] files = new File(args[0]).listFiles();
+      int repeat = (args.length > 1) ? Convert.toInt(args[1]) : REPEAT_DEFAULT;
+
+      LinkedList orders = new LinkedList();
+      load(orders,files);
+      CopyUtil.copy((Order) orders.getFirst());
+      orders.clear();
+      // one round that doesn't count, so that the static tables and
+      // caches that every load and copy uses are already there
+
+      long base = Benchmark.usedMemory();
+
+      for (int r=0; r<repeat; r++) load(orders,files);
+
+      long loaded = Benchmark.usedMemory();
+      report("s2",orders.size(),loaded - base);
+
+      LinkedList copies = new LinkedList();
+      Iterator i = orders.iterator();
+      while (i.hasNext()) {
+         copies.add(CopyUtil.copy((Order) i.next()));
+      }
+
+      long copied = Benchmark.usedMemory();
+      report("s3",copies.size(),copied - loaded);
+
+      if (orders.size() != copies.size()) throw new Exception(); // keep both lists alive until here
+   }
+
+   private static void load(LinkedList orders, File[] files) throws Exception {
+      for (int i=0; i<files.length; i++) {
+         if ( ! files[i].getName().endsWith(".xml") ) continue;
+         orders.add(XML.loadFile(files[i],new Order(),"Order"));
+      }
+   }
+
+   private static void report(String key, int count, long bytes) {
+      long each = (count == 0) ? 0 : bytes / count;
+      System.out.println(Text.get(FootprintReport.class,key,new Object[] { Convert.fromInt(count), Convert.fromLong(bytes), Convert.fromLong(each) }));
+   }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * LoopbackBenchmark.java
+ */
+
+package com.lifepics.neuron.admin;
+
+import com.lifepics.neuron.core.Convert;
+import com.lifepics.neuron.core.Text;
+import com.lifepics.neuron.net.GetTransaction;
+import com.lifepics.neuron.net.NetUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * A command-line benchmark for HTTP requests, run as GET transactions
+ * against a small server on the loopback interface, so that the numbers
+ * show our own per-request cost and not the network's.  It also reports
+ * how many connections the requests needed.
+ */
+
+public class LoopbackBenchmark {
+
+   // the server is the least HTTP that HTTPClient will talk to.  it reads
+   // the request header, ignores everything but the connection header,
+   // and sends back a fixed body with a content length, so the connection
+   // can stay open if the client wants it to.
+   //
+   // loopback connections are nearly free, which is the worst case for
+   // keep-alive.  to get an idea of a real line, give an accept delay,
+   // which the server sleeps on every new connection, like a handshake.
+   //
+   // the server sets TCP_NODELAY, as real servers do.  without it, a reused
+   // socket can stall on delayed ACKs, and the numbers mean nothing.
+
+// --- constants ---
+
+   private static final int SIZE_DEFAULT = 20; // K
+   private static final int TIMEOUT = 30000; // millis
+
+// --- main ---
+
+   public static void main(String[] args) throws Exception {
+
+      if (args.length > 2) {
+         System.out.println(Text.get(LoopbackBenchmark.class,"s1"));
+         return;
+      }
+
+      int size = (args.length > 0) ? Convert.toInt(args[0]) : SIZE_DEFAULT;
+      long delay = (args.length > 1) ? Convert.toInt(args[1]) : 0;
+
+      final Server server = new Server(new byte[size*1024],delay);
+      Thread thread = new Thread(server);
+      thread.setDaemon(true);
+      thread.start();
+
+      NetUtil.setDefaultTimeout(TIMEOUT);
+
+      final Get get = new Get("http://127.0.0.1:" + server.getPort() + "/",size*1024);
+      final int[] requests = new int[1];
+
+      Benchmark.measure(Text.get(LoopbackBenchmark.class,"s2",new Object[] { Convert.fromInt(size) }),new Benchmark.Task() { public void run() throws Exception {
+         get.runInline();
+         requests[0]++;
+      } });
+
+      System.out.println(Text.get(LoopbackBenchmark.class,"s3",new Object[] { Convert.fromInt(server.getConnections()), Convert.fromInt(requests[0]) }));
+
+      server.close();
+   }
+
+// --- transaction ---
+
+   private static class Get extends GetTransaction {
+
+      private String url;
+      private int size;
+
+      public Get(String url, int size) { this.url = url; this.size = size; }
+
+      public String describe() { return Text.get(LoopbackBenchmark.class,"s4"); }
+      protected String getFixedURL() { return url; }
+
+      protected boolean receive(InputStream inputStream) throws Exception {
+         byte[] b = new byte[8192];
+         int total = 0;
+         int n;
+         while ((n = inputStream.read(b)) != -1) total += n;
+         if (total != size) throw new IOException(Text.get(LoopbackBenchmark.class,"e1",new Object[] { Convert.fromInt(total), Convert.fromInt(size) }));
+         return true;
+      }
+   }
+
+// --- server ---
+
+   private static class Server implements Runnable {
+
+      private ServerSocket serverSocket;
+      private byte[] body;
+      private long delay;
+      private int connections;
+
+      public Server(byte[] body, long delay) throws IOException {
+         serverSocket = new ServerSocket(0,50,InetAddress.getByName("127.0.0.1"));
+         this.body = body;
+         this.delay = delay;
+         connections = 0;
+      }
+
+      public int getPort() { return serverSocket.getLocalPort(); }
+      public synchronized int getConnections() { return connections; }
+
+      public void close() throws IOException { serverSocket.close(); }
+
+      public void run() {
+         try {
+            while (true) {
+               final Socket socket = serverSocket.accept();
+               synchronized (this) { connections++; }
+
+               Thread thread = new Thread(new Runnable() { public void run() { handle(socket); } });
+               thread.setDaemon(true);
+               thread.start();
+            }
+         } catch (IOException e) {
+            // closed, we're done
+         }
+      }
+
+      private void handle(Socket socket) {
+         try {
+            try {
+               socket.setTcpNoDelay(true);
+               if (delay > 0) Thread.sleep(delay);
+
+               InputStream in = new BufferedInputStream(socket.getInputStream());
+               OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+               while (true) {
+                  boolean close = false;
+
+                  String line = readLine(in);
+                  if (line == null) break; // client closed the connection
+                  while ((line = readLine(in)) != null && line.length() > 0) {
+                     if (line.toLowerCase().startsWith("connection:") && line.toLowerCase().indexOf("close") != -1) close = true;
+                  }
+
+                  String header = "HTTP/1.1 200 OK\r\n"
+                                + "Content-Type: application/octet-stream\r\n"
+                                + "Content-Length: " + body.length + "\r\n"
+                                + (close ? "Connection: close\r\n" : "")
+                                + "\r\n";
+                  out.write(header.getBytes("US-ASCII"));
+                  out.write(body);
+                  out.flush();
+
+                  if (close) break;
+               }
+            } finally {
+               socket.close();
+            }
+         } catch (Exception e) {
+            // the client went away, that's fine
+         }
+      }
+
+      /**
+       * Read one line of the request header, without the line ending.
+       *
+       * @return The line, or null at end of stream.
+       */
+      private static String readLine(InputStream in) throws IOException {
+         StringBuffer buffer = new StringBuffer();
+         int c;
+         while ((c = in.read()) != -1) {
+            if (c == '\n') return buffer.toString();
+            if (c != '\r') buffer.append((char) c);
+         }
+         return (buffer.length() > 0) ? buffer.toString() : null;
+      }
+   }
+
+}
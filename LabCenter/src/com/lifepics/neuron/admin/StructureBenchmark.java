@@ -0,0 +1,86 @@
+/*
+ * StructureBenchmark.java
+ */
+
+package com.lifepics.neuron.admin;
+
+import com.lifepics.neuron.core.Text;
+import com.lifepics.neuron.dendron.Order;
+import com.lifepics.neuron.object.CopyUtil;
+import com.lifepics.neuron.object.XML;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+
+import org.w3c.dom.Document;
+
+/**
+ * A command-line benchmark for the structure functions that the tables
+ * use the most, copy, equals, store, and load, on a real order file.
+ * Pick a large order, since that's where the time goes.
+ */
+
+public class StructureBenchmark {
+
+   // the last two lines read and write the same order as a plain document,
+   // which is what the config and the other DOM code still does.  those go
+   // straight through a parser and an identity transformer, so they show
+   // what it costs to get one, without the structure work on top.
+
+   public static void main(String[] args) throws Exception {
+
+      if (args.length < 1) {
+         System.out.println(Text.get(StructureBenchmark.class,"s1"));
+         return;
+      }
+
+      final Order order = (Order) XML.loadFile(new File(args[0]),new Order(),"Order");
+      final Order other = (Order) CopyUtil.copy(order);
+
+      Benchmark.measure(Text.get(StructureBenchmark.class,"s2"),new Benchmark.Task() { public void run() throws Exception {
+         CopyUtil.copy(order);
+      } });
+
+      Benchmark.measure(Text.get(StructureBenchmark.class,"s3"),new Benchmark.Task() { public void run() throws Exception {
+         if ( ! order.equals(other) ) throw new Exception();
+      } });
+
+      final Benchmark.NullStream stream = new Benchmark.NullStream();
+      Benchmark.measure(Text.get(StructureBenchmark.class,"s4"),new Benchmark.Task() { public void run() throws Exception {
+         XML.storeStream(stream,order,"Order");
+      } });
+
+      final byte[] data = read(new File(args[0]));
+      Benchmark.measure(Text.get(StructureBenchmark.class,"s5"),new Benchmark.Task() { public void run() throws Exception {
+         XML.loadStream(new ByteArrayInputStream(data),new Order(),"Order");
+      } });
+
+      Benchmark.measure(Text.get(StructureBenchmark.class,"s6"),new Benchmark.Task() { public void run() throws Exception {
+         XML.readStream(new ByteArrayInputStream(data));
+      } });
+
+      final Document doc = XML.readStream(new ByteArrayInputStream(data));
+      Benchmark.measure(Text.get(StructureBenchmark.class,"s7"),new Benchmark.Task() { public void run() throws Exception {
+         XML.writeStream(stream,doc);
+      } });
+   }
+
+   /**
+    * Read the whole file into memory, so that we time the parsing and not the disk.
+    */
+   private static byte[] read(File file) throws Exception {
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      FileInputStream stream = new FileInputStream(file);
+      try {
+         byte[] b = new byte[8192];
+         int n;
+         while ((n = stream.read(b)) != -1) buffer.write(b,0,n);
+      } finally {
+         stream.close();
+      }
+      return buffer.toByteArray();
+   }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * TableContentionBenchmark.java
+ */
+
+package com.lifepics.neuron.admin;
+
+import com.lifepics.neuron.core.Convert;
+import com.lifepics.neuron.core.Text;
+import com.lifepics.neuron.core.ValidationException;
+import com.lifepics.neuron.dendron.Job;
+import com.lifepics.neuron.dendron.JobAdapter;
+import com.lifepics.neuron.object.CopyUtil;
+import com.lifepics.neuron.object.XML;
+import com.lifepics.neuron.table.AlternatingFileStorage;
+import com.lifepics.neuron.table.Storage;
+import com.lifepics.neuron.table.Table;
+import com.lifepics.neuron.table.TableAdapter;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A command-line benchmark for one table hammered by many threads at
+ * once, the way the job table is by the job, download, and UI threads.
+ * It reports update throughput against the number of threads.  Point
+ * it at a job file and at an empty directory on the disk you care about.
+ */
+
+public class TableContentionBenchmark {
+
+   // every thread updates its own few jobs, so the threads never wait
+   // on each other's object locks, only on the table.  that's the case
+   // where the table monitor matters.  if the storage writes are made
+   // under the monitor, they queue up one at a time even though they're
+   // to different files, and the throughput stays flat as threads are
+   // added.  if not, it should climb until the disk is the limit.
+   //
+   // a write that only reaches the file cache costs nothing but CPU, so
+   // on a one-CPU machine the lock makes no difference.  to get an idea
+   // of a real disk, where a write can block for a while, give a write
+   // delay, which every store and delete sleeps for before it goes on.
+   //
+   // every update changes a field, so that none of them is skipped as
+   // unchanged.  the table isn't attached to a transaction log, so the
+   // writes go straight to the files, and the numbers can be compared
+   // against revisions from before there was a log.
+
+// --- constants ---
+
+   private static final int[] THREADS = { 1, 2, 4, 8, 12, 16 };
+   private static final int JOBS_PER_THREAD = 4;
+   private static final int UPDATES_PER_THREAD = 25; // per run
+
+   private static final String SUFFIX = ".xml";
+
+// --- main ---
+
+   public static void main(String[] args) throws Exception {
+
+      if (args.length < 2 || args.length > 3) {
+         System.out.println(Text.get(TableContentionBenchmark.class,"s1"));
+         return;
+      }
+
+      Job sample = (Job) XML.loadFile(new File(args[0]),new Job(),"Job");
+
+      File dir = new File(args[1]);
+      if ( ! dir.exists() && ! dir.mkdirs() ) throw new Exception(Text.get(TableContentionBenchmark.class,"e1",new Object[] { dir.getPath() }));
+      if (dir.list().length != 0) throw new Exception(Text.get(TableContentionBenchmark.class,"e2",new Object[] { dir.getPath() }));
+
+      long delay = (args.length > 2) ? Convert.toInt(args[2]) : 0;
+
+      final Table table = new Table(new JobAdapter(),new SlowStorage(new AlternatingFileStorage(dir,SUFFIX),delay),null);
+
+      int count = THREADS[THREADS.length-1] * JOBS_PER_THREAD;
+      for (int i=0; i<count; i++) {
+         Job job = (Job) CopyUtil.copy(sample);
+         job.jobID = i+1;
+         table.release(job,table.insert(job));
+      }
+
+      for (int i=0; i<THREADS.length; i++) {
+         final int n = THREADS[i];
+
+         double t = Benchmark.measure(Text.get(TableContentionBenchmark.class,"s2",new Object[] { Convert.fromInt(n) }),new Benchmark.Task() { public void run() throws Exception {
+            hammer(table,n);
+         } });
+
+         double rate = n * UPDATES_PER_THREAD * 1000000.0 / t;
+         System.out.println(Text.get(TableContentionBenchmark.class,"s3",new Object[] { Convert.fromInt(n), Benchmark.format(rate) }));
+      }
+
+      for (int i=0; i<count; i++) {
+         String key = Convert.fromInt(i+1);
+         table.delete(key,table.lock(key));
+      }
+   }
+
+// --- threads ---
+
+   /**
+    * Run one round of updates on several threads, and wait for all of them.
+    */
+   private static void hammer(final Table table, int n) throws Exception {
+
+      Thread[] threads = new Thread[n];
+      final Exception[] failures = new Exception[n];
+
+      for (int i=0; i<n; i++) {
+         final int index = i;
+         threads[i] = new Thread(new Runnable() { public void run() {
+            try {
+               work(table,index);
+            } catch (Exception e) {
+               failures[index] = e;
+            }
+         } });
+         threads[i].start();
+      }
+
+      for (int i=0; i<n; i++) {
+         threads[i].join();
+         if (failures[i] != null) throw failures[i];
+      }
+   }
+
+   private static int counter = 0;
+
+   private static synchronized String next() {
+      return Convert.fromInt(counter++);
+   }
+
+   private static void work(Table table, int index) throws Exception {
+      for (int u=0; u<UPDATES_PER_THREAD; u++) {
+         String key = Convert.fromInt(index * JOBS_PER_THREAD + (u % JOBS_PER_THREAD) + 1);
+
+         Object lock = table.lock(key);
+         try {
+            Job job = (Job) table.get(key);
+            job.lastError = next();
+            table.update(job,lock);
+         } finally {
+            table.release(key,lock);
+         }
+      }
+   }
+
+// --- storage ---
+
+   private static class SlowStorage implements Storage {
+
+      private Storage storage;
+      private long delay;
+
+      public SlowStorage(Storage storage, long delay) { this.storage = storage; this.delay = delay; }
+
+      public String[] list() { return storage.list(); }
+
+      public Object load(String key, TableAdapter adapter) throws IOException, ValidationException {
+         return storage.load(key,adapter);
+      }
+
+      public void store(String key, Object o, TableAdapter adapter) throws IOException {
+         storage.store(key,o,adapter);
+         sleep();
+      }
+
+      public void delete(String key) throws IOException {
+         storage.delete(key);
+         sleep();
+      }
+
+      private void sleep() {
+         if (delay == 0) return;
+         try {
+            Thread.sleep(delay);
+         } catch (InterruptedException e) {
+            // won't happen
+         }
+      }
+   }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * TableViewBenchmark.java
+ */
+
+package com.lifepics.neuron.admin;
+
+import com.lifepics.neuron.core.Convert;
+import com.lifepics.neuron.core.Text;
+import com.lifepics.neuron.core.ValidationException;
+import com.lifepics.neuron.dendron.Job;
+import com.lifepics.neuron.dendron.JobAdapter;
+import com.lifepics.neuron.dendron.JobSelectors;
+import com.lifepics.neuron.dendron.JobUtil;
+import com.lifepics.neuron.meta.Selector;
+import com.lifepics.neuron.object.CopyUtil;
+import com.lifepics.neuron.object.XML;
+import com.lifepics.neuron.table.Storage;
+import com.lifepics.neuron.table.Table;
+import com.lifepics.neuron.table.TableAdapter;
+import com.lifepics.neuron.table.TableListener;
+import com.lifepics.neuron.table.View;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * A command-line benchmark for dynamic views on a big table, fed
+ * a stream of job status updates.  It reports the time per update
+ * with no view, and with one view of each kind that a status update
+ * can hit, so the differences are the cost of keeping the view.
+ */
+
+public class TableViewBenchmark {
+
+   // the kinds of view are the ones in the job panels.
+   //
+   //    by ID           the update stays in place
+   //    by status       the update moves, so the view removes and adds
+   //    open, by ID     the update enters or leaves the view about half
+   //                    the time, so the view adds or removes
+   //
+   // the view holds a vector, so every add and remove in the middle
+   // shifts half the array along.  the last line times just that,
+   // one add and one remove at the middle of a vector of the same size,
+   // to show how much of the update it is.
+   //
+   // the storage throws everything away, so we time the table and the
+   // views and not the disk.
+
+// --- constants ---
+
+   private static final int ROWS_DEFAULT = 50000;
+
+// --- main ---
+
+   public static void main(String[] args) throws Exception {
+
+      if (args.length < 1 || args.length > 2) {
+         System.out.println(Text.get(TableViewBenchmark.class,"s1"));
+         return;
+      }
+
+      Job sample = (Job) XML.loadFile(new File(args[0]),new Job(),"Job");
+      final int rows = (args.length > 1) ? Convert.toInt(args[1]) : ROWS_DEFAULT;
+
+      final Table table = new Table(new JobAdapter(),new NullStorage(),null);
+
+      Random random = new Random(1);
+      for (int i=0; i<rows; i++) {
+         Job job = (Job) CopyUtil.copy(sample);
+         job.jobID = i+1;
+         job.status = random.nextInt(Job.STATUS_JOB_FORGOTTEN+1);
+         table.release(job,table.insert(job));
+      }
+
+      final Random r = new Random(2);
+      Benchmark.Task update = new Benchmark.Task() { public void run() throws Exception {
+         String key = Convert.fromInt(r.nextInt(rows) + 1);
+         Object lock = table.lock(key);
+         try {
+            Job job = (Job) table.get(key);
+            job.status = (job.status + 1 + r.nextInt(Job.STATUS_JOB_FORGOTTEN)) % (Job.STATUS_JOB_FORGOTTEN+1);
+            table.update(job,lock);
+         } finally {
+            table.release(key,lock);
+         }
+      } };
+
+      Benchmark.measure(Text.get(TableViewBenchmark.class,"s2",new Object[] { Convert.fromInt(rows) }),update);
+
+      measure(table,update,"s3",selectAll,JobUtil.orderJobID);
+      measure(table,update,"s4",selectAll,JobUtil.orderStatusHold);
+      measure(table,update,"s5",JobSelectors.jobOpen,JobUtil.orderJobID);
+
+      final Vector vector = new Vector();
+      for (int i=0; i<rows; i++) vector.add(sample);
+
+      Benchmark.measure(Text.get(TableViewBenchmark.class,"s6"),new Benchmark.Task() { public void run() throws Exception {
+         vector.insertElementAt(vector,rows/2);
+         vector.removeElementAt(rows/2);
+      } });
+   }
+
+   private static void measure(Table table, Benchmark.Task update, String key, Selector selector, Comparator comparator) throws Exception {
+
+      View view = table.select(selector,comparator,/* dynamic = */ true,/* transfer = */ false);
+      try {
+         Benchmark.measure(Text.get(TableViewBenchmark.class,key,new Object[] { Convert.fromInt(view.size()) }),update);
+      } finally {
+         table.removeListener((TableListener) view);
+      }
+   }
+
+   private static Selector selectAll = new Selector() {
+      public boolean select(Object o) { return true; }
+   };
+
+// --- storage ---
+
+   private static class NullStorage implements Storage {
+
+      public String[] list() { return new String[0]; }
+
+      public Object load(String key, TableAdapter adapter) throws IOException, ValidationException {
+         throw new IOException(); // never called, the list is empty
+      }
+
+      public void store(String key, Object o, TableAdapter adapter) throws IOException {}
+      public void delete(String key) throws IOException {}
+   }
+
+}
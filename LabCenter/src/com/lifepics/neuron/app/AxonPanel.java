@@ -58,11 +58,11 @@ public class AxonPanel extends JPanel {
       int rows = 2; // same for all views
 
       ViewPanel panelOpen   = new ViewPanel(Text.get(this,"s1"),Text.get(this,"s2"),
-                                            table.select(Selectors.rollOpen,  RollUtil.orderRollID,true,true),
+                                            table.select(Selectors.rollOpen,  RollUtil.orderRollID,true,true,RollUtil.projectSimple),
                                             cols,doubleClick,2,rows);
 
       ViewPanel panelClosed = new ViewPanel(Text.get(this,"s3"),null,
-                                            table.select(Selectors.rollClosed,RollUtil.orderRollID,true,true),
+                                            table.select(Selectors.rollClosed,RollUtil.orderRollID,true,true,RollUtil.projectSimple),
                                             cols,doubleClick,2,rows);
 
       panelOpen.addButton(0,0,Text.get(this,"s4"),newRoll());
@@ -125,6 +125,9 @@ public class Config extends Structure {
    public Level reportLevel;
    public int reportQueueSize;
    public String reportURL;
+   public String reportBatchURL; // null to send records one at a time
+   public int reportBatchSize;
+   public int reportBatchWait; // millis
    public int kioskLogCount;
    public int kioskLogSize; // bytes
 
@@ -206,7 +209,7 @@ public class Config extends Structure {
    public static final StructureDefinition sd = new StructureDefinition(
 
       Config.class,
-      4,new History(new int[] {47,720,48,721,49,723,50,724,51,751,52,761,53,763,54}),
+      4,new History(new int[] {47,720,48,721,49,723,50,724,51,751,52,761,53,763,54,777,55}),
          // sync with special cases in Main.java
       new AbstractField[] {
 
@@ -295,6 +298,9 @@ public class Config extends Structure {
          new LevelField("reportLevel","ReportLevel",15,Level.SEVERE),
          new IntegerField("reportQueueSize","ReportQueueSize",13,100),
          new StringField("reportURL","ReportURL",13,"https://services.lifepics.com/LabCenter/Report.asp"),
+         new NullableStringField("reportBatchURL","ReportBatchURL",55,null),
+         new IntegerField("reportBatchSize","ReportBatchSize",55,50),
+         new IntegerField("reportBatchWait","ReportBatchWait-Millis",55,2000),
          new IntegerField("kioskLogCount","KioskLogCount",53,10),
          new IntegerField("kioskLogSize","KioskLogSize",53,100000),
 
@@ -396,6 +402,8 @@ public class Config extends Structure {
       if (logCount < 1) throw new ValidationException(Text.get(this,"e2"));
       if (logSize < 0) throw new ValidationException(Text.get(this,"e3"));
       if (reportQueueSize < 1) throw new ValidationException(Text.get(this,"e6"));
+      if (reportBatchSize < 1) throw new ValidationException(Text.get(this,"e22"));
+      if (reportBatchWait < 0) throw new ValidationException(Text.get(this,"e23"));
       if (kioskLogCount < 1) throw new ValidationException(Text.get(this,"e20"));
       if (kioskLogSize < 0) throw new ValidationException(Text.get(this,"e21"));
 
@@ -72,9 +72,12 @@ import com.lifepics.neuron.table.AlternatingFile;
 import com.lifepics.neuron.table.AlternatingFileAutoNumber;
 import com.lifepics.neuron.table.AlternatingFileStorage;
 import com.lifepics.neuron.table.AutoNumber;
+import com.lifepics.neuron.table.JournalStorage;
+import com.lifepics.neuron.table.SnapshotStorage;
 import com.lifepics.neuron.table.Storage;
 import com.lifepics.neuron.table.Table;
 import com.lifepics.neuron.table.TableAdapter;
+import com.lifepics.neuron.table.TransactionLog;
 import com.lifepics.neuron.thread.ErrorWindow;
 
 import java.io.File;
@@ -133,6 +136,7 @@ public class Main extends AppUtil.Stub implements ScanThread.Callback, Global.Co
 // --- main functions ---
 
    private Global global;
+   private TransactionLog transactionLog; // closed at exit, to write out the last changes
 
    protected String init(String causeKey, String[] args, boolean launched) throws ProcessException {
       global = new Global();
@@ -392,6 +396,7 @@ public class Main extends AppUtil.Stub implements ScanThread.Callback, Global.Co
       exitReporting();
 
       exitFrame(); // need frame for subsystem exit
+      exitTables(); // after everything that uses them
 
       Log.log(Level.INFO,this,causeKey); // stopping
 
@@ -414,9 +419,14 @@ public class Main extends AppUtil.Stub implements ScanThread.Callback, Global.Co
    private static final String BACKUP_SUFFIX = ".xml";
 
    private static final String ORDER_QUEUE_DIR = "queue/order";
+   private static final String ORDER_JOURNAL_DIR = "queue/order-journal";
    private static final String JOB_QUEUE_DIR = "queue/job";
    private static final String ROLL_QUEUE_DIR = "queue/roll";
    private static final String QUEUE_SUFFIX = "xml";
+   private static final String ORDER_SNAPSHOT_FILE = "queue/order.dat";
+   private static final String JOB_SNAPSHOT_FILE = "queue/job.dat";
+   private static final String ROLL_SNAPSHOT_FILE = "queue/roll.dat";
+   private static final String TRANSACTION_LOG_FILE = "queue/transaction.dat";
    private static final String JOB_AUTO_NUMBER_FILE = "queue/nextjob";
    private static final String ROLL_AUTO_NUMBER_FILE = "queue/nextroll";
    private static final String STYLESHEET_FILE = "invoice.xsl"; // but see next section!
@@ -863,10 +873,23 @@ public class Main extends AppUtil.Stub implements ScanThread.Callback, Global.Co
    private void initOrderTable() throws ProcessException {
 
       File queueDir = new File(mainDir,ORDER_QUEUE_DIR);
-      Storage storage = new AlternatingFileStorage(queueDir,QUEUE_SUFFIX);
+      File journalDir = new File(mainDir,ORDER_JOURNAL_DIR);
+      AlternatingFileStorage base = new AlternatingFileStorage(queueDir,QUEUE_SUFFIX);
+      Storage storage;
       TableAdapter adapter = new OrderAdapter();
+      transactionLog = new TransactionLog(new File(mainDir,TRANSACTION_LOG_FILE));
       try {
-         global.orderTable = new Table(adapter,storage,null);
+         if (journalDir.exists()) storage = new JournalStorage(journalDir,base,adapter);
+         else storage = new SnapshotStorage(base,new File(mainDir,ORDER_SNAPSHOT_FILE));
+         // the journal is opt-in, create the directory to turn it on.
+         // the first time through, the queue files are copied into it,
+         // all or nothing, and if that fails, the table doesn't open.
+         // after that they're ignored, so don't remove the directory
+         // unless you're willing to go back to the old order states.
+
+         global.orderTable = new Table(adapter,storage,null,/* shared = */ true);
+         // orders are big and have lots of views, so it's worth sharing
+         global.orderTable.attach(transactionLog,"order");
       } catch (Exception e) {
          throw new ProcessException(Text.get(this,"e9"),e);
       }
@@ -889,14 +912,17 @@ public class Main extends AppUtil.Stub implements ScanThread.Callback, Global.Co
       //
       if ( ! queueDir.exists() && ! queueDir.mkdir() ) throw new ProcessException(Text.get(this,"e12"));
 
-      Storage storage = new AlternatingFileStorage(queueDir,QUEUE_SUFFIX);
+      Storage storage = new SnapshotStorage(new AlternatingFileStorage(queueDir,QUEUE_SUFFIX),new File(mainDir,JOB_SNAPSHOT_FILE));
       TableAdapter adapter = new JobAdapter();
       try {
          AutoNumber autoNumber = new AlternatingFileAutoNumber(autoNumberFile,1); // (*)
          global.jobTable = new Table(adapter,storage,autoNumber);
+         global.jobTable.attach(transactionLog,"job");
       } catch (Exception e) {
          throw new ProcessException(Text.get(this,"e11"),e);
       }
+
+      transactionLog.recoverDone(); // order and job are the only tables in transactions
    }
 
 // --- roll table ---
@@ -907,7 +933,7 @@ public class Main extends AppUtil.Stub implements ScanThread.Callback, Global.Co
 
       File queueDir = new File(mainDir,ROLL_QUEUE_DIR);
       File autoNumberFile = new File(mainDir,ROLL_AUTO_NUMBER_FILE);
-      Storage storage = new AlternatingFileStorage(queueDir,QUEUE_SUFFIX);
+      Storage storage = new SnapshotStorage(new AlternatingFileStorage(queueDir,QUEUE_SUFFIX),new File(mainDir,ROLL_SNAPSHOT_FILE));
       TableAdapter adapter = new RollAdapter();
       try {
          AutoNumber autoNumber = new AlternatingFileAutoNumber(autoNumberFile);
@@ -917,6 +943,17 @@ public class Main extends AppUtil.Stub implements ScanThread.Callback, Global.Co
       }
    }
 
+// --- table snapshots ---
+
+   // exit: tables
+
+   private void exitTables() {
+      if (transactionLog != null) transactionLog.close(); // before the snapshots, so storage is current
+      if (global.orderTable != null) global.orderTable.writeSnapshot();
+      if (global.jobTable   != null) global.jobTable  .writeSnapshot();
+      if (global.rollTable  != null) global.rollTable .writeSnapshot();
+   }
+
 // --- order manager ---
 
    // init: config - order manager
@@ -1038,7 +1075,10 @@ public class Main extends AppUtil.Stub implements ScanThread.Callback, Global.Co
       rsc = new ReportSubsystem.Config();
       rsc.reportQueue = reportQueue;
       rsc.reportURL = config.reportURL;
-      rsc.idlePollInterval = 10000;
+      rsc.reportBatchURL = config.reportBatchURL;
+      rsc.reportBatchSize = config.reportBatchSize;
+      rsc.reportBatchWait = config.reportBatchWait;
+      rsc.idlePollInterval = 10000; // just a backstop, the queue wakes the thread
       rsc.merchantConfig = config.merchantConfig;
       rsc.diagnoseConfig = config.diagnoseConfig;
 
@@ -2331,6 +2371,9 @@ public class Main extends AppUtil.Stub implements ScanThread.Callback, Global.Co
       // note, not all subsystem config fields need to be updated
 
       rsc.reportURL = config.reportURL;
+      rsc.reportBatchURL = config.reportBatchURL;
+      rsc.reportBatchSize = config.reportBatchSize;
+      rsc.reportBatchWait = config.reportBatchWait;
       rsc.merchantConfig = config.merchantConfig;
       rsc.diagnoseConfig = config.diagnoseConfig;
 
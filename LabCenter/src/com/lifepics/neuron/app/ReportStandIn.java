@@ -0,0 +1,176 @@
+/*
+ * ReportStandIn.java
+ */
+
+package com.lifepics.neuron.app;
+
+import com.lifepics.neuron.core.Convert;
+import com.lifepics.neuron.core.Text;
+import com.lifepics.neuron.misc.Compress;
+import com.lifepics.neuron.net.ServerThread;
+import com.lifepics.neuron.object.XML;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.util.Iterator;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * A local stand-in for the report endpoints, so that the reporting
+ * can be tested offline.  It accepts both the single-record form post
+ * and the compressed batch that {@link ReportThread} sends, prints the
+ * records, and answers every request with an empty success.
+ * This is a command-line utility; to use it, point ReportURL
+ * and ReportBatchURL at http://localhost:port/.
+ */
+
+public class ReportStandIn implements ServerThread.Callback {
+
+   // this is just enough HTTP to talk to HTTPClient.  one request per
+   // connection, always with a content length, and no chunked encoding.
+   // the response closes the connection, so nothing goes back into the pool.
+
+// --- constants ---
+
+   private static final int MARKER = '@'; // same as in Compress
+
+// --- implementation of ServerThread.Callback ---
+
+   public void accepted(Socket socket) {
+      try {
+         try {
+            handle(socket.getInputStream());
+         } finally {
+            OutputStream out = socket.getOutputStream();
+            out.write("HTTP/1.1 200 OK\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes("ISO-8859-1"));
+            out.flush();
+            socket.close();
+         }
+      } catch (Exception e) {
+         e.printStackTrace(); // nowhere else to put it
+      }
+   }
+
+// --- request handling ---
+
+   private void handle(InputStream in) throws Exception {
+
+      String request = readLine(in);
+      int length = 0;
+
+      while (true) {
+         String line = readLine(in);
+         if (line.length() == 0) break;
+
+         int i = line.indexOf(':');
+         if (i != -1 && line.substring(0,i).trim().equalsIgnoreCase("Content-Length")) {
+            length = Convert.toInt(line.substring(i+1).trim());
+         }
+      }
+
+      byte[] body = new byte[length];
+      int done = 0;
+      while (done < length) {
+         int n = in.read(body,done,length-done);
+         if (n == -1) throw new IOException(Text.get(ReportStandIn.class,"e1"));
+         done += n;
+      }
+
+      System.out.println(request);
+
+      if (length > 0 && body[0] == MARKER) {
+         handleBatch(body);
+      } else {
+         handleForm(body);
+      }
+   }
+
+   private void handleBatch(byte[] body) throws Exception {
+
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      XML.writeStream(buffer,XML.readStream(Compress.wrapInput(new ByteArrayInputStream(body))));
+      Document doc = XML.readStream(new ByteArrayInputStream(buffer.toByteArray()));
+      // decode twice so we know the uncompressed size, it's only a test
+
+      int count = 0;
+      Iterator i = XML.getElements(XML.getElement(doc,"Reports"),"Report");
+      while (i.hasNext()) {
+         Node node = (Node) i.next();
+
+         Node child = node.getFirstChild();
+         for ( ; child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() != Node.ELEMENT_NODE) continue;
+            printField(child.getNodeName(),XML.getText(child));
+         }
+         System.out.println();
+         count++;
+      }
+
+      System.out.println(Text.get(ReportStandIn.class,"s3",new Object[] { Convert.fromInt(count),
+                                                                          Convert.fromInt(body.length),
+                                                                          Convert.fromInt(buffer.size()) }));
+      System.out.println();
+   }
+
+   private void handleForm(byte[] body) throws Exception {
+
+      String s = new String(body,"ISO-8859-1");
+      if (s.length() > 0) {
+         String[] pairs = s.split("&");
+         for (int i=0; i<pairs.length; i++) {
+            int j = pairs[i].indexOf('=');
+            if (j == -1) continue;
+            printField(URLDecoder.decode(pairs[i].substring(0,j),"UTF-8"),
+                       URLDecoder.decode(pairs[i].substring(j+1),"UTF-8"));
+         }
+      }
+      System.out.println();
+
+      System.out.println(Text.get(ReportStandIn.class,"s4",new Object[] { Convert.fromInt(body.length) }));
+      System.out.println();
+   }
+
+   private static void printField(String key, String value) {
+      System.out.println("   " + key + " = " + value);
+   }
+
+   private static String readLine(InputStream in) throws IOException {
+      StringBuffer b = new StringBuffer();
+      while (true) {
+         int c = in.read();
+         if (c == -1) throw new IOException(Text.get(ReportStandIn.class,"e1"));
+         if (c == '\n') break;
+         if (c != '\r') b.append((char) c);
+      }
+      return b.toString();
+   }
+
+// --- main ---
+
+   public static void main(String[] args) throws Exception {
+
+      if (args.length < 1) {
+         System.out.println(Text.get(ReportStandIn.class,"s1"));
+         return;
+      }
+
+      int port = Convert.toInt(args[0]);
+
+      ServerThread server = new ServerThread(port,new ReportStandIn());
+      if ( ! server.bind() ) {
+         System.out.println(Text.get(ReportStandIn.class,"e2",new Object[] { Convert.fromInt(port) }));
+         return;
+      }
+
+      System.out.println(Text.get(ReportStandIn.class,"s2",new Object[] { Convert.fromInt(port) }));
+      server.start(); // runs until the process is killed
+   }
+
+}
@@ -4,6 +4,7 @@
 
 package com.lifepics.neuron.app;
 
+import com.lifepics.neuron.core.Nullable;
 import com.lifepics.neuron.core.ReportQueue;
 import com.lifepics.neuron.net.DiagnoseConfig;
 import com.lifepics.neuron.net.MerchantConfig;
@@ -23,6 +24,9 @@ public class ReportSubsystem extends Subsystem {
 
       public ReportQueue reportQueue;
       public String reportURL;
+      public String reportBatchURL;
+      public int reportBatchSize;
+      public int reportBatchWait;
       public long idlePollInterval;
       public MerchantConfig merchantConfig;
       public DiagnoseConfig diagnoseConfig;
@@ -42,6 +46,9 @@ public class ReportSubsystem extends Subsystem {
 
          return (    reportQueue == c.reportQueue
                   && reportURL.equals(c.reportURL)
+                  && Nullable.equals(reportBatchURL,c.reportBatchURL)
+                  && reportBatchSize == c.reportBatchSize
+                  && reportBatchWait == c.reportBatchWait
                   && idlePollInterval == c.idlePollInterval
                   && merchantConfig.equals(c.merchantConfig)
                   && diagnoseConfig.equals(c.diagnoseConfig) );
@@ -60,6 +67,9 @@ public class ReportSubsystem extends Subsystem {
       Config c = (Config) this.config;
       return new ReportThread(c.reportQueue,
                               c.reportURL,
+                              c.reportBatchURL,
+                              c.reportBatchSize,
+                              c.reportBatchWait,
                               c.idlePollInterval,
                               makeThreadStatus(),
                               c.merchantConfig,
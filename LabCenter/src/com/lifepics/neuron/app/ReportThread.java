@@ -8,6 +8,7 @@ import com.lifepics.neuron.core.Convert;
 import com.lifepics.neuron.core.ReportQueue;
 import com.lifepics.neuron.core.ReportRecord;
 import com.lifepics.neuron.core.Text;
+import com.lifepics.neuron.misc.Compress;
 import com.lifepics.neuron.misc.LineFormatter;
 import com.lifepics.neuron.net.DefaultHandler;
 import com.lifepics.neuron.net.DiagnoseConfig;
@@ -15,27 +16,52 @@ import com.lifepics.neuron.net.DiagnoseHandler;
 import com.lifepics.neuron.net.FormDataTransaction;
 import com.lifepics.neuron.net.MerchantConfig;
 import com.lifepics.neuron.net.PauseAdapter;
+import com.lifepics.neuron.net.PostDataTransaction;
 import com.lifepics.neuron.net.Query;
+import com.lifepics.neuron.net.Transaction;
+import com.lifepics.neuron.object.XML;
 import com.lifepics.neuron.thread.StoppableThread;
 import com.lifepics.neuron.thread.ThreadStatus;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.TimeZone;
 import java.util.logging.Level;
 
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
 /**
  * A thread that sends log information to the server.
  */
 
 public class ReportThread extends StoppableThread {
 
+   // if there's a batch URL, the records go out in batches, as one
+   // compressed XML document per request.  a batch is sent as soon as
+   // it's full, or when the oldest record in it has waited batchWait
+   // millis, whichever comes first.  so, during an error storm we make
+   // one request per batchSize records instead of one per record, and
+   // the queue doesn't fill up and collapse into a placeholder.
+   //
+   // each record in the batch has the same fields as the form post,
+   // with the same names, and the password goes in the URL parameters.
+   // the endpoint is a separate URL because Report.asp only takes the
+   // form post.  see ReportStandIn for a local endpoint to test against.
+
 // --- fields ---
 
    private ReportQueue reportQueue;
    private String reportURL;
+   private String reportBatchURL; // null to send records one at a time
+   private int reportBatchSize;
+   private int reportBatchWait;
    private long idlePollInterval;
    private ThreadStatus threadStatus;
    private MerchantConfig merchantConfig;
@@ -45,12 +71,17 @@ public class ReportThread extends StoppableThread {
 
 // --- construction ---
 
-   public ReportThread(ReportQueue reportQueue, String reportURL, long idlePollInterval, ThreadStatus threadStatus,
+   public ReportThread(ReportQueue reportQueue, String reportURL,
+                       String reportBatchURL, int reportBatchSize, int reportBatchWait,
+                       long idlePollInterval, ThreadStatus threadStatus,
                        MerchantConfig merchantConfig, DiagnoseConfig diagnoseConfig) {
       super(Text.get(ReportThread.class,"s1"));
 
       this.reportQueue = reportQueue;
       this.reportURL = reportURL;
+      this.reportBatchURL = reportBatchURL;
+      this.reportBatchSize = reportBatchSize;
+      this.reportBatchWait = reportBatchWait;
       this.idlePollInterval = idlePollInterval;
       this.threadStatus = threadStatus;
       this.merchantConfig = merchantConfig;
@@ -67,12 +98,32 @@ public class ReportThread extends StoppableThread {
 
    protected void doRun() throws Exception {
       try {
+         int max = (reportBatchURL != null) ? reportBatchSize : 1;
+         long waitStart = 0; // when we started waiting for the batch to fill, or zero
+
          while ( ! isStopping() ) {
-            ReportRecord r = reportQueue.getRecord();
-            if (r != null) {
-               if (doRecord(r)) reportQueue.removeRecord();
+            long stamp = reportQueue.getStamp(); // before looking, see ReportQueue
+            LinkedList records = reportQueue.getRecords(max);
+
+            long timeout = idlePollInterval;
+            if (records.size() > 0) {
+               if (records.size() < max) {
+
+                  long now = System.currentTimeMillis();
+                  if (waitStart == 0) waitStart = now;
+                  timeout = waitStart + reportBatchWait - now;
+                  if (timeout > reportBatchWait) timeout = 0; // clock went back
+               } else {
+                  timeout = 0; // full
+               }
+            }
+
+            if (timeout > 0) {
+               if ( ! isStopping() ) reportQueue.await(stamp,timeout);
+               // about the isStopping test, see EntityThread.loopFind
             } else {
-               sleepNice(idlePollInterval);
+               waitStart = 0;
+               if (doRecords(records)) reportQueue.removeRecords(records.size());
             }
          }
       } catch (Exception e) {
@@ -85,13 +136,20 @@ public class ReportThread extends StoppableThread {
    }
 
    protected void doStop() {
+      reportQueue.wake(); // in case we're waiting
    }
 
 // --- methods ---
 
-   private boolean doRecord(ReportRecord r) {
+   private boolean doRecords(LinkedList records) {
       try {
-         return handler.run(new PostRecord(r),pauseAdapter);
+         Transaction t;
+         if (reportBatchURL != null) {
+            t = new PostBatch(records);
+         } else {
+            t = new PostRecord((ReportRecord) records.getFirst());
+         }
+         return handler.run(t,pauseAdapter);
       } catch (Exception e) {
          return true;
          // unable to send, even with diagnose and retry, so tough luck.
@@ -108,6 +166,72 @@ public class ReportThread extends StoppableThread {
       // could be anything, we send the zone too, but this is convenient
    }
 
+// --- record fields ---
+
+   // the form post and the batch have the same fields, so we write them
+   // through this interface, into either the query or an XML node.
+
+   private interface Fields {
+      void add(String key, String value) throws IOException;
+   }
+
+   private void addMerchant(Fields f, ReportRecord r) throws IOException {
+
+      // r.merchant is always null for rolls and jobs.  for orders it's copied
+      // from wholesale.merchant, so nullness is a proxy for wholesale == null.
+      // we can use that to reproduce the getWholesaleCode logic here.
+
+      String configMerchant = Convert.fromInt(merchantConfig.merchant);
+      if (merchantConfig.isWholesale) { // WSC_WHOLESALE
+         f.add("wholesalerID",configMerchant);
+         if (r.merchant != null) f.add("mlrfnbr",r.merchant);
+         // r.merchant can be null if there's an order without wholesale information ...
+         // or if there's an upload, or a job, or an error with no reportable object
+      } else if (r.merchant != null && ! r.merchant.equals(configMerchant)) { // WSC_PRO
+         f.add("dealerLocID",configMerchant);
+         f.add("mlrfnbr",r.merchant);
+      } else { // WSC_NORMAL and WSC_PSEUDO
+         f.add("mlrfnbr",configMerchant);
+      }
+   }
+
+   private static void addRecord(Fields f, ReportRecord r) throws IOException {
+
+      f.add("timestamp",timestampFormat.format(new Date(r.timestamp)));
+
+      String stringLevel = "";
+
+           if (r.level.equals(Level.SEVERE )) stringLevel = "E";
+      else if (r.level.equals(Level.WARNING)) stringLevel = "W";
+      else if (r.level.equals(Level.INFO   )) stringLevel = "N";
+      else if (r.level.equals(Level.CONFIG )) stringLevel = "C";
+      else if (r.level.equals(Level.FINE   )) stringLevel = "1";
+      else if (r.level.equals(Level.FINER  )) stringLevel = "2";
+      else if (r.level.equals(Level.FINEST )) stringLevel = "3";
+      // else leave blank, but that's the complete enumeration
+
+      f.add("level",stringLevel);
+
+      f.add("message",r.message);
+
+      String trace = LineFormatter.getStackTrace(r.t);
+      if (trace == null) trace = "";
+      f.add("trace",trace);
+
+      String stringType, stringID;
+      if (r.idType != null && r.id != null) {
+         stringType = r.idType;
+         stringID   = r.id;
+      } else {
+         stringType = "";
+         stringID   = "";
+      }
+      // jobs come through with null type, non-null id,
+      // and we don't want to send a partial blank row.
+      f.add("obj-type",stringType);
+      f.add("obj-id",  stringID  );
+   }
+
 // --- transactions ---
 
    private class PostRecord extends FormDataTransaction {
@@ -116,58 +240,59 @@ public class ReportThread extends StoppableThread {
 
       public String describe() { return Text.get(ReportThread.class,"s2"); }
       protected String getFixedURL() { return reportURL; }
-      protected void getFormData(Query query) throws IOException {
-
-         // r.merchant is always null for rolls and jobs.  for orders it's copied
-         // from wholesale.merchant, so nullness is a proxy for wholesale == null.
-         // we can use that to reproduce the getWholesaleCode logic here.
-
-         String configMerchant = Convert.fromInt(merchantConfig.merchant);
-         if (merchantConfig.isWholesale) { // WSC_WHOLESALE
-            query.add("wholesalerID",configMerchant);
-            if (r.merchant != null) query.add("mlrfnbr",r.merchant);
-            // r.merchant can be null if there's an order without wholesale information ...
-            // or if there's an upload, or a job, or an error with no reportable object
-         } else if (r.merchant != null && ! r.merchant.equals(configMerchant)) { // WSC_PRO
-            query.add("dealerLocID",configMerchant);
-            query.add("mlrfnbr",r.merchant);
-         } else { // WSC_NORMAL and WSC_PSEUDO
-            query.add("mlrfnbr",configMerchant);
-         }
+      protected void getFormData(final Query query) throws IOException {
+
+         Fields f = new Fields() {
+            public void add(String key, String value) throws IOException { query.add(key,value); }
+         };
+
+         addMerchant(f,r);
+         query.addPasswordObfuscate("encpassword",merchantConfig.password);
+         addRecord(f,r);
+      }
+
+      protected boolean receive(InputStream inputStream) throws Exception {
+         return true;
+      }
+   }
+
+   private class PostBatch extends PostDataTransaction {
+      private LinkedList records;
+      public PostBatch(LinkedList records) { this.records = records; }
+
+      public String describe() { return Text.get(ReportThread.class,"s3"); }
+      protected String getFixedURL() { return reportBatchURL; }
+      protected void getParameters(Query query) throws IOException {
          query.addPasswordObfuscate("encpassword",merchantConfig.password);
-         query.add("timestamp",timestampFormat.format(new Date(r.timestamp)));
+      }
 
-         String stringLevel = "";
+      protected byte[] getByteData() throws Exception {
+         ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+         OutputStream out = Compress.wrapOutput(buffer);
+         XML.writeStream(out,getXMLData());
+         out.close(); // finishes the compression
+         return buffer.toByteArray();
+      }
 
-              if (r.level.equals(Level.SEVERE )) stringLevel = "E";
-         else if (r.level.equals(Level.WARNING)) stringLevel = "W";
-         else if (r.level.equals(Level.INFO   )) stringLevel = "N";
-         else if (r.level.equals(Level.CONFIG )) stringLevel = "C";
-         else if (r.level.equals(Level.FINE   )) stringLevel = "1";
-         else if (r.level.equals(Level.FINER  )) stringLevel = "2";
-         else if (r.level.equals(Level.FINEST )) stringLevel = "3";
-         // else leave blank, but that's the complete enumeration
+      protected Document getXMLData() throws Exception {
+         Document doc = XML.createDocument();
 
-         query.add("level",stringLevel);
+         Node reports = XML.createElement(doc,"Reports");
 
-         query.add("message",r.message);
+         Iterator i = records.iterator();
+         while (i.hasNext()) {
+            ReportRecord r = (ReportRecord) i.next();
 
-         String trace = LineFormatter.getStackTrace(r.t);
-         if (trace == null) trace = "";
-         query.add("trace",trace);
+            final Node node = XML.createElement(reports,"Report");
+            Fields f = new Fields() {
+               public void add(String key, String value) { XML.createElementText(node,key,value); }
+            };
 
-         String stringType, stringID;
-         if (r.idType != null && r.id != null) {
-            stringType = r.idType;
-            stringID   = r.id;
-         } else {
-            stringType = "";
-            stringID   = "";
+            addMerchant(f,r);
+            addRecord(f,r);
          }
-         // jobs come through with null type, non-null id,
-         // and we don't want to send a partial blank row.
-         query.add("obj-type",stringType);
-         query.add("obj-id",  stringID  );
+
+         return doc;
       }
 
       protected boolean receive(InputStream inputStream) throws Exception {
@@ -176,4 +301,3 @@ public class ReportThread extends StoppableThread {
    }
 
 }
-
@@ -579,8 +579,9 @@ public class RollManager {
                readonly = ! (okStatus && okScans && okUpload && okSource);
 
             } else {
+               roll = (Roll) table.get(key); // get latest copy, the view may only have a projection
                readonly = true;
-               // if we can't lock the roll, show the cached copy in read-only mode
+               // if we can't lock the roll, show the latest copy in read-only mode
             }
 
             int mode = readonly ? AbstractRollDialog.MODE_VIEW
@@ -16,6 +16,7 @@ import com.lifepics.neuron.meta.FieldComparator;
 import com.lifepics.neuron.meta.NaturalComparator;
 import com.lifepics.neuron.meta.NoCaseComparator;
 import com.lifepics.neuron.misc.PurgeConfig;
+import com.lifepics.neuron.table.Projector;
 
 import java.util.Comparator;
 import java.util.Date;
@@ -314,6 +315,16 @@ public class RollUtil {
 
    public static Comparator orderRollID = nc(rollIDRaw);
 
+// --- projector ---
+
+   /**
+    * A projector for views that only use the simple roll fields,
+    * not the items or the upload information.
+    */
+   public static Projector projectSimple = new Projector() {
+      public Object project(Object o) { return ((Roll) o).copyAtomic(); }
+   };
+
    public static Comparator orderStatusHold = new CompoundComparator(ec(holdRaw,holdOrder),ec(statusRaw,statusOrder));
 
    public static Comparator orderItemFilename = sc(itemFilename);
@@ -4,6 +4,7 @@
 
 package com.lifepics.neuron.axon;
 
+import com.lifepics.neuron.core.Convert;
 import com.lifepics.neuron.core.Text;
 import com.lifepics.neuron.core.ValidationException;
 import com.lifepics.neuron.net.BandwidthConfig;
@@ -30,6 +31,8 @@ public class UploadConfig extends Structure {
    public long localPriorityInterval; // millis
    public long idlePollInterval; // millis
    public int successiveFailureLimit;
+   public int transformAhead; // number of images to transform while the current one uploads
+   public int parallelUploads;
    public boolean lockdownEnabled;
    public boolean watermarkEnabled;
    public boolean exclusiveEnabled;
@@ -42,7 +45,7 @@ public class UploadConfig extends Structure {
    public static final StructureDefinition sd = new StructureDefinition(
 
       UploadConfig.class,
-      0,new History(new int[] { 10,721,11,731,12 }),
+      0,new History(new int[] { 10,721,11,731,12,777,14 }),
       new AbstractField[] {
 
          new StringField("secureURL","SecureURL",3,"https://services.lifepics.com/LCUpload.asp"),
@@ -54,6 +57,8 @@ public class UploadConfig extends Structure {
          new LongField("localPriorityInterval","LocalPriorityInterval-Millis",12,60000),
          new LongField("idlePollInterval","IdlePollInterval-Millis"),
          new IntegerField("successiveFailureLimit","SuccessiveFailureLimit",5,10),
+         new IntegerField("transformAhead","TransformAhead",13,2),
+         new IntegerField("parallelUploads","ParallelUploads",14,1),
          new BooleanField("lockdownEnabled","LockdownEnabled",7,false),
          new BooleanField("watermarkEnabled","WatermarkEnabled",9,false),
          new BooleanField("exclusiveEnabled","ExclusiveEnabled",9,false),
@@ -78,6 +83,9 @@ public class UploadConfig extends Structure {
 
 // --- validation ---
 
+   private static final int TRANSFORM_AHEAD_MAX = 8;
+   private static final int PARALLEL_MAX = 16;
+
    public void validate() throws ValidationException {
 
       if (localPriorityInterval < 1) throw new ValidationException(Text.get(this,"e3"));
@@ -87,6 +95,10 @@ public class UploadConfig extends Structure {
 
       if (successiveFailureLimit < 1) throw new ValidationException(Text.get(this,"e2"));
 
+      if (transformAhead < 0 || transformAhead > TRANSFORM_AHEAD_MAX) throw new ValidationException(Text.get(this,"e4",new Object[] { Convert.fromInt(TRANSFORM_AHEAD_MAX) }));
+      // zero means transform each image just before uploading it, the old way
+      if (parallelUploads < 1 || parallelUploads > PARALLEL_MAX) throw new ValidationException(Text.get(this,"e5",new Object[] { Convert.fromInt(PARALLEL_MAX) }));
+
       bandwidthConfig.validate();
       transformConfig.validate();
    }
@@ -91,6 +91,7 @@ public class UploadSubsystem extends TransferSubsystem {
                               c.prioritizeEnabled,
                               c.rollReceivedPurgeInterval,
                               handler,
+                              c.diagnoseConfig,
                               tracker,
                               makeThreadStatus());
    }
@@ -22,6 +22,10 @@ import com.lifepics.neuron.misc.PurgeConfig;
 import com.lifepics.neuron.misc.TransferTracker;
 import com.lifepics.neuron.net.BandwidthConfig;
 import com.lifepics.neuron.net.BandwidthUtil;
+import com.lifepics.neuron.net.DefaultHandler;
+import com.lifepics.neuron.net.DescribeHandler;
+import com.lifepics.neuron.net.DiagnoseConfig;
+import com.lifepics.neuron.net.DiagnoseHandler;
 import com.lifepics.neuron.net.FormDataTransaction;
 import com.lifepics.neuron.net.GetTransaction;
 import com.lifepics.neuron.net.Handler;
@@ -42,8 +46,10 @@ import com.lifepics.neuron.table.TableException;
 import com.lifepics.neuron.table.View;
 import com.lifepics.neuron.thread.EntityManipulator;
 import com.lifepics.neuron.thread.EntityThread;
+import com.lifepics.neuron.thread.HelperThread;
 import com.lifepics.neuron.thread.NormalOperationException;
 import com.lifepics.neuron.thread.PauseRetryException;
+import com.lifepics.neuron.thread.StoppableThread;
 import com.lifepics.neuron.thread.ThreadStatus;
 import com.lifepics.neuron.thread.ThreadStopException;
 
@@ -80,6 +86,7 @@ public class UploadThread extends RollThread {
    private boolean prioritizeEnabled;
    private Long rollReceivedPurgeInterval;
    private Handler handler;
+   private DiagnoseConfig diagnoseConfig;
    private TransferTracker tracker;
    private PauseAdapter pauseAdapter;
 
@@ -92,6 +99,15 @@ public class UploadThread extends RollThread {
    private Method method;
    private int orderVersion;
 
+   private HelperThread.Group helpers; // the transformer
+   private Transformer transformer;    // null unless transforming ahead
+
+   private HelperThread.Group workers;
+   private Object statusLock;        // guards roll and table updates while workers run
+   private LinkedList queue;         // items not yet started, synchronized on itself
+   private boolean failed;           // also synchronized on queue
+   private FailureCount failures;    // shared by the workers
+
 // --- delete manipulator ---
 
    private static class DeleteManipulator extends EntityManipulator {
@@ -114,7 +130,7 @@ public class UploadThread extends RollThread {
 // --- construction ---
 
    public UploadThread(Table table, MerchantConfig merchantConfig, UploadConfig config, File transformFile, LinkedList dealers, boolean prioritizeEnabled, Long rollReceivedPurgeInterval,
-                       Handler handler,
+                       Handler handler, DiagnoseConfig diagnoseConfig,
                        TransferTracker tracker,  ThreadStatus threadStatus) {
       super(Text.get(UploadThread.class,"s1"),
             table,
@@ -136,9 +152,15 @@ public class UploadThread extends RollThread {
       this.prioritizeEnabled = prioritizeEnabled;
       this.rollReceivedPurgeInterval = rollReceivedPurgeInterval;
       this.handler = handler;
+      this.diagnoseConfig = diagnoseConfig;
       this.tracker = tracker;
       this.pauseAdapter = new PauseAdapter(threadStatus);
 
+      helpers = new HelperThread.Group(this);
+      workers = new HelperThread.Group(this);
+      statusLock = new Object();
+      // queue, failed, and failures initialized later, per roll
+
       this.config.bandwidthConfig.precomputeTrivial();
 
       if (prioritizeEnabled) { // otherwise these fields aren't used
@@ -159,6 +181,12 @@ public class UploadThread extends RollThread {
       }
    }
 
+   protected void doStop() {
+      super.doStop();
+      helpers.stop();
+      workers.stop();
+   }
+
 // --- regulation ---
 
    // see DownloadThread for the whole theory of regulation
@@ -168,7 +196,11 @@ public class UploadThread extends RollThread {
    }
 
    private Transaction regulate(Transaction t) {
-      return new RegulatedTransaction(config.bandwidthConfig,threadStatus,this,t);
+      return regulate(t,/* worker = */ null);
+   }
+
+   private Transaction regulate(Transaction t, StoppableThread worker) {
+      return new RegulatedTransaction(config.bandwidthConfig,threadStatus,(worker != null) ? worker : this,t);
    }
 
 // --- priority list ---
@@ -472,11 +504,13 @@ public class UploadThread extends RollThread {
       boolean complete = false;
       try {
          tracker.timeBegin();
+         startTransformer();
 
          if ( ! uploadItems() ) return false;
 
          complete = true;
       } finally {
+         stopTransformer();
          tracker.timeEnd(complete);
       }
 
@@ -494,27 +528,24 @@ public class UploadThread extends RollThread {
 
    private boolean uploadItems() throws Exception {
 
-      int successiveFailures = 0;
-      int totalFailures = 0;
-      Exception lastFailure = null;
+      LinkedList pending = getPending();
+      if (    config.parallelUploads > 1
+           && ! config.bandwidthConfig.limited
+           && pending.size() > 1 ) return uploadItemsParallel(pending);
+
+      failures = new FailureCount();
 
       Iterator i = roll.items.iterator();
       while (i.hasNext()) {
          item = (Roll.Item) i.next();
-         if (    item.status == Roll.STATUS_FILE_PENDING
-              || item.status == Roll.STATUS_FILE_SENDING ) {
-         // latter case shouldn't happen
+         if (isPending(item)) {
 
-            if (roll.source == Roll.SOURCE_LOCAL) {
-               // we don't need to hear about it
-            } else {
-               Log.log(Level.INFO,this,"i3",new Object[] { item.getOriginalFilename() });
-            }
+            logItem(item);
 
             try {
 
-               if ( ! uploadItem() ) return false; // (*)
-               successiveFailures = 0;
+               if ( ! uploadItem(item,/* worker = */ null) ) return false; // (*)
+               failures.success();
                // what if we have failures available when we hit a thread stop?
                // it's debatable .. but since we didn't get through all the items,
                // I'll leave the roll in pending status so we can come back to it
@@ -524,123 +555,596 @@ public class UploadThread extends RollThread {
             } catch (ThreadStopException e) {
                throw e;
             } catch (Exception e) {
-
-               if (config.successiveFailureLimit == 1) throw e;
-               // one in a row is the old behavior, so stick with the old messages
-               // in that case, no need for extra logging or extra exception text.
-
-               successiveFailures++;
-               totalFailures++;
-               lastFailure = e;
-
-               if (successiveFailures < config.successiveFailureLimit) {
-                  Log.log(roll,Level.WARNING,this,"e33",e); // error, continuing
-               } else {
-                  Object[] args = new Object[] { new Integer(totalFailures),
-                                             Convert.fromInt(totalFailures),
-                                                 new Integer(successiveFailures),
-                                             Convert.fromInt(successiveFailures) };
-                  throw new Exception(Text.get(this,"e34",args),e);
-               }
-
-               // right now, PauseRetryException information isn't handled well ...
-               // we just use whatever's on the last failure.  we could add some
-               // code to take the maximum of the pause-retry limit, or do other
-               // things, but the correct solution is that the errors need to be
-               // attached to the items, not the whole upload, and that's hard.
-               // fortunately, taking the last failure isn't too bad ...
-               // if we get a bunch of errors, they'll often be all the same kind.
+               failures.failure(e);
             }
          }
 
          if (isStopping()) return false; // see (*) above
       }
 
-      if (totalFailures != 0) { // we went through all the items, *now* fail
-         Object[] args = new Object[] { new Integer(totalFailures),
-                                    Convert.fromInt(totalFailures) };
-         throw new Exception(Text.get(this,"e35",args),lastFailure);
-         // note, totalFailures != 0 clearly implies that lastFailure is set.
-         // also, the lastFailure text has already been logged once; oh well.
-      }
+      failures.finish();
 
       return true;
    }
 
-   private boolean uploadItem() throws Exception {
+   private static boolean isPending(Roll.Item item) {
+      return (    item.status == Roll.STATUS_FILE_PENDING
+               || item.status == Roll.STATUS_FILE_SENDING );
+      // latter case shouldn't happen
+   }
+
+   private LinkedList getPending() {
+      LinkedList pending = new LinkedList();
+
+      Iterator i = roll.items.iterator();
+      while (i.hasNext()) {
+         Roll.Item itemNext = (Roll.Item) i.next(); // don't collide with UploadThread.item!
+         if (isPending(itemNext)) pending.add(itemNext);
+      }
+
+      return pending;
+   }
+
+   private void logItem(Roll.Item item) {
+      if (roll.source == Roll.SOURCE_LOCAL) {
+         // we don't need to hear about it
+      } else {
+         Log.log(Level.INFO,this,"i3",new Object[] { item.getOriginalFilename() });
+      }
+   }
+
+   /**
+    * The failure accounting for the items in an upload.  The functions
+    * are synchronized so that the parallel helpers can share one.
+    */
+   private class FailureCount {
+
+      private int successiveFailures;
+      private int totalFailures;
+      private Exception lastFailure;
+
+      public FailureCount() {
+         successiveFailures = 0;
+         totalFailures = 0;
+         lastFailure = null;
+      }
+
+      public synchronized void success() {
+         successiveFailures = 0;
+      }
+
+      /**
+       * Count a failure, and throw if there have been too many in a row.
+       */
+      public synchronized void failure(Exception e) throws Exception {
+
+         if (config.successiveFailureLimit == 1) throw e;
+         // one in a row is the old behavior, so stick with the old messages
+         // in that case, no need for extra logging or extra exception text.
+
+         successiveFailures++;
+         totalFailures++;
+         lastFailure = e;
+
+         if (successiveFailures < config.successiveFailureLimit) {
+            Log.log(roll,Level.WARNING,UploadThread.this,"e33",e); // error, continuing
+         } else {
+            Object[] args = new Object[] { new Integer(totalFailures),
+                                       Convert.fromInt(totalFailures),
+                                           new Integer(successiveFailures),
+                                       Convert.fromInt(successiveFailures) };
+            throw new Exception(Text.get(UploadThread.class,"e34",args),e);
+         }
+
+         // right now, PauseRetryException information isn't handled well ...
+         // we just use whatever's on the last failure.  we could add some
+         // code to take the maximum of the pause-retry limit, or do other
+         // things, but the correct solution is that the errors need to be
+         // attached to the items, not the whole upload, and that's hard.
+         // fortunately, taking the last failure isn't too bad ...
+         // if we get a bunch of errors, they'll often be all the same kind.
+      }
+
+      /**
+       * Throw if there were any failures.  Call this after all the items
+       * have been tried.
+       */
+      public synchronized void finish() throws Exception {
+
+         if (totalFailures != 0) { // we went through all the items, *now* fail
+            Object[] args = new Object[] { new Integer(totalFailures),
+                                       Convert.fromInt(totalFailures) };
+            throw new Exception(Text.get(UploadThread.class,"e35",args),lastFailure);
+            // note, totalFailures != 0 clearly implies that lastFailure is set.
+            // also, the lastFailure text has already been logged once; oh well.
+         }
+      }
+   }
+
+   /**
+    * @param worker The helper thread that's doing the upload,
+    *               or null if it's the upload thread itself.
+    */
+   private boolean uploadItem(Roll.Item item, Worker worker) throws Exception {
+
+      Job job = (transformer != null) ? transformer.claim(item) : null;
+      // claim first, so the transformer knows the job is spoken for
+      // even if something fails before we get around to waiting for it
 
-      tracker.fileBegin1(item);
-      setFileStatus(Roll.STATUS_FILE_SENDING);
+      if (worker == null) tracker.fileBegin1(item);
+      setFileStatus(item,Roll.STATUS_FILE_SENDING);
 
       try {
 
          File sendFile = new File(roll.rollDir,item.filename);
          Long sizeActual = null; // not scaled
 
-         if (roll.source != Roll.SOURCE_LOCAL) // local images exist in two places at once, need to be identical
-         try {
-            try {
+         if (roll.source != Roll.SOURCE_LOCAL) { // local images exist in two places at once, need to be identical
 
-               TransformConfig tc;
-               if      (roll.transformConfig != null) tc = roll.transformConfig;
-               else if (roll.transformType   != null) tc = config.transformConfig.derive(roll.transformType.intValue());
-               else                                   tc = config.transformConfig;
-               // order doesn't matter, we validate that config and type aren't both set
+            if (transformer != null) {
+               transformer.await(job);
+            } else {
+               job = new Job(item,sendFile,getTransformConfig(),(worker != null) ? worker.transformFile : transformFile);
+            }
+            if ( ! job.done ) { transform(job); job.done = true; }
 
-               if (UploadTransform.transform(tc,sendFile,item.rotation,transformFile)) {
+            if (job.exception != null) throw job.exception;
 
-                  // send the transformed file instead
-                  sendFile = transformFile;
-                  sizeActual = new Long(FileUtil.getSize(transformFile));
-               }
-               // else transform wasn't needed, or couldn't be performed
-
-            } catch (OutOfMemoryError e) {
-               throw new Exception(Text.get(this,"e18"),e);
-               // normally, out of memory is a serious condition,
-               // hard to recover from because you can't expect
-               // to be able to run any more code that does anything,
-               // but here it probably means we failed to allocate
-               // a gigantic buffer for TIFF transformation.
-               // should still be plenty of memory for normal use.
+            if (job.sizeActual != null) {
+
+               // send the transformed file instead
+               sendFile = job.output;
+               sizeActual = job.sizeActual;
             }
-         } catch (ThreadStopException e) {
-            throw e;
-         } catch (Exception e) { // descriptive catch and rethrow
-            throw new Exception(Text.get(this,"e32",new Object[] { describeItem(item) }),e);
+            // else transform wasn't needed, or couldn't be performed
          }
-         // double try block because you can't catch twice in one block
 
-         tracker.fileBegin2(item,roll,sizeActual);
+         if (worker != null) {
+            worker.slot = tracker.parallelBegin(item,roll,sizeActual);
+         } else {
+            tracker.fileBegin2(item,roll,sizeActual);
+         }
          // pass in the actual size so tracker can report the scaled size.
          // the problem is that the untransformed size is used to
          // compute the total size goal at the start of the whole upload.
          // note, this is the right number even for base-64 web services,
          // see FormDataUploadTransaction.
 
-         HTTPTransaction t = method.getImageUpload(sendFile);
-         if ( ! handler.run(regulate(t),pauseAdapter) ) {
+         FileUtil.Callback callback = (worker != null) ? (FileUtil.Callback) worker.slot : tracker;
+         Handler h = (worker != null) ? worker.handler : handler;
 
-            tracker.fileEndIncomplete();
-            setFileStatus(Roll.STATUS_FILE_PENDING);
+         HTTPTransaction t = method.getImageUpload(item,sendFile,callback);
+         if ( ! h.run(regulate(t,worker),pauseAdapter) ) {
+
+            fileEnd(worker,/* complete = */ false);
+            setFileStatus(item,Roll.STATUS_FILE_PENDING);
             return false;
          }
 
-         tracker.fileEndComplete();
-         // assign before setFileStatus saves
-         item.imageID = ((ImageUpload) t).getImageID();
-         setFileStatus(Roll.STATUS_FILE_SENT);
+         fileEnd(worker,/* complete = */ true);
+         synchronized (statusLock) {
+            // assign before setFileStatus saves
+            item.imageID = ((ImageUpload) t).getImageID();
+            setFileStatus(item,Roll.STATUS_FILE_SENT);
+         }
          return true;
 
       } catch (Exception e) {
 
-         tracker.fileEndIncomplete();
-         setFileStatus(Roll.STATUS_FILE_PENDING);
+         fileEnd(worker,/* complete = */ false);
+         setFileStatus(item,Roll.STATUS_FILE_PENDING);
          throw e;
 
       } finally {
-         if (transformFile.exists()) transformFile.delete(); // ignore result
-         // just to be tidy, try not to leave the transform file lying around
+         if (transformer != null) {
+            if (job != null) transformer.release(job);
+         } else {
+            File output = (job != null) ? job.output : transformFile;
+            if (output.exists()) output.delete(); // ignore result
+            // just to be tidy, try not to leave the transform file lying around
+         }
+      }
+   }
+
+   private void fileEnd(Worker worker, boolean complete) {
+      if (worker != null) {
+         if (worker.slot != null) tracker.parallelEnd(worker.slot,complete);
+         worker.slot = null;
+      } else if (complete) {
+         tracker.fileEndComplete();
+      } else {
+         tracker.fileEndIncomplete();
+      }
+   }
+
+   /**
+    * Set the status of an item and save the roll.  This is the same as
+    * the RollThread version except that it takes the item as an argument
+    * and is safe to call from the parallel helpers.
+    */
+   private void setFileStatus(Roll.Item item, int status) throws TableException {
+      synchronized (statusLock) {
+         item.status = status;
+         roll.recmodDate = new Date();
+         table.update(roll,lock);
+      }
+   }
+
+   private TransformConfig getTransformConfig() {
+      TransformConfig tc;
+      if      (roll.transformConfig != null) tc = roll.transformConfig;
+      else if (roll.transformType   != null) tc = config.transformConfig.derive(roll.transformType.intValue());
+      else                                   tc = config.transformConfig;
+      // order doesn't matter, we validate that config and type aren't both set
+      return tc;
+   }
+
+   /**
+    * Transform the file for a job, and record the result in the job.
+    * This runs either in the upload thread or in the transformer,
+    * and the caller is responsible for setting the done flag.
+    */
+   private static void transform(Job job) {
+      try {
+         try {
+
+            if (UploadTransform.transform(job.tc,job.input,job.rotation,job.output)) {
+               job.sizeActual = new Long(FileUtil.getSize(job.output));
+            }
+
+         } catch (OutOfMemoryError e) {
+            throw new Exception(Text.get(UploadThread.class,"e18"),e);
+            // normally, out of memory is a serious condition,
+            // hard to recover from because you can't expect
+            // to be able to run any more code that does anything,
+            // but here it probably means we failed to allocate
+            // a gigantic buffer for TIFF transformation.
+            // should still be plenty of memory for normal use.
+         }
+      } catch (ThreadStopException e) {
+         job.exception = e;
+      } catch (Exception e) { // descriptive catch and rethrow
+         job.exception = new Exception(Text.get(UploadThread.class,"e32",new Object[] { describeItem(job.item) }),e);
+      }
+      // double try block because you can't catch twice in one block
+   }
+
+// --- parallel upload ---
+
+   // when parallelUploads is more than one, the items in a roll are
+   // uploaded by a set of helper threads instead of one at a time.
+   // it's the same plan as the parallel download in DownloadThread:
+   // each helper takes the next item off a shared queue, and
+   //
+   //  * the roll and the table -- setFileStatus runs under statusLock,
+   //    and so does the imageID assignment, so each table update writes
+   //    a consistent copy of the roll.  each transaction has its own item,
+   //    so the image IDs land on the right items whatever order they
+   //    finish in, and the order XML looks them up by filename anyway.
+   //  * the tracker -- each item gets a slot, see TransferTracker
+   //  * the handler -- each helper builds its own chain from the same
+   //    DiagnoseConfig, since DiagnoseHandler keeps per-run state
+   //  * the transforms -- the transformer hands out jobs by item, and
+   //    if there's no transformer, each helper has its own output file
+   //  * the failure count -- one FailureCount, shared and synchronized.
+   //    "successive" means in order of completion, which is as close
+   //    as we can get.  when the limit is reached, or on a table error
+   //    or a thread stop, no more items are started, the ones in progress
+   //    are allowed to finish, and the exception is thrown as usual.
+   //
+   // as with downloads, if the bandwidth is limited we stay sequential.
+
+   private boolean uploadItemsParallel(LinkedList pending) throws Exception {
+
+      queue = pending; // helpers see it because they start after this
+      failed = false;
+      failures = new FailureCount();
+
+      int n = Math.min(config.parallelUploads,pending.size());
+      for (int k=0; k<n; k++) {
+         if ( ! workers.start(new Worker(k+1)) ) break; // stopping
+      }
+
+      Exception e = workers.join();
+      queue = null;
+
+      if (e != null) throw e;
+      if (isStopping()) return false;
+
+      failures.finish();
+
+      Iterator i = roll.items.iterator();
+      while (i.hasNext()) {
+         if (isPending((Roll.Item) i.next())) return false; // shouldn't happen
+      }
+
+      return true;
+   }
+
+   /**
+    * @return The next item to upload, or null if there are no more
+    *         or if an upload has failed for good.
+    */
+   private Roll.Item nextItem() {
+      Roll.Item itemNext;
+
+      synchronized (queue) {
+         if (failed || queue.isEmpty()) return null;
+         itemNext = (Roll.Item) queue.removeFirst();
+      }
+
+      logItem(itemNext);
+      return itemNext;
+   }
+
+   private void fail() {
+      synchronized (queue) {
+         failed = true;
+      }
+   }
+
+   private class Worker extends HelperThread {
+
+      private Handler handler;
+      private File transformFile; // used only if there's no transformer
+      private TransferTracker.Slot slot; // valid while an item is in progress
+
+      public Worker(int n) {
+         super(UploadThread.this,Text.get(UploadThread.class,"s30",new Object[] { Convert.fromInt(n) }));
+         handler = new DescribeHandler(new DiagnoseHandler(new DefaultHandler(),diagnoseConfig));
+         transformFile = getTransformFile(n);
+      }
+
+      public boolean regulateIsStopping() {
+         return BandwidthUtil.regulateIsStopping(config.bandwidthConfig,/* lastTransferDuration = */ 0,threadStatus,this);
+      }
+
+      protected void doHelp() throws Exception {
+         try {
+            Roll.Item itemNext;
+            while ((itemNext = nextItem()) != null) {
+
+               try {
+                  if ( ! uploadItem(itemNext,this) ) return;
+                  failures.success();
+               } catch (TableException e) {
+                  throw e;
+               } catch (ThreadStopException e) {
+                  throw e;
+               } catch (Exception e) {
+                  failures.failure(e);
+               }
+
+               if (isStopping()) return;
+            }
+         } catch (Exception e) {
+            fail();
+            throw e;
+         }
+      }
+   }
+
+// --- transform pipeline ---
+
+   // the transform is a full decode, rescale, and re-encode, so it can
+   // take about as long as the upload itself.  to let the CPU and the
+   // network work at the same time, a helper thread transforms up to
+   // config.transformAhead images ahead of the ones that are uploading,
+   // each into its own file next to transformFile.
+   //
+   // the helper never touches the roll, the table, or the tracker.
+   // it works from a list of jobs that we build up front, and the upload
+   // side takes the results back by item in uploadItem.  so, all the item
+   // status changes still happen there, and a transform error is thrown
+   // from uploadItem for the item it belongs to, and counts toward the
+   // successiveFailureLimit just the same as before.
+   //
+   // if the helper stops or dies before it reaches some job, the upload
+   // side just does that transform itself, so we never wait for a result
+   // that isn't coming.
+   //
+   // the output files come from a pool, and go back when the upload is
+   // done with them.  the helper only starts a job when fewer than
+   // transformAhead results are waiting, and each upload holds one file,
+   // so there are never more than transformAhead + parallelUploads files.
+
+   private static class Job {
+
+      public Roll.Item item;
+      public File input;
+      public TransformConfig tc;
+      public int rotation;
+      public File output;
+      public boolean taken;
+
+      // results, valid once done is set (under the job array lock)
+      public boolean done;
+      public Long sizeActual; // null if not transformed
+      public Exception exception;
+
+      public Job(Roll.Item item, File input, TransformConfig tc, File output) {
+         this.item = item;
+         this.input = input;
+         this.tc = tc;
+         this.rotation = item.rotation;
+         this.output = output;
+      }
+   }
+
+   private File getTransformFile(int n) {
+      if (n == 0) return transformFile;
+
+      String name = transformFile.getName();
+      int i = name.lastIndexOf('.');
+      if (i == -1) i = name.length();
+      return new File(transformFile.getParentFile(),name.substring(0,i) + n + name.substring(i));
+   }
+
+   private void startTransformer() {
+
+      if (config.transformAhead == 0 || roll.source == Roll.SOURCE_LOCAL) return;
+
+      LinkedList pending = getPending();
+      if (pending.size() < 2) return; // nothing to overlap
+
+      TransformConfig tc = getTransformConfig();
+      Job[] jobs = new Job[pending.size()];
+      for (int n=0; n<jobs.length; n++) {
+         Roll.Item itemNext = (Roll.Item) pending.removeFirst();
+         jobs[n] = new Job(itemNext,new File(roll.rollDir,itemNext.filename),tc,/* output = */ null);
+      }
+
+      Transformer t = new Transformer(jobs);
+      if (helpers.start(t)) transformer = t;
+      // else we're stopping, and uploadItems will notice
+   }
+
+   private void stopTransformer() {
+      if (transformer == null) return;
+
+      transformer.close();
+      helpers.join();
+      // ignore the result, the helper has no exceptions of its own
+      // that we care about, and the transform ones are in the jobs
+
+      transformer.cleanup();
+      transformer = null;
+   }
+
+   private class Transformer extends HelperThread {
+
+      private Job[] jobs;
+      private int ahead;    // jobs done but not taken yet
+      private int next;     // index of first job not taken yet
+      private boolean finished;
+      private boolean closed;
+
+      private LinkedList free; // output files not in use
+      private int files;       // number of output files so far
+
+      public Transformer(Job[] jobs) {
+         super(UploadThread.this,Text.get(UploadThread.class,"s29"));
+         this.jobs = jobs;
+         ahead = 0;
+         next = 0;
+         finished = false;
+         closed = false;
+
+         free = new LinkedList();
+         files = 0;
+      }
+
+      protected void doHelp() throws Exception {
+         try {
+            for (int n=0; n<jobs.length; n++) {
+
+               synchronized (jobs) {
+                  while (ahead >= config.transformAhead && ! closed) jobs.wait();
+                  if (closed) return;
+                  jobs[n].output = allocate();
+               }
+               if (isStopping()) return;
+
+               transform(jobs[n]);
+               // the upload side won't look at the job until it's done
+
+               synchronized (jobs) {
+                  jobs[n].done = true;
+                  if ( ! jobs[n].taken ) ahead++;
+                  jobs.notifyAll();
+               }
+            }
+         } finally {
+            synchronized (jobs) {
+               finished = true;
+               jobs.notifyAll();
+            }
+         }
+      }
+
+      /**
+       * Get an output file from the pool.  Call with the job array locked.
+       */
+      private File allocate() {
+         return free.isEmpty() ? getTransformFile(files++) : (File) free.removeFirst();
+      }
+
+      /**
+       * Get the job for an item, and mark it as taken.  This doesn't wait.
+       */
+      public Job claim(Roll.Item item) {
+         synchronized (jobs) {
+
+            Job job = null;
+            for (int n=next; n<jobs.length; n++) {
+               if (jobs[n].item == item && ! jobs[n].taken) { job = jobs[n]; break; }
+            }
+            if (job == null) { // not in the list, shouldn't happen
+               return new Job(item,new File(roll.rollDir,item.filename),jobs[0].tc,allocate());
+            }
+
+            job.taken = true;
+            while (next < jobs.length && jobs[next].taken) next++;
+
+            if (job.done) {
+               ahead--;
+               jobs.notifyAll(); // room for another
+            }
+            // else it never counts
+
+            return job;
+         }
+      }
+
+      /**
+       * Wait for the transform of a claimed job if it's in progress.
+       * If the job isn't done after this, the caller should do it.
+       */
+      public void await(Job job) {
+         synchronized (jobs) {
+
+            while ( ! job.done && ! finished ) {
+               try {
+                  jobs.wait();
+               } catch (InterruptedException e) {
+                  // won't happen, but if it does, keep waiting
+               }
+            }
+
+            if ( ! job.done && job.output == null ) job.output = allocate();
+            // if the job isn't done, the transformer is finished, and won't
+            // touch it.  if it stopped after picking the output file, we can
+            // still use that file.
+         }
+      }
+
+      /**
+       * Delete the output file for a job, and put it back in the pool.
+       */
+      public void release(Job job) {
+         synchronized (jobs) {
+            if (job.output == null) return; // never started
+            if (job.output.exists()) job.output.delete(); // ignore result
+            free.add(job.output);
+         }
+      }
+
+      public void close() {
+         synchronized (jobs) {
+            closed = true;
+            jobs.notifyAll();
+         }
+      }
+
+      /**
+       * Delete any transformed files that weren't uploaded.
+       * Call only after the helper has been joined.
+       */
+      public void cleanup() {
+         for (int n=0; n<files; n++) {
+            File file = getTransformFile(n);
+            if (file.exists()) file.delete(); // ignore result
+         }
       }
    }
 
@@ -829,7 +1333,7 @@ public class UploadThread extends RollThread {
       /**
        * @return A HTTPTransaction that implements ImageUpload.
        */
-      public abstract HTTPTransaction getImageUpload(File sendFile);
+      public abstract HTTPTransaction getImageUpload(Roll.Item item, File sendFile, FileUtil.Callback callback);
    }
 
 // --- local method ---
@@ -853,8 +1357,8 @@ public class UploadThread extends RollThread {
          return true;
       }
 
-      public HTTPTransaction getImageUpload(File sendFile) {
-         return new UploadLocalImage(sendFile);
+      public HTTPTransaction getImageUpload(Roll.Item item, File sendFile, FileUtil.Callback callback) {
+         return new UploadLocalImage(item,sendFile,callback);
       }
    }
 
@@ -951,8 +1455,8 @@ public class UploadThread extends RollThread {
          return true;
       }
 
-      public HTTPTransaction getImageUpload(File sendFile) {
-         return new UploadItem(sendFile);
+      public HTTPTransaction getImageUpload(Roll.Item item, File sendFile, FileUtil.Callback callback) {
+         return new UploadItem(item,sendFile,callback);
       }
    }
 
@@ -1240,8 +1744,8 @@ public class UploadThread extends RollThread {
          return true;
       }
 
-      public HTTPTransaction getImageUpload(File sendFile) {
-         return new UploadBase64(sendFile,lockdown,watermark,exclusive);
+      public HTTPTransaction getImageUpload(Roll.Item item, File sendFile, FileUtil.Callback callback) {
+         return new UploadBase64(item,sendFile,callback,lockdown,watermark,exclusive);
       }
    }
 
@@ -1650,10 +2154,14 @@ public class UploadThread extends RollThread {
       public String getImageID() { return imageID; }
 
       // send file may be original or transformed
+      private Roll.Item item; // not UploadThread.item, there may be several uploads going
       private File sendFile;
+      private FileUtil.Callback callback;
       private String sendName;
-      public UploadItem(File sendFile) {
+      public UploadItem(Roll.Item item, File sendFile, FileUtil.Callback callback) {
+         this.item = item;
          this.sendFile = sendFile;
+         this.callback = callback;
          sendName = Roll.limitFilename(item.getOriginalFilename(),sendFile.getName());
       }
 
@@ -1670,7 +2178,7 @@ public class UploadThread extends RollThread {
 
       protected String getFilename() { return sendName; }
       protected File getFile() { return sendFile; }
-      protected FileUtil.Callback getCallback() { return tracker; }
+      protected FileUtil.Callback getCallback() { return callback; }
 
       protected boolean receive(InputStream inputStream) throws Exception {
          Node node = receiveStandard(inputStream,0,0,0,0,0,0);
@@ -2189,14 +2697,18 @@ public class UploadThread extends RollThread {
       public String getImageID() { return imageID; }
 
       // send file may be original or transformed
+      private Roll.Item item; // not UploadThread.item, there may be several uploads going
       private File sendFile;
+      private FileUtil.Callback callback;
       private boolean lockdown;
       private boolean watermark;
       private boolean exclusive;
       private String sendName;
 
-      public UploadBase64(File sendFile, boolean lockdown, boolean watermark, boolean exclusive) {
+      public UploadBase64(Roll.Item item, File sendFile, FileUtil.Callback callback, boolean lockdown, boolean watermark, boolean exclusive) {
+         this.item = item;
          this.sendFile = sendFile;
+         this.callback = callback;
          this.lockdown = lockdown;
          this.watermark = watermark;
          this.exclusive = exclusive;
@@ -2210,7 +2722,7 @@ public class UploadThread extends RollThread {
       protected String getActionShort() { return COMMAND_UPLOAD_FILE_SHORT; }
       protected String getFileTagName() { return "FileBinaryArray"; }
       protected File getFile() { return sendFile; }
-      protected FileUtil.Callback getCallback() { return tracker; }
+      protected FileUtil.Callback getCallback() { return callback; }
 
       protected void sendImpl(Node node) throws Exception {
 
@@ -2328,8 +2840,14 @@ public class UploadThread extends RollThread {
 
       public String getImageID() { return item.imageID; } // do not change the ID
 
+      private Roll.Item item; // not UploadThread.item, there may be several uploads going
       private File sendFile;
-      public UploadLocalImage(File sendFile) { this.sendFile = sendFile; }
+      private FileUtil.Callback callback;
+      public UploadLocalImage(Roll.Item item, File sendFile, FileUtil.Callback callback) {
+         this.item = item;
+         this.sendFile = sendFile;
+         this.callback = callback;
+      }
 
       public String describe() { return Text.get(UploadThread.class,"s25",new Object[] { describeItem(item) }); }
       protected String getFixedURL() { return config.localImageURL; }
@@ -2347,7 +2865,7 @@ public class UploadThread extends RollThread {
       }
 
       protected File getFile() { return sendFile; }
-      protected FileUtil.Callback getCallback() { return tracker; }
+      protected FileUtil.Callback getCallback() { return callback; }
 
       protected boolean receive(InputStream inputStream) throws Exception {
          Node node = receiveNew(inputStream,"ErrorInfoResult");
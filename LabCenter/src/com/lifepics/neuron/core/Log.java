@@ -45,7 +45,7 @@ public class Log {
     *            The final part of the class name is applied as a prefix.
     */
    public static void log(Level level, Object o, String key) {
-      logImpl(null,level,o,Text.get(o,key),null,level);
+      logImpl(null,level,o,key,NO_ARGS,null,level);
    }
 
    /**
@@ -60,7 +60,7 @@ public class Log {
     *             The syntax "new Object[] { ... }" is particularly useful.
     */
    public static void log(Level level, Object o, String key, Object[] args) {
-      logImpl(null,level,o,Text.get(o,key,args),null,level);
+      logImpl(null,level,o,key,args,null,level);
    }
 
    /**
@@ -74,7 +74,7 @@ public class Log {
     * @param t The exception.
     */
    public static void log(Level level, Object o, String key, Throwable t) {
-      logImpl(null,level,o,ChainedException.format(Text.get(o,key),t),t,level);
+      logImpl(null,level,o,key,NO_ARGS,t,level);
    }
 
    /**
@@ -90,7 +90,7 @@ public class Log {
     * @param t The exception.
     */
    public static void log(Level level, Object o, String key, Object[] args, Throwable t) {
-      logImpl(null,level,o,ChainedException.format(Text.get(o,key,args),t),t,level);
+      logImpl(null,level,o,key,args,t,level);
    }
 
 // --- constants ---
@@ -103,23 +103,23 @@ public class Log {
 // --- new log functions ---
 
    public static void log(Reportable r, Level level, Object o, String key) {
-      logImpl(r,level,o,Text.get(o,key),null,level);
+      logImpl(r,level,o,key,NO_ARGS,null,level);
    }
 
    public static void log(Reportable r, Level level, Object o, String key, Object[] args) {
-      logImpl(r,level,o,Text.get(o,key,args),null,level);
+      logImpl(r,level,o,key,args,null,level);
    }
 
    public static void log(Reportable r, Level level, Object o, String key, Throwable t) {
-      logImpl(r,level,o,ChainedException.format(Text.get(o,key),t),t,level);
+      logImpl(r,level,o,key,NO_ARGS,t,level);
    }
 
    public static void log(Reportable r, Level level, Object o, String key, Object[] args, Throwable t) {
-      logImpl(r,level,o,ChainedException.format(Text.get(o,key,args),t),t,level);
+      logImpl(r,level,o,key,args,t,level);
    }
 
    public static void log(Reportable r, Level level, Object o, String key, Object[] args, Throwable t, Level reportAsLevel) {
-      logImpl(r,level,o,ChainedException.format(Text.get(o,key,args),t),t,reportAsLevel);
+      logImpl(r,level,o,key,args,t,reportAsLevel);
    }
 
 // --- implementation ---
@@ -134,8 +134,31 @@ public class Log {
       return (p == null) ? Logger.global : Logger.getLogger(p.getName());
    }
 
-   private static void logImpl(Reportable reportable, Level level, Object o, String message, Throwable t, Level reportAsLevel) {
-      getLogger(o).log(level,message,t); // ok if t is null
+   // formatting the message is the expensive part, especially with an exception
+   // chain, so first find out whether anyone wants it.  the logger level isn't
+   // the only consideration, since the report interfaces have their own tests.
+
+   private static final Object[] NO_ARGS = new Object[0]; // use the text as is, no MessageFormat
+
+   private static boolean isWanted(Logger logger, Reportable reportable, Level level, Level reportAsLevel) {
+      return    logger.isLoggable(level)
+             || (    reportInterface != null
+                  && reportLevel != null
+                  && reportAsLevel.intValue() >= reportLevel.intValue() )
+             || (    localReportInterface != null
+                  && level.intValue() >= Level.SEVERE.intValue()
+                  && reportable != null );
+      // these are the same tests as below, except the last one skips getLocalOrderSeq
+   }
+
+   private static void logImpl(Reportable reportable, Level level, Object o, String key, Object[] args, Throwable t, Level reportAsLevel) {
+      Logger logger = getLogger(o);
+      if ( ! isWanted(logger,reportable,level,reportAsLevel) ) return;
+
+      String message = (args == NO_ARGS) ? Text.get(o,key) : Text.get(o,key,args);
+      if (t != null) message = ChainedException.format(message,t);
+
+      logger.log(level,message,t); // ok if t is null
 
       // it would be nice to have the exact same timestamp on all 3 records,
       // but there's no easy way to do it ... I could create a LogRecord here,
@@ -5,23 +5,34 @@
 package com.lifepics.neuron.core;
 
 import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.logging.Level;
 
 /**
  * A queue that holds {@link ReportRecord} objects.
+ * The reader can wait on the queue, and it will be woken up
+ * as soon as a record arrives.
  */
 
 public class ReportQueue implements ReportInterface {
 
+   // the waiting works the same way as in WorkQueue.  the reader takes
+   // the stamp, looks at the records, and then waits only if the stamp
+   // hasn't moved, so no record can slip through the gap.  report is
+   // called from inside the logging code, but all it does is notify,
+   // so there's no risk of deadlock.
+
 // --- fields ---
 
    private int size;
    private LinkedList list;
+   private long stamp;
 
    public ReportQueue(int size) {
       this.size = size;
       list = new LinkedList();
+      stamp = 0;
    }
 
 // --- placeholder class ---
@@ -74,35 +85,63 @@ public class ReportQueue implements ReportInterface {
             list.add(new Placeholder(r)); // so, length actually increases to size+1
          }
       }
+      wake();
    }
 
 // --- remove side ---
 
    /**
-    * Get a record.  This function is non-blocking because
+    * Get up to max records from the front of the queue.  This function is non-blocking because
     * (a) I don't want to maintain interrupt state here, and
     * (b) you have to check for interrupts before you wait.
+    *
+    * @return A list of records, empty if the queue is empty.
     */
-   public synchronized ReportRecord getRecord() {
-      ReportRecord r = null;
-      if (list.size() > 0) {
-         Object o = list.getFirst();
+   public synchronized LinkedList getRecords(int max) {
+      LinkedList records = new LinkedList();
+      Iterator i = list.iterator();
+      while (i.hasNext() && records.size() < max) {
+         Object o = i.next();
          if (o instanceof Placeholder) {
-            r = ((Placeholder) o).emit();
+            records.add(((Placeholder) o).emit());
          } else {
-            r = (ReportRecord) o;
+            records.add(o);
          }
       }
-      // else empty, return null
-      return r;
+      return records;
    }
 
-
    /**
     * Two-stage get-remove process so that records aren't lost when there's a config change.
     */
-   public synchronized void removeRecord() {
-      list.removeFirst(); // not called when size 0
+   public synchronized void removeRecords(int count) {
+      while (count-- > 0) list.removeFirst(); // not called with more than we got
+   }
+
+// --- waiting ---
+
+   /**
+    * Get the current change count.  Call this <i>before</i> getting records,
+    * and pass the result to {@link #await(long,long) await}.
+    */
+   public synchronized long getStamp() {
+      return stamp;
+   }
+
+   /**
+    * Wait until a record arrives, or until the timeout expires.
+    * If anything has arrived since the stamp was taken, return right away.
+    */
+   public synchronized void await(long stamp, long timeout) throws InterruptedException {
+      if (this.stamp == stamp) wait(timeout);
+   }
+
+   /**
+    * Wake up anyone waiting on the queue, for example to let a thread stop.
+    */
+   public synchronized void wake() {
+      stamp++;
+      notifyAll();
    }
 
 }
@@ -5,6 +5,7 @@
 package com.lifepics.neuron.core;
 
 import java.text.MessageFormat;
+import java.util.HashMap;
 import java.util.Locale;
 import java.util.ResourceBundle;
 
@@ -98,8 +99,28 @@ public class Text {
     *             The syntax "new Object[] { ... }" is particularly useful.
     */
    public static String get(Object o, String key, Object[] args) {
-      return MessageFormat.format(get(o,key),args);
+      String pattern = get(o,key);
+
+      MessageFormat format;
+      synchronized (formatCache) {
+         format = (MessageFormat) formatCache.get(pattern);
+         if (format == null) {
+            format = new MessageFormat(pattern);
+            formatCache.put(pattern,format);
+         }
+      }
+
+      synchronized (format) { // MessageFormat isn't thread-safe
+         return format.format(args);
+      }
    }
 
+   // MessageFormat.format parses the pattern every time, and a lot of these
+   // calls are for logging, so keep the parsed forms.  the patterns all come
+   // from the properties files, so the cache can't grow without limit.
+   // the locale is the default locale, same as in MessageFormat.format.
+
+   private static HashMap formatCache = new HashMap(); // pattern -> MessageFormat
+
 }
 
@@ -4,6 +4,7 @@
 
 package com.lifepics.neuron.dendron;
 
+import com.lifepics.neuron.core.Convert;
 import com.lifepics.neuron.core.Text;
 import com.lifepics.neuron.core.ValidationException;
 import com.lifepics.neuron.net.BandwidthConfig;
@@ -57,6 +58,12 @@ public class DownloadConfig extends Structure {
     */
    public boolean conversionEnabled;
 
+   /**
+    * The number of files in an order to download at once.
+    * One means download them one at a time, as before.
+    */
+   public int parallelDownloads;
+
    public BandwidthConfig bandwidthConfig;
 
 // --- structure ---
@@ -64,7 +71,7 @@ public class DownloadConfig extends Structure {
    public static final StructureDefinition sd = new StructureDefinition(
 
       DownloadConfig.class,
-      0,7,
+      0,8,
       new AbstractField[] {
 
          new StringField("listURL","ListURL"),
@@ -78,6 +85,7 @@ public class DownloadConfig extends Structure {
          new LongField("startOverInterval","StartOverInterval-Millis",1,10800000), // 3 hours
          new BooleanField("prioritizeEnabled","PrioritizeEnabled",2,true),
          new BooleanField("conversionEnabled","ConversionEnabled",3,false),
+         new IntegerField("parallelDownloads","ParallelDownloads",8,1),
 
          new StructureField("bandwidthConfig","BandwidthConfig",BandwidthConfig.sd,4)
       });
@@ -90,11 +98,14 @@ public class DownloadConfig extends Structure {
 
 // --- validation ---
 
+   private static final int PARALLEL_MAX = 16;
+
    public void validate() throws ValidationException {
 
       if (idlePollInterval < 1) throw new ValidationException(Text.get(this,"e1"));
       if (listPollInterval < 1) throw new ValidationException(Text.get(this,"e2"));
       if (startOverInterval < 1) throw new ValidationException(Text.get(this,"e3"));
+      if (parallelDownloads < 1 || parallelDownloads > PARALLEL_MAX) throw new ValidationException(Text.get(this,"e4",new Object[] { Convert.fromInt(PARALLEL_MAX) }));
 
       bandwidthConfig.validate();
    }
@@ -105,6 +105,7 @@ public class DownloadSubsystem extends TransferSubsystem {
                                 c.enableItemPrice,
                                 c.localShareDir,
                                 handler,
+                                c.diagnoseConfig,
                                 tracker,
                                 makeThreadStatus());
    }
@@ -18,6 +18,10 @@ import com.lifepics.neuron.misc.FileUtil;
 import com.lifepics.neuron.misc.Purge;
 import com.lifepics.neuron.misc.TransferTracker;
 import com.lifepics.neuron.net.BandwidthUtil;
+import com.lifepics.neuron.net.DefaultHandler;
+import com.lifepics.neuron.net.DescribeHandler;
+import com.lifepics.neuron.net.DiagnoseConfig;
+import com.lifepics.neuron.net.DiagnoseHandler;
 import com.lifepics.neuron.net.DownloadTransaction;
 import com.lifepics.neuron.net.GetTransaction;
 import com.lifepics.neuron.net.Handler;
@@ -36,6 +40,8 @@ import com.lifepics.neuron.table.Table;
 import com.lifepics.neuron.table.TableException;
 import com.lifepics.neuron.thread.CategorizedException;
 import com.lifepics.neuron.thread.EntityManipulator;
+import com.lifepics.neuron.thread.HelperThread;
+import com.lifepics.neuron.thread.StoppableThread;
 import com.lifepics.neuron.thread.ThreadStatus;
 import com.lifepics.neuron.thread.ThreadStopException;
 
@@ -69,6 +75,7 @@ public class DownloadThread extends OrderThread implements DownloadTransaction.C
    private boolean holdInvoice;
    private File localShareDir;
    private Handler handler;
+   private DiagnoseConfig diagnoseConfig; // for helper handlers
    private TransferTracker tracker;
    private PauseAdapter pauseAdapter;
 
@@ -76,9 +83,14 @@ public class DownloadThread extends OrderThread implements DownloadTransaction.C
    private HashMap bookMap;
    private boolean enableItemPrice;
    private long nextPoll;
-   private Order.OrderFile orderFile; // used instead of OrderThread.item
    private ImageProcess imageProcess;
 
+   private boolean parallel;
+   private HelperThread.Group helpers;
+   private Object statusLock; // guards order and table updates while helpers run
+   private LinkedList queue;  // files not yet started, synchronized on itself
+   private boolean failed;    // also synchronized on queue
+
 // --- prioritization ---
 
    // this is the heart of the prioritization feature.
@@ -129,7 +141,7 @@ public class DownloadThread extends OrderThread implements DownloadTransaction.C
    public DownloadThread(Table table, OrderManager orderManager, MerchantConfig merchantConfig, DownloadConfig config,
                          File dataDir, File stylesheet, boolean holdInvoice,
                          ProductConfig productConfig, LinkedList coverInfos, boolean enableItemPrice, File localShareDir, Handler handler,
-                         TransferTracker tracker, ThreadStatus threadStatus) {
+                         DiagnoseConfig diagnoseConfig, TransferTracker tracker, ThreadStatus threadStatus) {
       super(Text.get(DownloadThread.class,"s1"),
             table,
             new EntityManipulator(
@@ -151,6 +163,7 @@ public class DownloadThread extends OrderThread implements DownloadTransaction.C
       this.holdInvoice = holdInvoice;
       this.localShareDir = localShareDir;
       this.handler = handler;
+      this.diagnoseConfig = diagnoseConfig;
       this.tracker = tracker;
       this.pauseAdapter = new PauseAdapter(threadStatus);
 
@@ -158,15 +171,24 @@ public class DownloadThread extends OrderThread implements DownloadTransaction.C
       bookMap = CoverInfo.buildBookMap(coverInfos);
       this.enableItemPrice = enableItemPrice;
       nextPoll = System.currentTimeMillis();
-      // orderFile initialized later, per order
       imageProcess = new ImageProcess(); // this does absolutely nothing until we run into a local image
 
       this.config.bandwidthConfig.precomputeTrivial();
+
+      parallel = (config.parallelDownloads > 1 && ! config.bandwidthConfig.limited);
+      helpers = new HelperThread.Group(this);
+      statusLock = new Object();
+      // queue and failed initialized later, per order
    }
 
    protected void doExit() {
       imageProcess.stop();
    }
+
+   protected void doStop() {
+      super.doStop();
+      helpers.stop();
+   }
    // I thought about doing the local image processing in another subsystem,
    // but it's kind of tied to downloading.  for example, if an order
    // mistakenly comes through with local images, we'll need to re-download it,
@@ -264,7 +286,11 @@ public class DownloadThread extends OrderThread implements DownloadTransaction.C
    }
 
    private Transaction regulate(Transaction t) {
-      return new RegulatedTransaction(config.bandwidthConfig,threadStatus,this,t);
+      return regulate(t,this);
+   }
+
+   private Transaction regulate(Transaction t, StoppableThread thread) {
+      return new RegulatedTransaction(config.bandwidthConfig,threadStatus,thread,t);
    }
 
 // --- list updater ---
@@ -732,17 +758,28 @@ public class DownloadThread extends OrderThread implements DownloadTransaction.C
 
    private boolean downloadItems() throws Exception {
 
+      LinkedList pending = new LinkedList();
+
       Iterator i = ((Order) order).files.iterator();
       while (i.hasNext()) {
-         orderFile = (Order.OrderFile) i.next();
+         Order.OrderFile orderFile = (Order.OrderFile) i.next();
          if (    orderFile.status == Order.STATUS_ITEM_PENDING
               || orderFile.status == Order.STATUS_ITEM_RECEIVING ) {
          // latter case shouldn't happen
 
-            Log.log(Level.FINE,this,"i5",new Object[] { orderFile.filename });
-
-            if ( ! downloadItem() ) return false;
+            pending.add(orderFile);
          }
+      }
+
+      if (parallel && pending.size() > 1) return downloadItemsParallel(pending);
+
+      i = pending.iterator();
+      while (i.hasNext()) {
+         Order.OrderFile orderFile = (Order.OrderFile) i.next();
+
+         Log.log(Level.FINE,this,"i5",new Object[] { orderFile.filename });
+
+         if ( ! downloadItem(orderFile,/* worker = */ null) ) return false;
 
          if (isStopping()) return false;
       }
@@ -750,11 +787,20 @@ public class DownloadThread extends OrderThread implements DownloadTransaction.C
       return true;
    }
 
-   private boolean downloadItem() throws Exception {
+   /**
+    * @param worker The helper thread that's doing the download,
+    *               or null if it's the download thread itself.
+    */
+   private boolean downloadItem(Order.OrderFile orderFile, Worker worker) throws Exception {
 
-      tracker.fileBegin1(orderFile);
-      tracker.fileBegin2(orderFile,order,/* sizeActual = */ (orderFile.size != null) ? null : new Long(0));
-      setFileStatus(Order.STATUS_ITEM_RECEIVING);
+      Long sizeActual = (orderFile.size != null) ? null : new Long(0);
+      if (worker != null) {
+         worker.slot = tracker.parallelBegin(orderFile,order,sizeActual);
+      } else {
+         tracker.fileBegin1(orderFile);
+         tracker.fileBegin2(orderFile,order,sizeActual);
+      }
+      setFileStatus(orderFile,Order.STATUS_ITEM_RECEIVING);
       //
       // if we know the file size, we want sizeActual to be null, since we're not scaling the size.
       // if we don't know it, we'll set the true value of sizeActual in the content length handler,
@@ -765,39 +811,50 @@ public class DownloadThread extends OrderThread implements DownloadTransaction.C
 
       // download
 
-         if ( ! downloadItemSwitch() ) {
+         if ( ! downloadItemSwitch(orderFile,worker) ) {
 
-            tracker.fileEndIncomplete();
-            setFileStatus(Order.STATUS_ITEM_PENDING);
+            fileEnd(worker,/* complete = */ false);
+            setFileStatus(orderFile,Order.STATUS_ITEM_PENDING);
             return false;
          }
 
       // done
 
-         order.lastProgress = new Date();
-
-         tracker.fileEndComplete();
-         setFileStatus(Order.STATUS_ITEM_RECEIVED);
+         fileEnd(worker,/* complete = */ true);
+         setFileStatus(orderFile,Order.STATUS_ITEM_RECEIVED); // also sets lastProgress
          return true;
 
       } catch (Exception e) {
 
-         tracker.fileEndIncomplete();
-         setFileStatus(Order.STATUS_ITEM_PENDING);
+         fileEnd(worker,/* complete = */ false);
+         setFileStatus(orderFile,Order.STATUS_ITEM_PENDING);
          throw e;
       }
    }
 
-   private boolean downloadItemSwitch() throws Exception {
+   private void fileEnd(Worker worker, boolean complete) {
+      if (worker != null) {
+         tracker.parallelEnd(worker.slot,complete);
+         worker.slot = null;
+      } else if (complete) {
+         tracker.fileEndComplete();
+      } else {
+         tracker.fileEndIncomplete();
+      }
+   }
+
+   private boolean downloadItemSwitch(Order.OrderFile orderFile, Worker worker) throws Exception {
       final String prefixLocal = "local:";
       if (orderFile.downloadURL.startsWith(prefixLocal)) {
-         return downloadItemLocal(orderFile.downloadURL.substring(prefixLocal.length()));
+         synchronized (imageProcess) { // one process, so one image at a time
+            return downloadItemLocal(orderFile,orderFile.downloadURL.substring(prefixLocal.length()));
+         }
       } else {
-         return downloadItemNormal();
+         return downloadItemNormal(orderFile,worker);
       }
    }
 
-   private boolean downloadItemLocal(String queryString) throws Exception {
+   private boolean downloadItemLocal(Order.OrderFile orderFile, String queryString) throws Exception {
 
       if (localShareDir == null) throw new Exception(Text.get(this,"e22"));
 
@@ -826,43 +883,58 @@ public class DownloadThread extends OrderThread implements DownloadTransaction.C
       return true;
    }
 
-   private boolean downloadItemNormal() throws Exception {
+   private boolean downloadItemNormal(Order.OrderFile orderFile, Worker worker) throws Exception {
 
-      DownloadItem downloadItem = new DownloadItem();
-      if (orderFile.size == null) {
-         downloadItem.setContentLengthHandler(this); // get sizeActual from HTTP header
-      }
-      // else size is known, no need to check header, and in fact it might not be there
+      if (worker == null) {
+
+         DownloadItem downloadItem = new DownloadItem(orderFile,tracker);
+         if (orderFile.size == null) {
+            downloadItem.setContentLengthHandler(this); // get sizeActual from HTTP header
+         }
+         // else size is known, no need to check header, and in fact it might not be there
+
+         return handler.run(regulate(downloadItem),pauseAdapter);
+
+      } else {
+
+         DownloadItem downloadItem = new DownloadItem(orderFile,worker.slot);
+         if (orderFile.size == null) {
+            downloadItem.setContentLengthHandler(worker);
+         }
 
-      return handler.run(regulate(downloadItem),pauseAdapter);
+         return worker.handler.run(regulate(downloadItem,worker),pauseAdapter);
+      }
    }
 
    public void handle(long contentLength) {
       tracker.setSizeActual(new Long(contentLength));
    }
 
-   private void setFileStatus(int status) throws TableException {
-
-      orderFile.status = status;
+   private void setFileStatus(Order.OrderFile orderFile, int status) throws TableException {
+      synchronized (statusLock) {
+         orderFile.status = status;
 
-      Iterator i = ((Order) order).items.iterator();
-      while (i.hasNext()) {
-         Order.Item item = (Order.Item) i.next();
+         Iterator i = ((Order) order).items.iterator();
+         while (i.hasNext()) {
+            Order.Item item = (Order.Item) i.next();
 
-         if (item.isMultiImage()) {
-            if (item.filenames.contains(orderFile.filename)) {
-               item.status = adjust(item,status);
-            }
-         } else {
-            if (item.filename .equals  (orderFile.filename)) {
-               item.status = status;
+            if (item.isMultiImage()) {
+               if (item.filenames.contains(orderFile.filename)) {
+                  item.status = adjust(item,status);
+               }
+            } else {
+               if (item.filename .equals  (orderFile.filename)) {
+                  item.status = status;
+               }
             }
+            // all items containing the file get updated
          }
-         // all items containing the file get updated
-      }
 
-      order.recmodDate = new Date();
-      table.update(order,lock);
+         if (status == Order.STATUS_ITEM_RECEIVED) order.lastProgress = new Date();
+
+         order.recmodDate = new Date();
+         table.update(order,lock);
+      }
    }
 
    private int adjust(Order.Item item, int status) {
@@ -888,17 +960,132 @@ public class DownloadThread extends OrderThread implements DownloadTransaction.C
       // passes straight through from file status to item status.
       // for RECEIVED we still have to do the computation,
       // but we can simplify that too by ignoring RECEIVING ones.
+      //
+      // the exception is parallel download, where another file
+      // really can be RECEIVING at the same time.  then the item
+      // is RECEIVING until that one finishes and comes back here.
 
       if (status != Order.STATUS_ITEM_RECEIVED) return status;
 
+      boolean receiving = false;
+
       Iterator i = item.filenames.iterator();
       while (i.hasNext()) {
          String filename = (String) i.next();
          Order.OrderFile file = ((Order) order).findFileByFilename(filename);
+         if (file.status == Order.STATUS_ITEM_RECEIVING && parallel) { receiving = true; continue; }
          if (file.status != Order.STATUS_ITEM_RECEIVED) return Order.STATUS_ITEM_PENDING;
       }
 
-      return Order.STATUS_ITEM_RECEIVED;
+      return receiving ? Order.STATUS_ITEM_RECEIVING : Order.STATUS_ITEM_RECEIVED;
+   }
+
+// --- parallel download ---
+
+   // when parallelDownloads is more than one, the files in an order are
+   // downloaded by a set of helper threads instead of one at a time.
+   // each helper takes the next file off a shared queue, so the files
+   // still start in order, they just don't wait for each other to finish.
+   // here's what the helpers share, and how.
+   //
+   //  * the order and the table -- setFileStatus runs under statusLock,
+   //    so each table update writes a consistent copy of the order
+   //  * the tracker -- each file gets a slot, see TransferTracker
+   //  * the handler -- DiagnoseHandler keeps per-run state, so each helper
+   //    builds its own chain from the same DiagnoseConfig.  the pause
+   //    adapter has no state, and ThreadStatus is synchronized
+   //  * the image process -- it's a single process, so local images
+   //    still go one at a time
+   //  * stopping -- the helpers are stopping when we are, and doStop
+   //    passes the signal along so the HTTP stop actions run
+   //
+   // if a file fails, no more files are started, the ones in progress
+   // are allowed to finish, and the first exception is thrown as usual.
+   //
+   // bandwidth limiting works by waiting in proportion to the duration
+   // of each transfer, which doesn't add up right with several transfers
+   // going, so if any schedule entry is limited we stay sequential.
+   // scheduled inactivity is fine, each helper just waits it out.
+
+   private boolean downloadItemsParallel(LinkedList pending) throws Exception {
+
+      queue = pending; // helpers see it because they start after this
+      failed = false;
+
+      int n = Math.min(config.parallelDownloads,pending.size());
+      for (int k=0; k<n; k++) {
+         if ( ! helpers.start(new Worker(k+1)) ) break; // stopping
+      }
+
+      Exception e = helpers.join();
+      queue = null;
+
+      if (e != null) throw e;
+      if (isStopping()) return false;
+
+      Iterator i = ((Order) order).files.iterator();
+      while (i.hasNext()) {
+         Order.OrderFile orderFile = (Order.OrderFile) i.next();
+         if (orderFile.status != Order.STATUS_ITEM_RECEIVED) return false; // shouldn't happen
+      }
+
+      return true;
+   }
+
+   /**
+    * @return The next file to download, or null if there are no more
+    *         or if a download has failed.
+    */
+   private Order.OrderFile nextFile() {
+      Order.OrderFile orderFile;
+
+      synchronized (queue) {
+         if (failed || queue.isEmpty()) return null;
+         orderFile = (Order.OrderFile) queue.removeFirst();
+      }
+
+      Log.log(Level.FINE,this,"i5",new Object[] { orderFile.filename });
+      return orderFile;
+   }
+
+   private void fail() {
+      synchronized (queue) {
+         failed = true;
+      }
+   }
+
+   private class Worker extends HelperThread implements DownloadTransaction.ContentLengthHandler {
+
+      private Handler handler;
+      private TransferTracker.Slot slot; // valid while a file is in progress
+
+      public Worker(int n) {
+         super(DownloadThread.this,Text.get(DownloadThread.class,"s6",new Object[] { Convert.fromInt(n) }));
+         handler = new DescribeHandler(new DiagnoseHandler(new DefaultHandler(),diagnoseConfig));
+      }
+
+      public boolean regulateIsStopping() {
+         return BandwidthUtil.regulateIsStopping(config.bandwidthConfig,/* lastTransferDuration = */ 0,threadStatus,this);
+      }
+
+      protected void doHelp() throws Exception {
+         try {
+            Order.OrderFile orderFile;
+            while ((orderFile = nextFile()) != null) {
+
+               if ( ! downloadItem(orderFile,this) ) return;
+
+               if (isStopping()) return;
+            }
+         } catch (Exception e) {
+            fail();
+            throw e;
+         }
+      }
+
+      public void handle(long contentLength) {
+         slot.setSizeActual(new Long(contentLength));
+      }
    }
 
 // --- transaction helpers ---
@@ -1151,10 +1338,15 @@ public class DownloadThread extends OrderThread implements DownloadTransaction.C
 
    private class DownloadItem extends DownloadTransaction {
 
-      public DownloadItem() {
+      private Order.OrderFile orderFile;
+      private FileUtil.Callback callback;
+
+      public DownloadItem(Order.OrderFile orderFile, FileUtil.Callback callback) {
          super( /* overwrite    = */ true,
                 /* expectedSize = */ orderFile.size,
                 /* acceptedSize = */ addNullable(orderFile.size,1) ); // order file currently misreports by 1, but don't require that
+         this.orderFile = orderFile;
+         this.callback = callback;
       }
 
       public String describe() {
@@ -1169,7 +1361,7 @@ public class DownloadThread extends OrderThread implements DownloadTransaction.C
       // no parameters, downloadURL should contain whatever is necessary
 
       public File getFile() { return new File(order.orderDir,orderFile.filename); }
-      protected FileUtil.Callback getCallback() { return tracker; }
+      protected FileUtil.Callback getCallback() { return callback; }
 
       // note, getFile produces flat format.  we have to do it that way,
       // otherwise we'd have all the complications of reformatting here.
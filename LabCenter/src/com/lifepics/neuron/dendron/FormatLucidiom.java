@@ -275,7 +275,7 @@ public class FormatLucidiom extends Format {
          // controlling the constants, put them in XSL and let them control me.
          // also this is super-convenient for initial testing.
          //
-         XML.transform(doc,raw,Resource.getResourceAsStream(this,"Lucidiom.xsl"),null);
+         XML.transform(doc,raw,XML.getTemplates(Resource.getResource(this,"Lucidiom.xsl")),null);
 
          XML.addIndentation((Node) doc.getDocumentElement()); // my indentation is better than XSL's
       }
@@ -103,7 +103,8 @@ public class GroupDerivation implements Derivation {
       Iterator i = order.items.iterator();
       while (i.hasNext()) {
          Order.Item item = (Order.Item) i.next();
-         if ( ! item.sku.equals(sku) ) continue;
+         if ( item.sku != sku && ! item.sku.equals(sku) ) continue;
+         // SKUs are interned, so the identity test usually settles it
 
          group.totalItems++;
          group.totalQuantity += item.quantity;
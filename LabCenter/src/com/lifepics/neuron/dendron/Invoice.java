@@ -22,8 +22,6 @@ import com.lifepics.neuron.struct.OldSKU;
 import com.lifepics.neuron.struct.SKU;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
@@ -568,69 +566,63 @@ public class Invoice {
 
       parameters.put("description",getDescription(orderObjectSave));
 
-      InputStream stream = new FileInputStream(postageXSL);
-      try {
-         Object transform = stream;
-
-         Document frameDoc;
-         boolean frameIndent = false;
-         if (config.postageBatchMode && postageFile.exists()) { // load existing frame
+      Object transform = XML.getTemplates(postageXSL);
 
-            frameDoc = XML.readFile(postageFile);
+      Document frameDoc;
+      boolean frameIndent = false;
+      if (config.postageBatchMode && postageFile.exists()) { // load existing frame
 
-         } else { // build new frame
+         frameDoc = XML.readFile(postageFile);
 
-            Document temp = XML.createDocument();
-            XML.createElement(temp,"Frame");
-            frameDoc = XML.createDocument();
-            transform = XML.transform(frameDoc,temp,transform,parameters);
-            frameIndent = true;
-         }
+      } else { // build new frame
 
-         Document itemDoc = XML.createDocument();
-         transform = XML.transform(itemDoc,orderDoc,transform,parameters);
+         Document temp = XML.createDocument();
+         XML.createElement(temp,"Frame");
+         frameDoc = XML.createDocument();
+         transform = XML.transform(frameDoc,temp,transform,parameters);
+         frameIndent = true;
+      }
 
-         Node frameNode = (Node) frameDoc.getDocumentElement();
-         Node itemNode  = (Node) itemDoc .getDocumentElement();
-         if (frameNode == null || itemNode == null) throw new Exception(Text.get(this,"e3"));
-         // shouldn't happen, but since the XML and XSL exist as files,
-         // it's possible they could be messed up (unlike Lucidiom which is built in memory)
+      Document itemDoc = XML.createDocument();
+      transform = XML.transform(itemDoc,orderDoc,transform,parameters);
 
-         if (frameIndent) XML.addIndentation(frameNode);
+      Node frameNode = (Node) frameDoc.getDocumentElement();
+      Node itemNode  = (Node) itemDoc .getDocumentElement();
+      if (frameNode == null || itemNode == null) throw new Exception(Text.get(this,"e3"));
+      // shouldn't happen, but since the XML and XSL exist as files,
+      // it's possible they could be messed up (unlike Lucidiom which is built in memory)
 
-         // need to normalize so that strings concatenated by XSL don't get indented
-         itemNode.normalize();
-         XML.addIndentation(itemNode);
+      if (frameIndent) XML.addIndentation(frameNode);
 
-         // notes about xmlns:
-         //
-         // 1. the problem is, a frame with xmlns plus an item without xmlns leads to a xmlns=""
-         // on the item in Java 1.5.
-         //
-         // 2. Java doesn't treat xmlns as just another attribute, it's connected to getNamespaceURI.
-         // normally getNamespaceURI is null, even when you read a doc that has a xmlns up front ...
-         // probably this is because DocumentBuilder isn't set to be namespace aware.  but, when you
-         // process in memory a template with a xmlns declaration, getNamespaceURI returns non-null
-         // for the document element and all its children (but not the doc itself).
-         //
-         // 3. but, whether or not getNamespaceURI is set, in Java 1.5 somehow that info is tracked,
-         // because an item with no namespace is recognized as foreign and gets xmlns="" thrown
-         // on the item node during the file write, even when we're in batch mode and the frame doc
-         // was read from a file.
-         //
-         // 4. a quick search online suggests there's no way to change the namespace once it's set,
-         // so setting the item namespace in the XSL is the only solution.  this produces an xmlns
-         // for every item in Java 1.4, but no big deal, nobody but me uses that any more.
+      // need to normalize so that strings concatenated by XSL don't get indented
+      itemNode.normalize();
+      XML.addIndentation(itemNode);
 
-         frameNode.appendChild(frameDoc.importNode(itemNode,true));
-         frameNode.appendChild(frameDoc.createTextNode("\n"));
-         // hard-coded structure, maybe we'll need to generalize some day
+      // notes about xmlns:
+      //
+      // 1. the problem is, a frame with xmlns plus an item without xmlns leads to a xmlns=""
+      // on the item in Java 1.5.
+      //
+      // 2. Java doesn't treat xmlns as just another attribute, it's connected to getNamespaceURI.
+      // normally getNamespaceURI is null, even when you read a doc that has a xmlns up front ...
+      // probably this is because DocumentBuilder isn't set to be namespace aware.  but, when you
+      // process in memory a template with a xmlns declaration, getNamespaceURI returns non-null
+      // for the document element and all its children (but not the doc itself).
+      //
+      // 3. but, whether or not getNamespaceURI is set, in Java 1.5 somehow that info is tracked,
+      // because an item with no namespace is recognized as foreign and gets xmlns="" thrown
+      // on the item node during the file write, even when we're in batch mode and the frame doc
+      // was read from a file.
+      //
+      // 4. a quick search online suggests there's no way to change the namespace once it's set,
+      // so setting the item namespace in the XSL is the only solution.  this produces an xmlns
+      // for every item in Java 1.4, but no big deal, nobody but me uses that any more.
 
-         XML.writeFile(postageFile,frameDoc);
+      frameNode.appendChild(frameDoc.importNode(itemNode,true));
+      frameNode.appendChild(frameDoc.createTextNode("\n"));
+      // hard-coded structure, maybe we'll need to generalize some day
 
-      } finally {
-         stream.close();
-      }
+      XML.writeFile(postageFile,frameDoc);
    }
 
    private static String getDescription(Order order) {
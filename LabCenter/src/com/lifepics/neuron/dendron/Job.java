@@ -55,7 +55,7 @@ public class Job extends Structure implements Reportable, Entity {
       new AbstractField[] {
 
          new IntegerField("jobID","JobID"),
-         new StringField("queueID","QueueID"),
+         new InternedStringField("queueID","QueueID"),
          new NullableStringField("orderSeq","OrderSeq"),
          new IntegerField("orderID","OrderID"),
          // (*) see below for refs
@@ -75,7 +75,7 @@ public class Job extends Structure implements Reportable, Entity {
          new NullableFileField("dir","Dir"),
          new InlineListField("files","File"),
          new NullableBooleanField("dirOwned","DirOwned"),
-         new NullableStringField("property","Property")
+         new NullableInternedStringField("property","Property")
       });
 
    protected StructureDefinition sd() { return sd; }
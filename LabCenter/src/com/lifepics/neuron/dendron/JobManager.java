@@ -14,8 +14,9 @@ import com.lifepics.neuron.meta.Selector;
 import com.lifepics.neuron.misc.FileUtil;
 import com.lifepics.neuron.misc.Purge;
 import com.lifepics.neuron.struct.SKU;
+import com.lifepics.neuron.table.Index;
 import com.lifepics.neuron.table.Table;
-import com.lifepics.neuron.table.View;
+import com.lifepics.neuron.table.Transaction;
 import com.lifepics.neuron.thread.PauseRetryException;
 import com.lifepics.neuron.thread.ToldException;
 
@@ -42,12 +43,16 @@ public class JobManager {
    private Table jobTable;
    private QueueList queueList;
 
+   private Index jobsByOrder;
+
 // --- construction ---
 
    public JobManager(Table orderTable, Table jobTable, QueueList queueList) {
       this.orderTable = orderTable;
       this.jobTable = jobTable;
       this.queueList = queueList;
+
+      jobsByOrder = jobTable.createIndex(JobUtil.orderID,/* unique = */ false);
    }
 
    public void reinit(QueueList queueList) {
@@ -664,26 +669,31 @@ public class JobManager {
 
    // update the tables
 
-      Object lock2 = jobTable.insert(job);
+      Object lock2;
+
+      Transaction t = new Transaction();
       try {
 
-         updateOrder(order,lock,refs,Order.STATUS_ITEM_PRINTING);
-            // this may move them forward, or backward
+         lock2 = t.insert(jobTable,job);
 
-         Log.log(Level.INFO,this,"i1",new Object[] { Convert.fromInt(job.jobID), order.getFullID(), queue.queueID, queue.name });
+         updateOrder(order,lock,refs,Order.STATUS_ITEM_PRINTING,t);
+            // this may move them forward, or backward
 
-         Object temp = lock2;
-         lock2 = null;
-         jobTable.release(job,temp);
+         t.commit();
 
       } finally {
-         if (lock2 != null) jobTable.delete(job,lock2);
+         t.abort(); // does nothing if committed
       }
 
-      // deleting isn't foolproof, but it greatly increases the atomicity.
-      // now, to get job creation without order update, not only does the
-      // order update have to fail, on a locked order even, but then also
-      // the delete has to fail too, after the insert succeeded.
+      Log.log(Level.INFO,this,"i1",new Object[] { Convert.fromInt(job.jobID), order.getFullID(), queue.queueID, queue.name });
+
+      jobTable.release(job,lock2);
+
+      // the job insert and the order update go in one transaction,
+      // so we never get a job without the order update or vice versa,
+      // even if we go down in the middle.  this used to be done by
+      // deleting the job if the order update failed, which was close
+      // but not foolproof.
       //
       // note, release failure is not a reason to delete the job.
    }
@@ -709,7 +719,7 @@ public class JobManager {
          // build a list of refs, then use the refs to go back
          // and look up the items, but that's the easiest way.
 
-         updateOrder(order,lock,refs,itemStatus);
+         updateOrder(order,lock,refs,itemStatus,null);
 
       } finally {
          orderTable.release(key,lock);
@@ -730,7 +740,7 @@ public class JobManager {
 
          if ( ! (stub instanceof Order) ) throw new Exception(Text.get(this,"e3",new Object[] { key }));
 
-         updateOrder((Order) stub,lock,refs,itemStatus);
+         updateOrder((Order) stub,lock,refs,itemStatus,null);
 
       } finally {
          orderTable.release(key,lock);
@@ -740,8 +750,10 @@ public class JobManager {
    /**
     * Set the status of items on an order, then update the order status accordingly.
     * The lock is used but not released.
+    *
+    * @param t The transaction to stage the update in, or null to update right away.
     */
-   private void updateOrder(Order order, Object lock, LinkedList refs, int itemStatus) throws Exception {
+   private void updateOrder(Order order, Object lock, LinkedList refs, int itemStatus, Transaction t) throws Exception {
 
       Iterator i = refs.iterator();
       while (i.hasNext()) {
@@ -758,7 +770,8 @@ public class JobManager {
       }
 
       order.recmodDate = new Date();
-      orderTable.update(order,lock);
+      if (t != null) t.update(orderTable,order,lock);
+      else           orderTable.update(order,lock);
    }
 
    /**
@@ -876,11 +889,14 @@ public class JobManager {
    private void makeComplete(Order order, Object orderLock, boolean force) throws Exception {
       Selector selector = new SelectorComplete(order.getFullID());
 
-      View view = jobTable.select(selector,JobUtil.orderJobID,false,false);
-      for (int i=0; i<view.size(); i++) {
-         String key = Convert.fromInt( ((Job) view.get(i)).jobID );
+      String[] keys = jobsByOrder.lookupAll(order.getFullID());
+      for (int i=0; i<keys.length; i++) {
+         String key = keys[i];
 
          try {
+            if ( ! jobTable.matches(key,selector) ) continue;
+            // filter before locking, so we don't wait on jobs we don't want
+
             Object jobLock = jobTable.lock(key);
             try {
 
@@ -899,7 +915,7 @@ public class JobManager {
                   // here, the propagation is from jobs to order ... we go through the jobs,
                   // make them all complete, and incidentally update the order and item statuses.
 
-                  updateOrder(order,orderLock,job.refs,Order.STATUS_ITEM_PRINTED);
+                  updateOrder(order,orderLock,job.refs,Order.STATUS_ITEM_PRINTED,null);
 
                } else {
 
@@ -960,9 +976,12 @@ public class JobManager {
    public void makeNotComplete(String fullID) throws Exception {
       Selector selector = new SelectorComplete(fullID);
 
-      View view = jobTable.select(selector,JobUtil.orderJobID,false,false);
-      for (int i=0; i<view.size(); i++) {
-         String key = Convert.fromInt( ((Job) view.get(i)).jobID );
+      String[] keys = jobsByOrder.lookupAll(fullID);
+      for (int i=0; i<keys.length; i++) {
+         String key = keys[i];
+
+         if ( ! jobTable.matches(key,selector) ) continue;
+         // filter before locking, so we don't wait on jobs we don't want
 
          Object jobLock = jobTable.lock(key);
          try {
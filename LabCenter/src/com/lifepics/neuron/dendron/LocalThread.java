@@ -255,7 +255,7 @@ public class LocalThread extends StoppableThread {
 
    private Document transformToOrderXML(Document docLocal) throws Exception {
       Document docOrder = XML.createDocument();
-      XML.transform(docOrder,docLocal,Resource.getResourceAsStream(this,"LocalTransform.xsl"),null);
+      XML.transform(docOrder,docLocal,XML.getTemplates(Resource.getResource(this,"LocalTransform.xsl")),null);
 
       Node node = (Node) docOrder.getDocumentElement();
       if (node == null) throw new Exception(Text.get(this,"e18",new Object[] { OrderParser.NAME_ORDER }));
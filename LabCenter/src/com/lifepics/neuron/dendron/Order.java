@@ -127,7 +127,7 @@ public class Order extends OrderStub {
          new StringField("phone","Phone"),
          new NullableStringField("specialInstructions","SpecialInstructions"),
          new NullableSKUField("specialSKU","SpecialSku","SpecialSKU"),
-         new NullableStringField("dealerName","DealerName"),
+         new NullableInternedStringField("dealerName","DealerName"),
 
          new NullableStringField("subtotal","Subtotal"),
          new NullableStringField("discountFreePrints","DiscountFreePrints"),
@@ -142,17 +142,17 @@ public class Order extends OrderStub {
          new NullableStringField("street1","Street1"),
          new NullableStringField("street2","Street2"),
          new NullableStringField("city","City"),
-         new NullableStringField("state","State"),
+         new NullableInternedStringField("state","State"),
          new NullableStringField("zipCode","ZipCode"),
-         new NullableStringField("country","Country"),
+         new NullableInternedStringField("country","Country"),
 
          new NullableStringField("shipCompany","ShipCompany"),
          new NullableStringField("shipStreet1","ShipStreet1"),
          new NullableStringField("shipStreet2","ShipStreet2"),
          new NullableStringField("shipCity","ShipCity"),
-         new NullableStringField("shipState","ShipState"),
+         new NullableInternedStringField("shipState","ShipState"),
          new NullableStringField("shipZipCode","ShipZipCode"),
-         new NullableStringField("shipCountry","ShipCountry"),
+         new NullableInternedStringField("shipCountry","ShipCountry"),
 
          new StructureListField("shipMethods","ShipMethod",ShipMethod.sd,Merge.NO_MERGE,3,0) {
             protected void loadSpecial(Node node, Object o, int version) throws ValidationException {
@@ -190,7 +190,7 @@ public class Order extends OrderStub {
             // but always write a non-null value on output.
          },
 
-         new NullableStringField("carrier","Carrier"),
+         new NullableInternedStringField("carrier","Carrier"),
          new NullableStringField("trackingNumber","TrackingNumber"),
 
          new EnumeratedField("format","Format",OrderEnum.formatType),
@@ -578,7 +578,7 @@ public class Order extends OrderStub {
             new IntegerField("quantity","Quantity"),
             new NullableStringField("comments","Comments"),
             new InlineListField("filenames","File"),
-            new NullableStringField("price","Price"),
+            new NullableInternedStringField("price","Price"),
             new NullableIntegerField("pageCount","PageCount")
          });
 
@@ -14,9 +14,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-
 /**
  * A kind of {@link TableAdapter} that allows {@linkplain Order orders}
  * and {@linkplain OrderStub order stubs}
@@ -60,22 +57,9 @@ public class OrderAdapter implements TableAdapter {
     */
    public Object load(InputStream inputStream) throws IOException, ValidationException {
 
-      // adaptation of XML.loadStream
-
-      Document doc = XML.readStream(inputStream);
-
-      Node node = XML.getElementTry(doc,NAME_STUB);
-      XML.Persist persist;
-      if (node != null) {
-         persist = new OrderStub();
-      } else {
-         node = XML.getElement(doc,NAME_ORDER); // do this second, better error message
-         persist = new Order();
-      }
-
-      persist.load(node); // ignore convenience result
-      persist.validate();
-      return persist; // convenience
+      return XML.loadStream(inputStream,new XML.Persist[] { new OrderStub(), new Order() },
+                                        new String[]      { NAME_STUB,       NAME_ORDER  });
+      // order second, so that the error message for neither is about orders
    }
 
    /**
@@ -19,9 +19,9 @@ import com.lifepics.neuron.net.DefaultHandler;
 import com.lifepics.neuron.net.Handler;
 import com.lifepics.neuron.net.MerchantConfig;
 import com.lifepics.neuron.net.PauseCallback;
+import com.lifepics.neuron.table.Index;
 import com.lifepics.neuron.table.LockException;
 import com.lifepics.neuron.table.Table;
-import com.lifepics.neuron.table.View;
 import com.lifepics.neuron.thread.StopDialog;
 import com.lifepics.neuron.thread.Subsystem;
 
@@ -46,6 +46,7 @@ public class OrderManager {
 // --- fields ---
 
    private Table table;
+   private Index ordersByHold;
    private MerchantConfig merchantConfig;
    private DownloadConfig downloadConfig;
    private File dataDir; // used for unformatting
@@ -67,6 +68,8 @@ public class OrderManager {
       this.postageXSL = postageXSL;
       this.warnNotPrinted = warnNotPrinted;
       this.enableTracking = enableTracking;
+
+      ordersByHold = table.createIndex(OrderUtil.holdRaw,/* unique = */ false);
    }
 
    public void reinit(MerchantConfig merchantConfig, DownloadConfig downloadConfig, File dataDir, File stylesheet, boolean warnNotPrinted, boolean enableTracking) {
@@ -808,22 +811,19 @@ public class OrderManager {
       // this view is redundant with the view on GroupPanel,
       // but I want to keep the option of calling here from DendronPanel too
 
-      View view = table.select(selectorInvoice,OrderUtil.orderOrderID,false,false);
-      // order doesn't matter, but the select call requires some order, might as well be order ID
+      String[] keys = ordersByHold.lookupAll(new Integer(Order.HOLD_INVOICE));
+      // same set as selectorInvoice, but without scanning and copying the whole table
 
-      int size = view.size();
+      int size = keys.length;
 
       if (size == 0) return; // don't go into doRelease and say "please select"!
       // we could pop some other message but in context I think none is better
 
-      Object[] o = new Object[size];
-      for (int i=0; i<size; i++) {
-         o[i] = view.get(i);
-      }
-
       Log.log(Level.INFO,this,"i6",new Object[] { Convert.fromInt(size) });
 
-      doRelease(owner,o);
+      for (int i=0; i<size; i++) {
+         release(keys[i]);
+      }
    }
 
    public void doPrint(Window owner, Object[] o) {
@@ -320,7 +320,7 @@ public class OrderStub extends Structure implements Reportable, Entity {
          0,0,
          new AbstractField[] {
 
-            new StringField("merchantName","MerchantName"),
+            new InternedStringField("merchantName","MerchantName"),
             new IntegerField("merchant","Merchant"),
             new IntegerField("merchantOrderID","MerchantOrderID")
          });
@@ -64,6 +64,8 @@ public class SKUComparator {
       // if there are ties, storage order breaks them.
       // exception, patterns sort to the top of their product code
 
+      if (sku1 == sku2) return 0; // common with interned SKUs
+
       int result = noCaseComparator.compare(getSortString(sku1),getSortString(sku2));
       if (result != 0) return result;
       return compareForStorage(sku1,sku2);
@@ -99,6 +101,8 @@ public class SKUComparator {
       // and are ordered first by attribute count
       // (descending) and then by internal encoding
 
+      if (sku1 == sku2) return 0;
+
       int c1 = getClassCode(sku1);
       int c2 = getClassCode(sku2);
 
@@ -14,6 +14,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Locale;
 import java.util.logging.FileHandler;
+import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -370,8 +371,10 @@ public class AppUtil {
       private static final String LOG_DIR     = "log";
       private static final String LOG_PATTERN = "log/log%g.txt";
 
+      private static final int LOG_BUFFER = 1000; // records waiting to be written
+
       private Logger logger;
-      private FileHandler handler;
+      private Handler handler;
 
       protected void initLogging1() {
 
@@ -408,12 +411,19 @@ public class AppUtil {
       protected void initLogging2(int logCount, int logSize, Level logLevel) throws ProcessException {
 
          File logPattern = new File(mainDir,LOG_PATTERN);
+         FileHandler fileHandler;
          try {
-            handler = new FileHandler(Convert.fromFile(logPattern),logSize,logCount);
+            fileHandler = new FileHandler(Convert.fromFile(logPattern),logSize,logCount);
          } catch (IOException e) {
             throw new ProcessException(Text.get(AppUtil.class,"e6"),e);
          }
-         handler.setFormatter(new LineFormatter());
+         fileHandler.setFormatter(new LineFormatter());
+
+         handler = new AsyncHandler(fileHandler,LOG_BUFFER);
+         // the file handler flushes after every record, so don't make the
+         // logging threads wait for that.  closing the async handler
+         // writes out whatever's left and closes the file handler.
+
          logger.addHandler(handler);
          logger.setLevel(logLevel);
       }
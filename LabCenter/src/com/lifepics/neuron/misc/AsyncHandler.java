@@ -0,0 +1,161 @@
+/*
+ * AsyncHandler.java
+ */
+
+package com.lifepics.neuron.misc;
+
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * A log handler that passes records to another handler on a background thread,
+ * so that the threads doing the logging don't wait for the disk.
+ */
+
+public class AsyncHandler extends Handler {
+
+   // the records go in a fixed-size ring buffer.  if the buffer fills up,
+   // the logging thread waits for space, so memory is bounded and nothing
+   // is ever dropped -- at worst we're back to writing synchronously.
+   //
+   // on close, and at JVM shutdown if close is never called, the writer
+   // drains the buffer before stopping.  the shutdown hook is removed
+   // in close, otherwise it would keep the old classes alive across
+   // an auto-update relaunch.
+
+// --- fields ---
+
+   private Handler next;
+
+   private LogRecord[] ring;
+   private int head;  // index of oldest record
+   private int count; // number of records in ring
+   private boolean busy; // writer is between taking a record and finishing it
+   private boolean closing;
+
+   private Thread writer;
+   private Thread hook;
+
+// --- construction ---
+
+   public AsyncHandler(Handler next, int capacity) {
+      this.next = next;
+
+      ring = new LogRecord[capacity];
+      head = 0;
+      count = 0;
+      busy = false;
+      closing = false;
+
+      writer = new Thread() { public void run() { runWriter(); } };
+      writer.setName("Log Writer");
+      writer.setDaemon(true); // never hold up exit, the hook handles that
+      writer.start();
+
+      hook = new Thread() { public void run() { drain(); } };
+      Runtime.getRuntime().addShutdownHook(hook);
+   }
+
+// --- writer thread ---
+
+   private void runWriter() {
+      while (true) {
+         LogRecord record;
+
+         synchronized (this) {
+            try {
+               while (count == 0 && ! closing) wait();
+            } catch (InterruptedException e) {
+               // shouldn't happen, just go around again
+            }
+            if (count == 0) {
+               if (closing) break;
+               continue;
+            }
+
+            record = ring[head];
+            ring[head] = null;
+            head = (head + 1) % ring.length;
+            count--;
+            busy = true;
+            notifyAll(); // there's space now
+         }
+
+         try {
+            next.publish(record);
+         } catch (Exception e) {
+            reportError(null,e,ErrorManager.WRITE_FAILURE);
+         }
+
+         synchronized (this) {
+            busy = false;
+            if (count == 0) notifyAll(); // for drain
+         }
+      }
+   }
+
+   /**
+    * Wait until everything in the buffer has been written.
+    */
+   private synchronized void drain() {
+      try {
+         while (count > 0 || busy) wait();
+      } catch (InterruptedException e) {
+         // give up, not much else we can do
+      }
+   }
+
+// --- implementation of Handler ---
+
+   public void publish(LogRecord record) {
+      if ( ! isLoggable(record) ) return;
+
+      synchronized (this) {
+         if (closing) return;
+
+         try {
+            while (count == ring.length) wait();
+         } catch (InterruptedException e) {
+            // fall through and write synchronously rather than lose it
+         }
+
+         if (count < ring.length) {
+            ring[(head + count) % ring.length] = record;
+            count++;
+            notifyAll();
+            return;
+         }
+      }
+
+      next.publish(record);
+   }
+
+   public void flush() {
+      drain();
+      next.flush();
+   }
+
+   public void close() {
+      synchronized (this) {
+         if (closing) return;
+         closing = true;
+         notifyAll();
+      }
+
+      try {
+         writer.join(); // writer drains the buffer before it exits
+      } catch (InterruptedException e) {
+         // just go on
+      }
+
+      try {
+         Runtime.getRuntime().removeShutdownHook(hook);
+      } catch (IllegalStateException e) {
+         // already shutting down, that's fine
+      }
+
+      next.close();
+   }
+
+}
@@ -17,6 +17,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -75,7 +76,63 @@ public class FileUtil {
 
 // --- single-file copy functions ---
 
-   private static final int CHUNK = 1024;
+   // notes on speed.  a file-to-file copy, which is what the formats do
+   // when they copy images into hot folders, goes through the channels
+   // with transferTo, so the OS can move the bytes without our help.
+   // everything else goes through a buffer, which is kept per thread so
+   // that the transfer threads don't allocate one for every file.
+   //
+   // the callback doesn't get called for every chunk any more, only when
+   // enough bytes or enough time have gone by, plus once at the end.
+   // the time rule matters for slow transfers, where the callback drives
+   // the progress display.  the rate limit doesn't use the callback, it
+   // wraps the network stream instead (see net.RateLimiter).
+   //
+   // the channel copy runs until transferTo stops making progress, not
+   // just to the size the source had at the start, so that a file that's
+   // still growing copies the same way it would through a stream.
+
+   private static final int CHUNK = 16384;
+   private static final long CHUNK_CHANNEL = 8388608; // 8 MB per transferTo call
+
+   private static final long REPORT_BYTES = 262144;
+   private static final long REPORT_MILLIS = 100;
+
+   private static ThreadLocal buffers = new ThreadLocal();
+
+   private static class Reporter {
+
+      private Callback callback;
+      private long reported;
+      private long reportedTime;
+
+      public Reporter(Callback callback) {
+         this.callback = callback;
+         reported = 0;
+         reportedTime = System.currentTimeMillis();
+
+         if (callback != null) callback.copied(0); // convenience
+      }
+
+      public void copied(long size) {
+         if (callback == null) return;
+         long now = System.currentTimeMillis();
+         if (size - reported >= REPORT_BYTES || now - reportedTime >= REPORT_MILLIS || now < reportedTime) {
+            report(size,now);
+         }
+      }
+
+      public void done(long size) {
+         if (callback == null) return;
+         if (size != reported) report(size,System.currentTimeMillis());
+      }
+
+      private void report(long size, long now) {
+         reported = size;
+         reportedTime = now;
+         callback.copied(size);
+      }
+   }
 
    /**
     * A weird function that takes variable-type arguments that can be streams or files.
@@ -86,26 +143,22 @@ public class FileUtil {
       OutputStream dest = null;
       InputStream src = null;
 
-      if (callback != null) callback.copied(0); // convenience
+      Reporter reporter = new Reporter(callback);
 
       try {
 
          dest = (oDest instanceof OutputStream) ? (OutputStream) oDest : new FileOutputStream((File) oDest);
          src  = (oSrc  instanceof InputStream ) ? (InputStream ) oSrc  : new FileInputStream ((File) oSrc );
 
-         byte[] buffer = new byte[CHUNK];
-         long size = 0;
-
-         while (true) {
-            int len = src.read(buffer);
-            if (len == -1) break;
-
-            dest.write(buffer,0,len);
-
-            size += len;
-            if (callback != null) callback.copied(size);
+         long size;
+         if (oDest instanceof File && oSrc instanceof File) {
+            size = copyChannel(((FileOutputStream) dest).getChannel(),((FileInputStream) src).getChannel(),reporter);
+         } else {
+            size = copyStream(dest,src,reporter);
          }
 
+         reporter.done(size);
+
       } finally {
 
          try {
@@ -122,6 +175,48 @@ public class FileUtil {
       }
    }
 
+   private static long copyStream(OutputStream dest, InputStream src, Reporter reporter) throws IOException {
+
+      byte[] buffer = (byte[]) buffers.get();
+      buffers.set(null); // in case the callback copies something too
+      if (buffer == null) buffer = new byte[CHUNK];
+
+      try {
+
+         long size = 0;
+
+         while (true) {
+            int len = src.read(buffer);
+            if (len == -1) break;
+
+            dest.write(buffer,0,len);
+
+            size += len;
+            reporter.copied(size);
+         }
+
+         return size;
+
+      } finally {
+         buffers.set(buffer);
+      }
+   }
+
+   private static long copyChannel(FileChannel dest, FileChannel src, Reporter reporter) throws IOException {
+
+      long size = 0;
+
+      while (true) {
+         long len = src.transferTo(size,CHUNK_CHANNEL,dest);
+         if (len <= 0) break; // at the current end of the file, same as EOF
+
+         size += len;
+         reporter.copied(size);
+      }
+
+      return size;
+   }
+
 // --- copy layer 2 ---
 
    /**
@@ -6,6 +6,7 @@ package com.lifepics.neuron.misc;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.LinkedList;
 
 /**
  * An object that keeps track of file transfers and reports to listeners.
@@ -39,6 +40,14 @@ import java.util.Iterator;
  * The states view is especially useful here because we do actually keep
  * an explicit state variable that tells which data fields are valid.
  *
+ * When several files are transferred at once, each one gets a {@link Slot}
+ * that stands in for FB1-FE and FileUtil.Callback.  In the grammar,
+ *
+ *    <file>    = PB {slot.setSizeActual@ slot.copied*} PE
+ *
+ * except that the files can overlap.  While any slot is open we're in
+ * state #5, and the file fields show the most recently started slot.
+ *
  * The third interface is setListener.  It's not much of an interface,
  * only called once, but it does need to be synchronized like the others
  * because the transfer threads start running before the UI is complete.
@@ -56,8 +65,9 @@ import java.util.Iterator;
  * be called in state #2 or higher.
  *
  * All interface entry points are synchronized to avoid any thread issues.
- * Interfaces 1, 2, and 6 are called from the transfer thread, 4 and 5 from
- * the UI thread, and 3 from the main app thread during frame construction.
+ * Interfaces 1, 2, and 6 are called from the transfer thread (or threads,
+ * for slots), 4 and 5 from the UI thread, and 3 from the main app thread
+ * during frame construction.
  */
 
 public class TransferTracker implements FileUtil.Callback {
@@ -122,6 +132,10 @@ public class TransferTracker implements FileUtil.Callback {
    // (*) the marked fields can be set or clear independent of the current
    // state, so we need to make them nullable to track that
 
+   // parallel transfers
+   private LinkedList slots; // open slots, most recently started last
+   private long totalSizeSlots; // sum of slot sizes, not yet in totalSizeBase
+
 // --- construction ---
 
    private static final int CYCLE = 5; // cycle length for rolling average
@@ -138,6 +152,9 @@ public class TransferTracker implements FileUtil.Callback {
 
       averageBytes  = new long[CYCLE];
       averageMillis = new long[CYCLE];
+
+      slots = new LinkedList();
+      totalSizeSlots = 0;
    }
 
    public void setAdapter(Adapter adapter) {
@@ -184,6 +201,9 @@ public class TransferTracker implements FileUtil.Callback {
       totalSizeBase = totalSize;
       recalcProgress();
 
+      slots.clear(); // should already be empty
+      totalSizeSlots = 0;
+
       state = 2;
 
       listener.setCount(count);
@@ -392,11 +412,44 @@ public class TransferTracker implements FileUtil.Callback {
       // the accumulator to zero.
 
       if (sizeActualGoal != null) {
-         long goal = sizeActualGoal.longValue();
-
          // if sizeActualGoal is null, sizeActual isn't used, no update needed
-         sizeActual = size;
-         if (sizeActual > goal) sizeActual = goal; // clamp this one too
+         sizeActual = clampActual(size,sizeActualGoal);
+      }
+
+      size = scale(size,sizeGoal,sizeActualGoal);
+
+      this.size = size;
+      totalSize = totalSizeBase + size;
+      recalcProgress();
+
+      listener.setSize( (sizeActualGoal != null) ? sizeActual : size );
+      listener.setTotalSize(totalSize);
+      listener.setProgress(fraction,percent);
+      //
+      // you might think we'd want to have a single listener call, so that we don't
+      // start a repaint with the first and then have to do a second repaint later
+      // for the other two.  but, there's nothing magic about the number of function
+      // calls ... the calls don't transfer to the UI thread, so even with one call,
+      // the first field-set would start the repaint process.  or, more to the point,
+      // even with three calls, they'll almost certainly all finish before the first
+      // repaint goes anywhere, so it doesn't matter.
+      //
+      // if it does ever matter, this is the place to fix it, since this is by far
+      // the most frequently used entry point.
+   }
+
+   private static long clampActual(long size, Long sizeActualGoal) {
+      long goal = sizeActualGoal.longValue();
+      return (size > goal) ? goal : size; // clamp this one too
+   }
+
+   /**
+    * Convert a copied size into the size that counts toward the total.
+    */
+   private static long scale(long size, long sizeGoal, Long sizeActualGoal) {
+
+      if (sizeActualGoal != null) {
+         long goal = sizeActualGoal.longValue();
 
          if (goal != 0) {
 
@@ -416,24 +469,126 @@ public class TransferTracker implements FileUtil.Callback {
       if (size > sizeGoal) size = sizeGoal; // in case the download is too large,
          // or there's rounding error in the scaled value
 
-      this.size = size;
-      totalSize = totalSizeBase + size;
+      return size;
+   }
+
+// --- interface 1a : parallel transfers ---
+
+   /**
+    * The per-file state of one of several transfers running at once.
+    * The slot methods can be called from any thread.
+    */
+   public class Slot implements FileUtil.Callback {
+
+      private String filename;
+      private long size;
+      private long sizeGoal;
+      private long sizeActual;
+      private Long sizeActualGoal;
+      private long lastSize;
+
+      public void setSizeActual(Long sizeActualGoal) { slotSetSizeActual(this,sizeActualGoal); }
+      public void copied(long size) { slotCopied(this,size); }
+   }
+
+   public synchronized Slot parallelBegin(Object item, Object group, Long sizeActualGoal) throws IOException {
+
+      Slot slot = new Slot();
+      slot.filename = adapter.getFilename(item);
+      slot.size = 0;
+      slot.sizeGoal = adapter.getSize(item,group);
+      slot.sizeActual = 0;
+      slot.sizeActualGoal = sizeActualGoal;
+      slot.lastSize = 0;
+
+      slots.add(slot);
+      show(slot);
+
+      return slot;
+   }
+
+   public synchronized void parallelEnd(Slot slot, boolean complete) {
+
+      boolean shown = isShown(slot);
+      if ( ! slots.remove(slot) ) return; // already ended, shouldn't happen
+
+      totalSizeSlots -= slot.size;
+      if (complete) {
+         count += 1;
+         totalSizeBase += slot.sizeGoal;
+         totalSizeActual += (slot.sizeActualGoal != null) ? slot.sizeActualGoal.longValue() : slot.sizeGoal;
+      }
+      // else the partial size just rolls back out of the total
+
+      totalSize = totalSizeBase + totalSizeSlots;
       recalcProgress();
 
-      listener.setSize( (sizeActualGoal != null) ? sizeActual : size );
+      if (complete) listener.setCount(count);
       listener.setTotalSize(totalSize);
       listener.setProgress(fraction,percent);
-      //
-      // you might think we'd want to have a single listener call, so that we don't
-      // start a repaint with the first and then have to do a second repaint later
-      // for the other two.  but, there's nothing magic about the number of function
-      // calls ... the calls don't transfer to the UI thread, so even with one call,
-      // the first field-set would start the repaint process.  or, more to the point,
-      // even with three calls, they'll almost certainly all finish before the first
-      // repaint goes anywhere, so it doesn't matter.
-      //
-      // if it does ever matter, this is the place to fix it, since this is by far
-      // the most frequently used entry point.
+
+      if (slots.isEmpty()) {
+         state = 3;
+         listener.clearFile();
+      } else if (shown) {
+         show((Slot) slots.getLast());
+      }
+   }
+
+   private synchronized void slotSetSizeActual(Slot slot, Long sizeActualGoal) {
+
+      slot.sizeActualGoal = sizeActualGoal;
+      if (isShown(slot)) show(slot);
+   }
+
+   private synchronized void slotCopied(Slot slot, long size) {
+
+      if (size == 0) {
+         slot.lastSize = 0;
+      } else {
+         accumulator += (size - slot.lastSize);
+         slot.lastSize = size;
+      }
+      // see copied for notes
+
+      if (slot.sizeActualGoal != null) slot.sizeActual = clampActual(size,slot.sizeActualGoal);
+
+      size = scale(size,slot.sizeGoal,slot.sizeActualGoal);
+
+      totalSizeSlots += (size - slot.size);
+      slot.size = size;
+      totalSize = totalSizeBase + totalSizeSlots;
+      recalcProgress();
+
+      if (isShown(slot)) {
+         this.size = slot.size;
+         sizeActual = slot.sizeActual;
+         listener.setSize( (sizeActualGoal != null) ? sizeActual : this.size );
+      }
+      listener.setTotalSize(totalSize);
+      listener.setProgress(fraction,percent);
+   }
+
+   private boolean isShown(Slot slot) {
+      return ( ! slots.isEmpty() && slot == slots.getLast() );
+   }
+
+   /**
+    * Copy a slot into the file fields, so that setListener works as usual.
+    */
+   private void show(Slot slot) {
+
+      filename = slot.filename;
+      size = slot.size;
+      sizeGoal = slot.sizeGoal;
+      sizeActual = slot.sizeActual;
+      sizeActualGoal = slot.sizeActualGoal;
+
+      state = 5;
+
+      listener.setFilename(filename);
+      listener.setSize( (sizeActualGoal != null) ? sizeActual : size );
+      listener.setSizeGoal( (sizeActualGoal != null) ? sizeActualGoal.longValue() : sizeGoal);
    }
 
 // --- interface 3 : setListener ---
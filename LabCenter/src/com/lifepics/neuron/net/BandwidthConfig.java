@@ -32,9 +32,12 @@ public class BandwidthConfig extends Structure {
    // fields that are not real
    public boolean trivial;
    public boolean trivialRestrict;
+   public boolean limited;
+   RateLimiter.Channel rateChannel; // shared by copies, see RateLimiter
 
    public LinkedList schedules; // ok, technically schedule entries
    public int delayCap;
+   public int rateWeight; // share of the rate limit when other transfers are busy
 
 // --- sort helpers ---
 
@@ -52,7 +55,7 @@ public class BandwidthConfig extends Structure {
    public static final StructureDefinition sd = new StructureDefinition(
 
       BandwidthConfig.class,
-      0,0,
+      0,1,
       new AbstractField[] {
 
          new StructureListField("schedules","Schedule",Schedule.sd,Merge.IDENTITY,0,0) { // custom loadDefault
@@ -74,7 +77,8 @@ public class BandwidthConfig extends Structure {
          // still not perfect because it's limited to int granularity, but it
          // isn't too bad.  in practice we'll probably always have two entries.
 
-         new IntegerField("delayCap","DelayCap-Millis",0,60000) // 1 minute
+         new IntegerField("delayCap","DelayCap-Millis",0,60000), // 1 minute
+         new IntegerField("rateWeight","RateWeight",1,1)
       });
 
    protected StructureDefinition sd() { return sd; }
@@ -136,6 +140,8 @@ public class BandwidthConfig extends Structure {
       if (delayCap < 0) throw new ValidationException(Text.get(this,"e6"));
       // might as well allow zero ... we have to handle the zero wait case anyway,
       // since a high percentage and fast transfer rate could also produce it.
+
+      if (rateWeight < 1) throw new ValidationException(Text.get(this,"e11"));
    }
 
    /**
@@ -158,11 +164,13 @@ public class BandwidthConfig extends Structure {
 
    /**
     * A bandwidth config is trivial if it says to run at full speed all the time.
+    * It's limited if some entry says to run at a fraction of full speed.
     */
    public void precomputeTrivial() {
 
       trivial = true;
       trivialRestrict = true;
+      limited = false;
 
       Iterator i = schedules.iterator();
       while (i.hasNext()) {
@@ -170,6 +178,8 @@ public class BandwidthConfig extends Structure {
 
          if (schedule.bandwidthPercent != 100) trivial = false;
 
+         if (schedule.bandwidthPercent != 0 && schedule.bandwidthPercent != 100) limited = true;
+
          if (schedule.bandwidthPercent != 0 && schedule.isRestricted()) trivialRestrict = false;
          // from validation we know that there's a nonrestricted one,
          // so if there's a restricted one too, then the schedule is nontrivial.
@@ -189,6 +199,7 @@ public class BandwidthConfig extends Structure {
       public int startTime;
       public int bandwidthPercent;
       public Boolean restrict; // upload only, but not worth subclassing
+      public Integer rateLimit; // KB per second, null for no limit; see RateLimiter
 
       public static final StructureDefinition sd = new StructureDefinition(
 
@@ -209,7 +220,8 @@ public class BandwidthConfig extends Structure {
                // but I'm tired of setting them up for now.
             },
             new IntegerField("bandwidthPercent","BandwidthPercent",0,100),
-            new NullableBooleanField("restrict","Restrict",0,null)
+            new NullableBooleanField("restrict","Restrict",0,null),
+            new NullableIntegerField("rateLimit","RateLimit-KBps",0,null)
          });
 
       protected StructureDefinition sd() { return sd; }
@@ -221,6 +233,10 @@ public class BandwidthConfig extends Structure {
          if (bandwidthPercent < 0 || bandwidthPercent > 100) {
             throw new ValidationException(Text.get(BandwidthConfig.class,"e2",new Object[] { Convert.fromInt(bandwidthPercent) }));
          }
+
+         if (rateLimit != null && rateLimit.intValue() < 1) {
+            throw new ValidationException(Text.get(BandwidthConfig.class,"e12",new Object[] { Convert.fromInt(rateLimit.intValue()) }));
+         }
       }
 
       public boolean isRestricted() {
@@ -27,6 +27,10 @@ public class BandwidthUtil {
    // our bandwidth statistics in the UI; and it isn't even that exact
    // because for downloads we'd get a burst from the server until the
    // buffers fill up.
+   //
+   // update: for a hard cap in KB/s, that's what RateLimiter does after all.
+   // with small steady waits instead of long ones the timeout and statistics
+   // problems don't really come up, and the burst is only a buffer's worth.
 
    public static int getTimeNow() { // if you don't need to reuse the calendar later
       return getTimeNow(Calendar.getInstance());
@@ -0,0 +1,109 @@
+/*
+ * ConnectionPool.java
+ */
+
+package com.lifepics.neuron.net;
+
+import HTTPClient.HTTPConnection;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * A pool of idle HTTP connections, shared by all {@link HTTPTransaction} objects,
+ * so that a run of requests to the same server can reuse one keep-alive socket
+ * instead of doing a new TCP (and SSL) handshake every time.
+ */
+
+public class ConnectionPool {
+
+   // a connection is taken out of the pool for the whole length of
+   // a transaction, so no two threads ever use one at the same time,
+   // and it only goes back in if the transaction finished cleanly.
+   // anything else (exception, stop, timeout) means we don't know
+   // what state the socket is in, so the caller stops the connection
+   // and lets it go, same as before there was a pool.
+   //
+   // HTTPClient closes sockets that have been idle for sixty seconds,
+   // but most servers give up on a keep-alive much sooner than that,
+   // and a POST that goes out on a socket the server just closed
+   // can't be retried automatically, since the body is streamed.
+   // so, only reuse connections that have been idle a short time;
+   // the ones that are older than that are stopped as we find them.
+   //
+   // to turn keep-alive off completely, run with the HTTPClient system
+   // property HTTPClient.disableKeepAlives=true; the pool still works,
+   // it just never gets a socket that's still open.
+
+// --- constants ---
+
+   private static final long IDLE_LIMIT = 4000; // millis, under the usual five-second server setting
+   private static final int  HOST_LIMIT = 4;    // max idle connections per host
+
+// --- fields ---
+
+   private static HashMap idle = new HashMap(); // key -> LinkedList of Entry, most recent last
+
+// --- helper classes ---
+
+   private static class Entry {
+      public HTTPConnection http;
+      public long time;
+   }
+
+// --- methods ---
+
+   private static String getKey(URL url) {
+      return url.getProtocol() + "://" + url.getHost().toLowerCase() + ":" + url.getPort();
+   }
+
+   /**
+    * Get a connection for a URL, either an idle one from the pool or a new one.
+    */
+   public static HTTPConnection get(URL url) throws Exception {
+      HTTPConnection http = null;
+
+      synchronized (idle) {
+         LinkedList list = (LinkedList) idle.get(getKey(url));
+         if (list != null) {
+            long limit = System.currentTimeMillis() - IDLE_LIMIT;
+            while ( ! list.isEmpty() ) {
+               Entry entry = (Entry) list.removeLast();
+               if (entry.time >= limit) { http = entry.http; break; }
+               entry.http.stop(); // too old, and so are any before it
+            }
+         }
+      }
+
+      if (http == null) {
+         http = new HTTPConnection(url);
+         http.setAllowUserInteraction(false);
+      } else {
+         http.setTimeout(HTTPConnection.getDefaultTimeout()); // in case it changed
+      }
+
+      return http;
+   }
+
+   /**
+    * Put a connection back into the pool after a successful transaction.
+    */
+   public static void put(URL url, HTTPConnection http) {
+      Entry entry = new Entry();
+      entry.http = http;
+      entry.time = System.currentTimeMillis();
+
+      String key = getKey(url);
+      synchronized (idle) {
+         LinkedList list = (LinkedList) idle.get(key);
+         if (list == null) {
+            list = new LinkedList();
+            idle.put(key,list);
+         }
+         list.add(entry);
+         if (list.size() > HOST_LIMIT) ((Entry) list.removeFirst()).http.stop();
+      }
+   }
+
+}
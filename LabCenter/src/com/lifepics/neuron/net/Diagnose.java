@@ -139,7 +139,9 @@ public class Diagnose {
          URL url = new URL(s);
 
          HTTPConnection http = new HTTPConnection(url);
-         http.setDefaultHeaders(new NVPair[] { new NVPair("Connection","close") }); // see note in HTTPTransaction
+         http.setDefaultHeaders(new NVPair[] { new NVPair("Connection","close") });
+         // not from ConnectionPool, the point here is to test making a connection,
+         // and closing right away means HTTPClient doesn't hold the socket for a minute
          http.setTimeout(timeoutInterval);
          http.setAllowUserInteraction(false);
 
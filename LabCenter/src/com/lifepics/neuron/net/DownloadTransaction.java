@@ -11,12 +11,15 @@ import com.lifepics.neuron.object.Obfuscate;
 
 import HTTPClient.HTTPConnection;
 import HTTPClient.HTTPResponse;
+import HTTPClient.NVPair;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.util.zip.Adler32;
 import java.util.zip.CheckedOutputStream;
 import java.util.zip.Checksum;
@@ -34,6 +37,13 @@ public abstract class DownloadTransaction extends GetTransaction {
    private long acceptedSize; // a size that's not correct but that we accept anyway
    private Integer expectedChecksum;
 
+   // resume state, carried from one run to the next when the handler retries
+   private String validator; // ETag or Last-Modified of the full response, for If-Range
+   private long prefixSize;  // bytes that writePrefix put at the start of the file
+   private long resumeSize;  // bytes of content in the file, or -1 for no resume
+   private Checksum checksum; // running checksum of those bytes, if we're checking
+   private boolean partial;  // whether the current response is the rest of the content
+
    public DownloadTransaction(boolean overwrite) {
       this(overwrite,-1,-1);
    }
@@ -52,6 +62,11 @@ public abstract class DownloadTransaction extends GetTransaction {
       this.expectedSize = expectedSize;
       this.acceptedSize = acceptedSize;
       this.expectedChecksum = null;
+
+      validator = null;
+      resumeSize = -1;
+      checksum = null;
+      partial = false;
    }
 
    public void initChecksum(int expectedChecksum) {
@@ -92,27 +107,45 @@ public abstract class DownloadTransaction extends GetTransaction {
       // except that the prefix and suffix blocks are added.
 
       File file = getFile();
-      if (overwrite) FileUtil. makeNotExists(file);
-      else           FileUtil.checkNotExists(file);
 
-      // the call to makeNotExists has to go here,
-      // not outside the Transaction object,
-      // so we can retry after a partial download
+      long offset;
+      if (partial) { // send already checked that the file is what we left
+
+         offset = resumeSize;
+
+      } else {
+
+         if (overwrite || resumeSize != -1) FileUtil. makeNotExists(file);
+         else                               FileUtil.checkNotExists(file);
 
-      Checksum checksum = null;
+         // the call to makeNotExists has to go here,
+         // not outside the Transaction object,
+         // so we can retry after a partial download.
+         // if there's resume state, the file is ours from a previous run.
+
+         offset = 0;
+         checksum = (expectedChecksum != null) ? new Adler32() : null;
+      }
+      resumeSize = -1; // until we know what made it into the file
 
       OutputStream dest = null;
+      CountingStream counter = null;
+      boolean copied = false;
       try {
-         dest = new FileOutputStream(file);
+         dest = new FileOutputStream(file,/* append = */ partial);
 
          OutputStream useDest = dest;
-         if (expectedChecksum != null) {
-            checksum = new Adler32();
+         if (checksum != null) {
             useDest = new CheckedOutputStream(dest,checksum);
          }
+         counter = new CountingStream(useDest);
 
-         writePrefix(dest);
-         FileUtil.copyNoClose(useDest,inputStream,getCallback());
+         if ( ! partial ) {
+            writePrefix(dest);
+            prefixSize = FileUtil.getSize(file); // file stream isn't buffered
+         }
+         FileUtil.copyNoClose(counter,RateLimiter.wrap(inputStream),offsetCallback(getCallback(),offset));
+         copied = true;
          writeSuffix(dest);
 
       } finally {
@@ -121,6 +154,13 @@ public abstract class DownloadTransaction extends GetTransaction {
          } catch (IOException e) {
             // ignore
          }
+
+         if ( ! copied && counter != null && validator != null ) {
+            long size = offset + counter.count;
+            if (size > 0 && file.length() == prefixSize + size) resumeSize = size;
+         }
+         // a failed write could leave bytes in the file that the
+         // checksum never saw, so only resume if the sizes agree
       }
 
       // update #2: Opie does send a Content-Length header, so that takes care of that.
@@ -197,7 +237,34 @@ public abstract class DownloadTransaction extends GetTransaction {
    }
 
    protected HTTPResponse send(HTTPConnection http, String urlFile, PauseCallback callback) throws Exception {
-      HTTPResponse response = super.send(http,urlFile,callback);
+      HTTPResponse response;
+
+      partial = false;
+      if (resumeSize > 0) {
+
+         NVPair[] headers = new NVPair[] {
+               new NVPair("Range","bytes=" + Convert.fromLong(resumeSize) + "-"),
+               new NVPair("If-Range",validator)
+            };
+         response = http.Get(urlFile,(String) null,headers);
+         if (callback != null) callback.unpaused(); // we have a connection
+
+         int code = response.getStatusCode();
+         partial = (code == HttpURLConnection.HTTP_PARTIAL);
+         if (partial) checkPartial(response);
+         // if the server sent the whole thing instead, start over with it
+
+         if (code == HTTP_RANGE_NOT_SATISFIABLE) resumeSize = -1;
+         // the error goes up as usual, but the retry won't ask for a range
+
+      } else {
+         response = super.send(http,urlFile,callback);
+      }
+
+      if ( ! partial && response.getStatusCode() == HttpURLConnection.HTTP_OK ) {
+         validator = getValidator(response);
+      }
+
       if (contentLengthHandler != null) {
 
          String header = response.getHeader("Content-Length");
@@ -207,11 +274,75 @@ public abstract class DownloadTransaction extends GetTransaction {
 
          if (header == null) throw new Exception(Text.get(DownloadTransaction.class,"e3"));
 
-         contentLengthHandler.handle(Convert.toLong(header)); // won't fail, HTTPClient has already examined it
+         long contentLength = Convert.toLong(header); // won't fail, HTTPClient has already examined it
+         if (partial) contentLength += resumeSize;
+
+         contentLengthHandler.handle(contentLength);
       }
       return response;
    }
 
+   protected boolean isCodeOK(int code) {
+      return super.isCodeOK(code) || (partial && code == HttpURLConnection.HTTP_PARTIAL);
+   }
+
+// --- resume helpers ---
+
+   private static final int HTTP_RANGE_NOT_SATISFIABLE = 416; // not in HttpURLConnection
+
+   // when a download fails partway, say with a timeout, and the handler
+   // retries the transaction, we ask for just the rest of the content.
+   // the checksum object has seen exactly the content that's in the file,
+   // so it carries on from there and the final checks work as usual.
+   //
+   // we only resume if the full response had a strong validator, so that
+   // If-Range can make the server send the whole thing if it's changed,
+   // and a Content-Length, which rules out content encoding -- HTTPClient
+   // decodes gzip transparently and drops the length when it does.
+   // a server that doesn't do ranges just sends 200, and we start over.
+
+   private static String getValidator(HTTPResponse response) throws Exception {
+
+      if (response.getHeader("Content-Length") == null) return null;
+
+      String etag = response.getHeader("ETag");
+      if (etag != null && ! etag.startsWith("W/")) return etag; // weak ones aren't allowed
+
+      return response.getHeader("Last-Modified"); // may be null
+   }
+
+   private void checkPartial(HTTPResponse response) throws Exception {
+
+      String range = response.getHeader("Content-Range");
+      String encoding = response.getHeader("Content-Encoding");
+      String expected = "bytes " + Convert.fromLong(resumeSize) + "-";
+
+      if (    range == null
+           || ! range.startsWith(expected)
+           || (encoding != null && ! encoding.equalsIgnoreCase("identity")) ) {
+
+         resumeSize = -1; // next time, get the whole thing
+         throw new RetryableException(Text.get(DownloadTransaction.class,"e4",new Object[] { range }));
+      }
+   }
+
+   private static FileUtil.Callback offsetCallback(final FileUtil.Callback callback, final long offset) {
+      if (callback == null || offset == 0) return callback;
+      return new FileUtil.Callback() {
+         public void copied(long size) { callback.copied(offset + size); }
+      };
+      // a zero from the copy means the start of a new attempt, but the
+      // progress shouldn't go back to zero when we're resuming.  passing
+      // the offset instead leaves the rate accumulator where it was.
+   }
+
+   private static class CountingStream extends FilterOutputStream {
+      public long count;
+      public CountingStream(OutputStream out) { super(out); count = 0; }
+      public void write(int b) throws IOException { out.write(b); count++; }
+      public void write(byte[] b, int off, int len) throws IOException { out.write(b,off,len); count += len; }
+   }
+
 // --- checksum utility ---
 
    private static class NullOutputStream extends OutputStream {
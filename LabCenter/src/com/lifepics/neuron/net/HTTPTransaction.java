@@ -62,6 +62,13 @@ public abstract class HTTPTransaction extends Transaction {
     */
    protected abstract boolean receive(InputStream inputStream) throws Exception;
 
+   /**
+    * Check whether a response code means success.
+    */
+   protected boolean isCodeOK(int code) {
+      return (code == HttpURLConnection.HTTP_OK);
+   }
+
 // --- the run function ---
 
    /**
@@ -97,14 +104,9 @@ public abstract class HTTPTransaction extends Transaction {
 
    // send and receive
 
-      HTTPConnection http = new HTTPConnection(url);
-      http.setDefaultHeaders(new NVPair[] { new NVPair("Connection","close") }); // see note below
+      HTTPConnection http = ConnectionPool.get(url);
       // default timeout
-      http.setAllowUserInteraction(false);
-
-      // since I create a new HTTPConnection object for every request,
-      // connections wouldn't be reused anyway, but this way we don't
-      // wait for sixty seconds before HTTPClient auto-closes it.
+      boolean reuse = false;
 
       HTTPStopAction hsa = new HTTPStopAction(http);
       try {
@@ -112,18 +114,33 @@ public abstract class HTTPTransaction extends Transaction {
 
          HTTPResponse response = send(http,url.getFile(),callback);
          checkResponseCode(response);
-         return receive(getInputStream(response));
+
+         InputStream inputStream = getInputStream(response);
+         boolean result = receive(inputStream);
+
+         if (result) {
+            try {
+               inputStream.close(); // finish the response so the socket can be reused
+               reuse = true;
+            } catch (IOException e) {
+               // the transaction still succeeded, just don't reuse
+            }
+         }
+         return result;
 
       } catch (Exception e) {
          if (hsa.caused(e)) return false; else throw e;
       } finally {
          hsa.clear();
-         http.stop(); // see comment below
+         if (reuse) ConnectionPool.put(url,http);
+         else http.stop(); // see comment below
       }
 
-      // the HTTPClient documentation says to use response.getInputStream().close().
-      // that would be necessary if we had other requests on the same connection,
-      // but we don't, and using stop instead of close takes care of one minor problem.
+      // the HTTPClient documentation says to use response.getInputStream().close(),
+      // and that's what we do when things go well, so that the connection can go
+      // back in the pool.  when they don't, we use stop instead, which takes care
+      // of one minor problem, and also means that a connection we're unsure about
+      // never gets reused.
       //
       // (1) if the connection times out before the header loads,
       //     getInputStream waits (again) for the header to load,
@@ -149,9 +166,9 @@ public abstract class HTTPTransaction extends Transaction {
       // no idea why, probably something about the demux.  retry, but not infinitely.
    }
 
-   private static void checkResponseCode(HTTPResponse response) throws Exception {
+   private void checkResponseCode(HTTPResponse response) throws Exception {
       int code = response.getStatusCode();
-      if (code != HttpURLConnection.HTTP_OK) {
+      if ( ! isCodeOK(code) ) {
 
          String message = response.getReasonLine();
 
@@ -223,13 +240,16 @@ public abstract class HTTPTransaction extends Transaction {
       if (callback1 != null) callback1.unpaused(); // we have a connection
 
       TimeoutStream stream = new TimeoutStream(stream0,http);
+      OutputStream limited = RateLimiter.wrap(stream);
+      // everything goes through the limit, encoding and blobs included,
+      // since what we're limiting is the bytes on the line
       try {
          stream.start();
 
-         if (blob1 != null) stream.write(blob1);
+         if (blob1 != null) limited.write(blob1);
          if (base64) {
 
-            OutputStream os = new Base64EncoderOutputStream(stream);
+            OutputStream os = new Base64EncoderOutputStream(limited);
             FileUtil.copyNoClose(os,file,callback2);
             os.flush(); // make sure we get the last few bytes out
             //
@@ -240,9 +260,9 @@ public abstract class HTTPTransaction extends Transaction {
 
          } else {
 
-            FileUtil.copyNoClose(stream,file,callback2);
+            FileUtil.copyNoClose(limited,file,callback2);
          }
-         if (blob2 != null) stream.write(blob2);
+         if (blob2 != null) limited.write(blob2);
          stream.close();
 
       } catch (Exception e) {
@@ -0,0 +1,308 @@
+/*
+ * RateLimiter.java
+ */
+
+package com.lifepics.neuron.net;
+
+import com.lifepics.neuron.thread.StoppableThread;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.WeakHashMap;
+
+/**
+ * A token bucket that holds all file transfers to a shared byte rate,
+ * as set by the rate limits in the {@link BandwidthConfig} schedules.
+ * Each bandwidth config is a channel; when several channels are busy,
+ * the rate is divided among them in proportion to their weights.
+ */
+
+public class RateLimiter {
+
+   // how it fits together.  RegulatedTransaction sets the channel for
+   // the current thread while the transaction runs, and the transfer code
+   // passes the network side of the copy through wrap.  the wrapper takes
+   // tokens for the bytes as they go by, a piece at a time, and sleeps if
+   // there aren't enough, which holds up the next piece.  it's not tied
+   // to the progress callback, which FileUtil calls only now and then,
+   // since a quarter meg at a time is fine for a display but not for a
+   // rate limit.  at a few K per second, the waits would run to a minute,
+   // and the server would give up on us.  transfers outside a regulated
+   // transaction, like the auto-update downloads, share a default channel
+   // that has no limit of its own but is still held to the others' limits.
+   //
+   // the limit in effect is the smallest one in the current schedule
+   // entry of any channel that's in use, since they all describe the same
+   // line.  the config holds its channel (it can't be a map key, since
+   // Structure.equals compares contents, and the upload and download
+   // configs are often the same), and select and restore add the channel
+   // to the in-use set and take it out again, counting, since a thread
+   // can select inside a select.  so a config that's been replaced, or
+   // whose thread is gone, drops out as soon as its last transfer ends.
+   //
+   // that leaves the default channel on its own with no limit at all, say
+   // for an auto-update download while the lab is idle.  so we also keep
+   // every channel that's ever been selected, weakly, and when none is in
+   // use, the limit is the smallest one among those, still looked up by
+   // schedule.  a channel goes away with the last copy of its config, so
+   // a replaced config only counts until it's collected.  copies share
+   // the channel, so select points it at the latest copy, which may have
+   // been edited.
+   //
+   // each busy channel gets its own bucket filling at its share of the
+   // rate.  a chunk that's larger than what's in the bucket is taken
+   // anyway, leaving the bucket negative, and the caller sleeps until it
+   // would be back to zero.  the buckets are small (BURST millis' worth),
+   // so the flow is smooth enough that server timeouts aren't a problem,
+   // and the TransferTracker numbers show the limited rate as it happens.
+
+// --- constants ---
+
+   private static final long BURST = 250;     // bucket size, in millis of flow
+   private static final long IDLE  = 1000;    // millis without a chunk before a channel isn't busy
+   private static final long RECHECK = 1000;  // millis between schedule lookups
+   private static final int  PIECE = 4096;    // most bytes taken at once, in a wrapped stream
+
+// --- channel class ---
+
+   static class Channel {
+
+      public BandwidthConfig bc; // null for the default channel
+      public int weight;
+
+      public double tokens;  // bytes
+      public long lastFill;  // millis
+      public long lastUsed;  // millis
+
+      public long limitMillis; // when limit was computed
+      public long limit;       // bytes per second, or zero for no limit
+
+      public int users; // number of selects not yet restored
+
+      public Channel(BandwidthConfig bc) {
+         this.bc = bc;
+         weight = (bc != null) ? bc.rateWeight : 1;
+         tokens = 0;
+         lastFill = 0;
+         lastUsed = 0;
+         limitMillis = 0;
+         limit = 0;
+         users = 0;
+      }
+   }
+
+// --- fields ---
+
+   private static HashSet channels = new HashSet(); // channels in use, not including the default
+   private static WeakHashMap known = new WeakHashMap(); // every channel that's been selected, as keys
+   private static Channel defaultChannel = new Channel(null);
+   private static ThreadLocal current = new ThreadLocal();
+
+// --- channel selection ---
+
+   /**
+    * Set the channel for transfers on the current thread.
+    * This should be called only by {@link RegulatedTransaction}.
+    *
+    * @return The previous channel, to pass to {@link #restore(Object) restore}.
+    */
+   static Object select(BandwidthConfig bc) {
+      Channel channel;
+      synchronized (RateLimiter.class) {
+         channel = bc.rateChannel;
+         if (channel == null) {
+            channel = new Channel(bc);
+            bc.rateChannel = channel;
+            known.put(channel,null);
+         } else if (channel.bc != bc) {
+            channel.bc = bc;
+            channel.weight = bc.rateWeight;
+            channel.limitMillis = 0; // look up the limit again
+         }
+         if (channel.users++ == 0) channels.add(channel);
+      }
+      Object prev = current.get();
+      current.set(channel);
+      return prev;
+   }
+
+   /**
+    * Put back the channel that was in use before {@link #select(BandwidthConfig) select}.
+    * Call this in a finally clause, or the channel stays in use.
+    */
+   static void restore(Object prev) {
+      Channel channel = (Channel) current.get();
+      current.set(prev);
+      synchronized (RateLimiter.class) {
+         if (--channel.users == 0) channels.remove(channel);
+      }
+   }
+
+// --- wrappers ---
+
+   /**
+    * Wrap an input stream so that reading from it is held to the rate limit.
+    * The channel is the one for the current thread, so call this on the
+    * thread that will do the reading.
+    */
+   public static InputStream wrap(InputStream stream) {
+      return new LimitedInputStream(stream,getChannel());
+   }
+
+   /**
+    * Wrap an output stream so that writing to it is held to the rate limit.
+    * The channel is the one for the current thread, so call this on the
+    * thread that will do the writing.
+    */
+   public static OutputStream wrap(OutputStream stream) {
+      return new LimitedOutputStream(stream,getChannel());
+   }
+
+   private static Channel getChannel() {
+      Channel channel = (Channel) current.get();
+      return (channel != null) ? channel : defaultChannel;
+   }
+
+   private static class LimitedInputStream extends FilterInputStream {
+
+      private Channel channel;
+      public LimitedInputStream(InputStream in, Channel channel) { super(in); this.channel = channel; }
+
+      public int read() throws IOException {
+         int b = in.read();
+         if (b != -1) acquire(channel,1);
+         return b;
+      }
+
+      public int read(byte[] b, int off, int len) throws IOException {
+         int n = in.read(b,off,Math.min(len,PIECE));
+         if (n > 0) acquire(channel,n);
+         return n;
+      }
+
+      public long skip(long n) throws IOException {
+         long skipped = in.skip(Math.min(n,PIECE));
+         if (skipped > 0) acquire(channel,skipped);
+         return skipped;
+      }
+   }
+
+   private static class LimitedOutputStream extends FilterOutputStream {
+
+      private Channel channel;
+      public LimitedOutputStream(OutputStream out, Channel channel) { super(out); this.channel = channel; }
+
+      public void write(int b) throws IOException {
+         acquire(channel,1);
+         out.write(b);
+      }
+
+      public void write(byte[] b, int off, int len) throws IOException {
+         while (len > 0) {
+            int n = Math.min(len,PIECE);
+            acquire(channel,n);
+            out.write(b,off,n);
+            off += n;
+            len -= n;
+         }
+      }
+      // FilterOutputStream would write the bytes one at a time
+   }
+
+// --- token bucket ---
+
+   private static void acquire(Channel channel, long bytes) {
+      long wait;
+
+      synchronized (RateLimiter.class) {
+         long now = System.currentTimeMillis();
+
+         long limit = getLimit(now);
+         if (limit == 0) { // fast path, no limit anywhere
+            channel.lastUsed = now;
+            return;
+         }
+
+         // find this channel's share
+
+         boolean busy = (now - channel.lastUsed < IDLE);
+         channel.lastUsed = now;
+
+         int total = channel.weight;
+         total += weigh(defaultChannel,channel,now);
+         Iterator i = channels.iterator();
+         while (i.hasNext()) {
+            total += weigh((Channel) i.next(),channel,now);
+         }
+
+         double rate = ((double) limit) * channel.weight / total / 1000; // bytes per milli
+         double burst = rate * BURST;
+
+         // fill and take
+
+         if (busy) {
+            long dt = now - channel.lastFill;
+            if (dt > 0) channel.tokens += dt * rate;
+            if (channel.tokens > burst) channel.tokens = burst;
+         } else {
+            channel.tokens = burst; // a fresh start gets a full bucket
+         }
+         channel.lastFill = now;
+
+         channel.tokens -= bytes;
+         wait = (channel.tokens < 0) ? (long) Math.ceil(-channel.tokens / rate) : 0;
+      }
+
+      if (wait > 0) sleep(wait);
+   }
+
+   private static int weigh(Channel c, Channel self, long now) {
+      return (c != self && now - c.lastUsed < IDLE) ? c.weight : 0;
+   }
+
+   /**
+    * Get the limit in effect, the smallest one that any channel in use has now,
+    * or if none is in use, that any known channel has now.
+    */
+   private static long getLimit(long now) {
+      long limit = 0;
+
+      Iterator i = channels.isEmpty() ? known.keySet().iterator() : channels.iterator();
+      while (i.hasNext()) {
+         Channel c = (Channel) i.next();
+
+         if (now - c.limitMillis >= RECHECK || now < c.limitMillis) {
+            c.limit = getLimit(c.bc);
+            c.limitMillis = now;
+         }
+
+         if (c.limit != 0 && (limit == 0 || c.limit < limit)) limit = c.limit;
+      }
+
+      return limit;
+   }
+
+   private static long getLimit(BandwidthConfig bc) {
+      BandwidthConfig.Schedule schedule = BandwidthUtil.findCurrent(bc,BandwidthUtil.getTimeNow(),null);
+      return (schedule.rateLimit != null) ? schedule.rateLimit.longValue() * 1024 : 0;
+   }
+
+   private static void sleep(long millis) {
+      try {
+         Thread thread = Thread.currentThread();
+         if (thread instanceof StoppableThread) {
+            ((StoppableThread) thread).sleepNice(millis); // returns right away if stopping
+         } else {
+            Thread.sleep(millis);
+         }
+      } catch (InterruptedException e) {
+         // won't happen
+      }
+   }
+
+}
@@ -45,9 +45,11 @@ public class RegulatedTransaction extends Transaction {
    public boolean run(PauseCallback callback) throws Exception {
 
       long base = System.currentTimeMillis();
+      Object prev = RateLimiter.select(bandwidthConfig);
       try {
          return next.run(callback);
       } finally {
+         RateLimiter.restore(prev);
          BandwidthUtil.regulateIsStopping(bandwidthConfig,System.currentTimeMillis()-base,threadStatus,stoppableThread);
          // if we're stopping, regulateIsStopping returns immediately.
          // if not, we want to regulate but then continue on to the next isStopping checkpoint,
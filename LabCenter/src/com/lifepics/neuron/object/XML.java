@@ -14,6 +14,9 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
@@ -503,8 +506,91 @@ public class XML {
 
 // --- top-level helpers ---
 
-   // although DocumentBuilder and Transformer objects can be reused,
-   // it is not desirable to cache them, because they are not thread-safe.
+   // DocumentBuilder, SAXParser, and Transformer objects can be reused, but
+   // they are not thread-safe, so we keep a small pool of each, and a thread takes
+   // one out while it's using it.  making new ones means a factory lookup
+   // every time, which costs more than the parsing for small documents.
+   //
+   // why not thread-local storage?  the launcher runs new versions of the
+   // application in the same threads, with a new class loader, and the
+   // parser classes may come from the old one (xerces.jar).  anything in
+   // a thread-local would keep the old classes alive as long as the thread
+   // lives.  a static pool goes away along with the old XML class.
+   //
+   // objects only go back into the pool after they've been used successfully,
+   // and they're reset on the way in, so no state carries over from one
+   // caller to the next, not even an entity resolver or error handler.
+   // reset is new in Java 1.5, and an older parser like the one in
+   // xerces.jar may not have it, in which case we just don't pool.
+
+   private static final int POOL_MAX = 4; // more than enough for our threads
+
+   private static LinkedList builderPool = new LinkedList();
+   private static LinkedList parserPool = new LinkedList();
+   private static LinkedList transformerPool = new LinkedList();
+
+   private static DocumentBuilder getBuilder() throws ParserConfigurationException {
+      synchronized (builderPool) {
+         if ( ! builderPool.isEmpty() ) return (DocumentBuilder) builderPool.removeFirst();
+      }
+      return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+   }
+
+   private static void putBuilder(DocumentBuilder builder) {
+      try {
+         builder.reset();
+      } catch (UnsupportedOperationException e) {
+         return;
+      } catch (AbstractMethodError e) {
+         return;
+      }
+      synchronized (builderPool) {
+         if (builderPool.size() < POOL_MAX) builderPool.addFirst(builder);
+      }
+   }
+
+   private static SAXParser getParser() throws ParserConfigurationException, SAXException {
+      synchronized (parserPool) {
+         if ( ! parserPool.isEmpty() ) return (SAXParser) parserPool.removeFirst();
+      }
+      return SAXParserFactory.newInstance().newSAXParser();
+   }
+
+   private static void putParser(SAXParser parser) {
+      try {
+         parser.reset();
+      } catch (UnsupportedOperationException e) {
+         return;
+      } catch (AbstractMethodError e) {
+         return;
+      }
+      synchronized (parserPool) {
+         if (parserPool.size() < POOL_MAX) parserPool.addFirst(parser);
+      }
+   }
+
+   /**
+    * Get an identity transformer.  The output properties are the defaults.
+    */
+   private static Transformer getTransformer() throws TransformerConfigurationException {
+      synchronized (transformerPool) {
+         if ( ! transformerPool.isEmpty() ) return (Transformer) transformerPool.removeFirst();
+      }
+      return TransformerFactory.newInstance().newTransformer();
+   }
+
+   private static void putTransformer(Transformer transformer) {
+      try {
+         transformer.reset(); // output properties back to defaults, too
+      } catch (UnsupportedOperationException e) {
+         return;
+      } catch (AbstractMethodError e) {
+         return;
+      }
+      synchronized (transformerPool) {
+         if (transformerPool.size() < POOL_MAX) transformerPool.addFirst(transformer);
+      }
+   }
 
    /**
     * Read an XML document from a stream.
@@ -512,10 +598,10 @@ public class XML {
    public static Document readStream(InputStream stream) throws IOException {
       try {
 
-         DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-         DocumentBuilder builder = factory.newDocumentBuilder();
-
-         return builder.parse(stream);
+         DocumentBuilder builder = getBuilder();
+         Document doc = builder.parse(stream);
+         putBuilder(builder);
+         return doc;
 
       } catch (ParserConfigurationException e) {
          throw (IOException) new IOException(Text.get(XML.class,"e4")).initCause(e);
@@ -532,10 +618,10 @@ public class XML {
       InputStream stream = new FileInputStream(file);
       try {
 
-         DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-         DocumentBuilder builder = factory.newDocumentBuilder();
-
-         return builder.parse(stream);
+         DocumentBuilder builder = getBuilder();
+         Document doc = builder.parse(stream);
+         putBuilder(builder);
+         return doc;
 
       } catch (ParserConfigurationException e) {
          throw (IOException) new IOException(Text.get(XML.class,"e6")).initCause(e);
@@ -557,10 +643,10 @@ public class XML {
    public static Document createDocument() throws IOException {
       try {
 
-         DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-         DocumentBuilder builder = factory.newDocumentBuilder();
-
-         return builder.newDocument();
+         DocumentBuilder builder = getBuilder();
+         Document doc = builder.newDocument();
+         putBuilder(builder);
+         return doc;
 
       } catch (ParserConfigurationException e) {
          throw (IOException) new IOException(Text.get(XML.class,"e8")).initCause(e);
@@ -578,10 +664,10 @@ public class XML {
     * Write an XML document to a stream, with options.
     */
    public static void writeStream(OutputStream stream, Document doc, boolean omit) throws IOException {
+
       try {
 
-         TransformerFactory factory = TransformerFactory.newInstance();
-         Transformer transformer = factory.newTransformer();
+         Transformer transformer = getTransformer();
 
          if (omit) transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION,"yes");
          // same effect as this XSL
@@ -591,6 +677,7 @@ public class XML {
          StreamResult result = new StreamResult(stream);
 
          transformer.transform(source,result);
+         putTransformer(transformer);
 
       } catch (TransformerConfigurationException e) {
          throw (IOException) new IOException(Text.get(XML.class,"e9")).initCause(e);
@@ -614,10 +701,9 @@ public class XML {
       OutputStream stream = new FileOutputStream(file);
       try {
 
-         TransformerFactory factory = TransformerFactory.newInstance();
-         Transformer transformer = (transform != null) ? factory.newTransformer(new StreamSource(transform))
-                                                       : factory.newTransformer();
-         loadParameters(transformer,parameters);
+         Transformer transformer = (transform != null) ? getTemplates(transform).newTransformer()
+                                                       : getTransformer();
+         if (transform != null) loadParameters(transformer,parameters);
 
          if (doctype != null) {
             transformer.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM,doctype);
@@ -627,6 +713,7 @@ public class XML {
          StreamResult result = new StreamResult(stream);
 
          transformer.transform(source,result);
+         if (transform == null) putTransformer(transformer);
 
       } catch (TransformerConfigurationException e) {
          throw (IOException) new IOException(Text.get(XML.class,"e11")).initCause(e);
@@ -642,7 +729,7 @@ public class XML {
    }
 
    /**
-    * @param transform Either an InputStream or a Transformer.
+    * @param transform Either an InputStream, a Templates, or a Transformer.
     * @return The transformer object, that can then be passed back in as a transform.
     */
    public static Object transform(Document dest, Document src, Object transform, Map parameters) throws IOException {
@@ -656,6 +743,12 @@ public class XML {
 
             loadParameters(transformer,parameters);
 
+         } else if (transform instanceof Templates) {
+
+            transformer = ((Templates) transform).newTransformer();
+
+            loadParameters(transformer,parameters);
+
          } else {
             transformer = (Transformer) transform;
          }
@@ -673,6 +766,93 @@ public class XML {
       }
    }
 
+// --- compiled stylesheets ---
+
+   // compiling a stylesheet costs far more than running it on one order,
+   // so we keep the compiled form (Templates, which is thread-safe) and
+   // make a new transformer from it for each use.  stylesheets in files
+   // can be edited while we're running, especially invoice.xsl, so those
+   // are recompiled whenever the size or modification time changes.
+   // resources can't change, at least not without a new class loader,
+   // and that brings a new copy of this class with an empty cache.
+
+   private static HashMap templatesCache = new HashMap(); // key -> TemplatesEntry
+
+   private static class TemplatesEntry {
+      public long lastModified;
+      public long length;
+      public Templates templates;
+   }
+
+   /**
+    * Get the compiled form of a stylesheet file.
+    */
+   public static Templates getTemplates(File file) throws IOException {
+      String key = file.getAbsolutePath();
+      long lastModified = file.lastModified();
+      long length = file.length();
+
+      synchronized (templatesCache) {
+         TemplatesEntry entry = (TemplatesEntry) templatesCache.get(key);
+         if (entry != null && entry.lastModified == lastModified && entry.length == length) return entry.templates;
+      }
+
+      TemplatesEntry entry = new TemplatesEntry();
+      entry.lastModified = lastModified;
+      entry.length = length;
+
+      InputStream stream = new FileInputStream(file);
+      try {
+         entry.templates = compile(new StreamSource(stream,file.toURI().toString()));
+      } finally {
+         stream.close(); // see note in writeFile
+      }
+
+      synchronized (templatesCache) {
+         templatesCache.put(key,entry);
+      }
+      return entry.templates;
+
+      // if two threads compile the same file at the same time,
+      // one of them wastes some effort, but both results are fine.
+   }
+
+   /**
+    * Get the compiled form of a stylesheet resource.
+    */
+   public static Templates getTemplates(URL url) throws IOException {
+      String key = url.toString();
+
+      synchronized (templatesCache) {
+         TemplatesEntry entry = (TemplatesEntry) templatesCache.get(key);
+         if (entry != null) return entry.templates;
+      }
+
+      TemplatesEntry entry = new TemplatesEntry();
+
+      URLConnection conn = url.openConnection();
+      conn.setUseCaches(false); // don't leave the jar file open in the global cache
+      InputStream stream = conn.getInputStream();
+      try {
+         entry.templates = compile(new StreamSource(stream,key));
+      } finally {
+         stream.close();
+      }
+
+      synchronized (templatesCache) {
+         templatesCache.put(key,entry);
+      }
+      return entry.templates;
+   }
+
+   private static Templates compile(Source source) throws IOException {
+      try {
+         return TransformerFactory.newInstance().newTemplates(source);
+      } catch (TransformerConfigurationException e) {
+         throw (IOException) new IOException(Text.get(XML.class,"e19")).initCause(e);
+      }
+   }
+
    private static void loadParameters(Transformer transformer, Map parameters) {
       if (parameters != null) {
          Iterator i = parameters.entrySet().iterator();
@@ -716,6 +896,32 @@ public class XML {
       void tstore(int t, Node node) throws ValidationException;
    }
 
+   /**
+    * An interface for persistent objects that can also load from parser
+    * events and store straight to a writer, so that the top-level helpers
+    * never need a whole document for them.  The results have to be the
+    * same as for the node functions.
+    */
+   public interface Streamed extends Persist {
+
+      /**
+       * Get a target that loads the object and its subobjects from the
+       * events for its element.  Validation is still a separate step.
+       */
+      XMLLoader.Target getTarget();
+
+      /**
+       * Store the object and its subobjects into the current element of a writer.
+       */
+      void store(XMLWriter writer) throws IOException;
+
+      /**
+       * Store the object and its subobjects into the current element of a writer,
+       * but in the form that was used at the given time.
+       */
+      void tstore(int t, XMLWriter writer) throws IOException, ValidationException;
+   }
+
    /**
     * Load a persistent object from an XML document.
     */
@@ -730,6 +936,18 @@ public class XML {
     * Load a persistent object from a stream in XML format.
     */
    public static Object loadStream(InputStream stream, Persist persist, String name) throws IOException, ValidationException {
+      return loadStream(stream,new Persist[] { persist },new String[] { name });
+   }
+
+   /**
+    * Load one of several persistent objects from a stream in XML format,
+    * depending on the name of the top-level element.  If none of the names
+    * match, the error is the one for the last name.
+    *
+    * @return The object that was loaded.
+    */
+   public static Object loadStream(InputStream stream, Persist[] persist, String[] name) throws IOException, ValidationException {
+      if (isStreamed(persist)) return loadEvents(stream,persist,name,"e4","e5");
       return loadDoc(readStream(stream),persist,name);
    }
 
@@ -737,7 +955,90 @@ public class XML {
     * Load a persistent object from a file in XML format.
     */
    public static Object loadFile(File file, Persist persist, String name) throws IOException, ValidationException {
-      return loadDoc(readFile(file),persist,name);
+      Persist[] pa = new Persist[] { persist };
+      String[] na = new String[] { name };
+
+      if ( ! isStreamed(pa) ) return loadDoc(readFile(file),pa,na);
+
+      InputStream stream = new FileInputStream(file);
+      try {
+         return loadEvents(stream,pa,na,"e6","e7");
+      } finally {
+         stream.close(); // see note in readFile
+      }
+   }
+
+   private static boolean isStreamed(Persist[] persist) {
+      for (int i=0; i<persist.length; i++) {
+         if ( ! (persist[i] instanceof Streamed) ) return false;
+      }
+      return true;
+   }
+
+   private static Object loadDoc(Document doc, Persist[] persist, String[] name) throws ValidationException {
+      int last = persist.length-1;
+      for (int i=0; i<last; i++) {
+         if (getElementTry(doc,name[i]) != null) return loadDoc(doc,persist[i],name[i]);
+      }
+      return loadDoc(doc,persist[last],name[last]);
+   }
+
+   private static Object loadEvents(InputStream stream, Persist[] persist, String[] name, String key1, String key2) throws IOException, ValidationException {
+      Chooser chooser = new Chooser(persist,name);
+      try {
+
+         SAXParser parser = getParser();
+         parser.parse(stream,new XMLLoader(createDocument(),chooser));
+         putParser(parser);
+
+      } catch (ParserConfigurationException e) {
+         throw (IOException) new IOException(Text.get(XML.class,key1)).initCause(e);
+      } catch (SAXException e) {
+         if (e.getException() instanceof ValidationException) throw (ValidationException) e.getException();
+         throw (IOException) new IOException(Text.get(XML.class,key2)).initCause(e);
+      }
+
+      Persist result = chooser.getResult();
+      result.validate();
+      return result;
+   }
+
+   /**
+    * The target for the document, which picks the object to load
+    * according to the name of the top-level element.
+    */
+   private static class Chooser implements XMLLoader.Target {
+
+      private Persist[] persist;
+      private String[] name;
+      private Persist result;
+
+      public Chooser(Persist[] persist, String[] name) {
+         this.persist = persist;
+         this.name = name;
+      }
+
+      public XMLLoader.Target child(String s, Node node) throws ValidationException {
+         for (int i=0; i<name.length; i++) {
+            if (name[i].equals(s)) {
+               result = persist[i];
+               return ((Streamed) result).getTarget();
+            }
+         }
+         throw missing();
+      }
+
+      public void end(Node node) throws ValidationException {
+         if (result == null) throw missing();
+      }
+
+      public Persist getResult() {
+         return result;
+      }
+
+      private ValidationException missing() {
+         return new ValidationException(Text.get(XML.class,"e1a",new Object[] { name[name.length-1] }));
+      }
    }
 
    /**
@@ -755,14 +1056,31 @@ public class XML {
     * Store a persistent object to a stream in XML format.
     */
    public static void storeStream(OutputStream stream, Persist persist, String name) throws IOException {
-      writeStream(stream,storeDoc(persist,name));
+      if (persist instanceof Streamed) {
+         XMLWriter writer = beginStore(stream,name);
+         ((Streamed) persist).store(writer);
+         endStore(writer);
+      } else {
+         writeStream(stream,storeDoc(persist,name));
+      }
    }
 
    /**
     * Store a persistent object to a file in XML format.
+    * Objects that stream are written as they're walked,
+    * so if the store fails, the file is left incomplete.
     */
    public static void storeFile(File file, Persist persist, String name) throws IOException {
-      writeFile(file,storeDoc(persist,name));
+      if (persist instanceof Streamed) {
+         OutputStream stream = new FileOutputStream(file);
+         try {
+            storeStream(stream,persist,name);
+         } finally {
+            stream.close();
+         }
+      } else {
+         writeFile(file,storeDoc(persist,name));
+      }
    }
 
    public static Document tstoreDoc(int t, Persist persist, String name) throws IOException {
@@ -778,11 +1096,45 @@ public class XML {
    }
 
    public static void tstoreStream(OutputStream stream, int t, Persist persist, String name) throws IOException {
-      writeStream(stream,tstoreDoc(t,persist,name));
+      if (persist instanceof Streamed) {
+         XMLWriter writer = beginStore(stream,name);
+         try {
+            ((Streamed) persist).tstore(t,writer);
+         } catch (ValidationException e) {
+            throw (IOException) new IOException(Text.get(XML.class,"e18")).initCause(e);
+         }
+         endStore(writer);
+      } else {
+         writeStream(stream,tstoreDoc(t,persist,name));
+      }
    }
 
+   /**
+    * Same as storeFile, an object that streams leaves the file incomplete on failure.
+    */
    public static void tstoreFile(File file, int t, Persist persist, String name) throws IOException {
-      writeFile(file,tstoreDoc(t,persist,name));
+      if (persist instanceof Streamed) {
+         OutputStream stream = new FileOutputStream(file);
+         try {
+            tstoreStream(stream,t,persist,name);
+         } finally {
+            stream.close();
+         }
+      } else {
+         writeFile(file,tstoreDoc(t,persist,name));
+      }
+   }
+
+   private static XMLWriter beginStore(OutputStream stream, String name) throws IOException {
+      XMLWriter writer = new XMLWriter(stream,/* indent = */ true);
+      writer.declaration();
+      writer.startElement(name);
+      return writer;
+   }
+
+   private static void endStore(XMLWriter writer) throws IOException {
+      writer.endElement();
+      writer.flush();
    }
 
 // --- conversion functions ---
@@ -0,0 +1,153 @@
+/*
+ * XMLLoader.java
+ */
+
+package com.lifepics.neuron.object;
+
+import com.lifepics.neuron.core.ValidationException;
+
+import java.util.ArrayList;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A SAX handler that passes parser events to a tree of targets,
+ * so that objects can be loaded as the file is read instead of from
+ * a document.  Each target decides, child by child, whether to take
+ * the child's events itself or to have the child captured as a node.
+ * The captured nodes are the only document there is, and they go away
+ * with the element that holds them.
+ */
+
+public class XMLLoader extends DefaultHandler {
+
+   // the captured nodes look just like the ones the document builder
+   // would have made, whitespace and all, so that code that loads from
+   // a node doesn't need to know the difference.  the node for a target
+   // holds the attributes and the captured children, but not the children
+   // that went to other targets.
+
+// --- target interface ---
+
+   public interface Target {
+
+      /**
+       * Decide what to do with a child element.  This is called when the
+       * child starts, so the node only has the children that came before.
+       *
+       * @return A target for the child, or null to capture the child into the node.
+       */
+      Target child(String name, Node node) throws ValidationException;
+
+      /**
+       * Finish up when the element ends.
+       *
+       * @param node The node with the attributes and the captured children.
+       */
+      void end(Node node) throws ValidationException;
+   }
+
+// --- fields ---
+
+   private Document doc;
+
+   private ArrayList nodes;   // stack of open nodes, the document at the bottom
+   private ArrayList targets; // parallel stack of targets, null where capturing
+   private StringBuffer text;
+
+// --- construction ---
+
+   /**
+    * @param doc A document to create the nodes with.
+    * @param target The target for the document, whose one child is the root element.
+    */
+   public XMLLoader(Document doc, Target target) {
+      this.doc = doc;
+
+      nodes = new ArrayList();
+      targets = new ArrayList();
+      text = new StringBuffer();
+
+      nodes.add(doc);
+      targets.add(target);
+   }
+
+// --- implementation of ContentHandler ---
+
+   public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+      flushText();
+
+      Element element = doc.createElement(qName);
+      int n = attributes.getLength();
+      for (int i=0; i<n; i++) {
+         element.setAttribute(attributes.getQName(i),attributes.getValue(i));
+      }
+
+      int top = nodes.size()-1;
+      Node   node   = (Node)   nodes  .get(top);
+      Target target = (Target) targets.get(top);
+
+      Target child = null;
+      if (target != null) {
+         try {
+            child = target.child(qName,node);
+         } catch (ValidationException e) {
+            throw new SAXException(e);
+         }
+      }
+
+      if (child == null) node.appendChild(element); // capture
+
+      nodes  .add(element);
+      targets.add(child);
+   }
+
+   public void endElement(String uri, String localName, String qName) throws SAXException {
+      flushText();
+
+      int top = nodes.size()-1;
+      Node   node   = (Node)   nodes  .remove(top);
+      Target target = (Target) targets.remove(top);
+
+      if (target != null) end(target,node);
+   }
+
+   public void characters(char[] ch, int start, int length) {
+      text.append(ch,start,length);
+      // the parser can split text wherever it likes, so collect it
+      // and make one node, the same as the document builder does.
+   }
+
+   public void ignorableWhitespace(char[] ch, int start, int length) {
+      text.append(ch,start,length);
+   }
+
+   public void endDocument() throws SAXException {
+      end((Target) targets.get(0),doc);
+   }
+
+// --- helpers ---
+
+   private void flushText() {
+      if (text.length() == 0) return;
+
+      Node node = (Node) nodes.get(nodes.size()-1);
+      if (node != doc) node.appendChild(doc.createTextNode(text.toString()));
+
+      text.setLength(0);
+   }
+
+   private static void end(Target target, Node node) throws SAXException {
+      try {
+         target.end(node);
+      } catch (ValidationException e) {
+         throw new SAXException(e);
+      }
+   }
+
+}
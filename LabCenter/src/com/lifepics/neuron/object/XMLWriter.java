@@ -0,0 +1,355 @@
+/*
+ * XMLWriter.java
+ */
+
+package com.lifepics.neuron.object;
+
+import com.lifepics.neuron.core.Text;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.w3c.dom.*;
+
+/**
+ * A class that writes XML straight to a stream, one element at a time,
+ * so that the persistence code can store objects without building a
+ * document first.  The output is byte for byte what the identity
+ * transformer produced from the indented document, so that files
+ * don't change when they're rewritten.
+ */
+
+public class XMLWriter {
+
+   // the escaping rules are the ones the JDK serializer follows, since
+   // that's what wrote all the existing files.
+   //
+   //    everywhere      &  <  >        become entity references
+   //                    control chars  become character references,
+   //                                   except tab and LF in text
+   //                    surrogate pair becomes one character reference
+   //    attributes      "              becomes an entity reference
+   //    text            7F to 9F       become character references
+   //                    LF             becomes the platform line separator,
+   //                                   and so does the indentation
+   //
+   // unpaired surrogates are odd.  a lone low half becomes a character
+   // reference.  a high half followed by anything but a low half is an
+   // error, except at the end of a string, where it's held back until
+   // the next character that needs a character reference, even in some
+   // later string.  if that's a low half, the two make a pair, if not,
+   // it's an error, and if nothing comes, the high half is just dropped.
+   // none of that reads back, but it's what the transformer did, and we
+   // don't want to fail where it didn't or write what it didn't.
+
+// --- constants ---
+
+   private static final String ENCODING = "UTF-8";
+   private static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+
+   private static final String INDENT = "   ";
+
+   private static final String lineSeparator = System.getProperty("line.separator","\n");
+
+// --- fields ---
+
+   private Writer writer;
+   private boolean indent;
+
+   private String[] names; // stack of open elements
+   private boolean[] nested; // whether each open element has child elements
+   private int depth;
+   private boolean open; // whether the start tag is still open for attributes
+   private String[] attributeNames; // attributes of the open start tag, sorted by name
+   private String[] attributeValues;
+   private int attributeCount;
+   private boolean started; // whether anything has been written
+   private char high; // high half of a surrogate pair held from the end of a string, or zero
+
+   private Document scratch; // created only if needed
+
+// --- construction ---
+
+   /**
+    * @param indent Whether to put each element on its own line, indented
+    *               according to its depth.  Elements that contain only text
+    *               are still written on one line, so the indentation never
+    *               changes the text.
+    */
+   public XMLWriter(OutputStream stream, boolean indent) throws IOException {
+      writer = new BufferedWriter(new OutputStreamWriter(stream,ENCODING));
+      this.indent = indent;
+
+      names = new String[16];
+      nested = new boolean[16];
+      depth = 0;
+      open = false;
+      attributeNames = new String[8];
+      attributeValues = new String[8];
+      attributeCount = 0;
+      started = false;
+      high = 0;
+   }
+
+// --- elements ---
+
+   /**
+    * Write the XML declaration.  This has to come first, if at all.
+    */
+   public void declaration() throws IOException {
+      if (started) throw new IllegalStateException();
+      writer.write(DECLARATION);
+      started = true;
+   }
+
+   /**
+    * Start an element.  The start tag is left open until some content
+    * is written, so that attributes can be added.
+    */
+   public void startElement(String name) throws IOException {
+      closeStart();
+
+      if (depth > 0) nested[depth-1] = true;
+      if (indent && depth > 0) newline(depth);
+
+      writer.write('<');
+      writer.write(name);
+
+      if (depth == names.length) grow();
+      names [depth] = name;
+      nested[depth] = false;
+      depth++;
+
+      open = true;
+      started = true;
+   }
+
+   /**
+    * Add an attribute to the element that was just started.
+    * The attributes are written in order by name, the way
+    * the document kept them, when the start tag is closed.
+    * Adding the same name again replaces the value.
+    */
+   public void attribute(String name, String value) throws IOException {
+      if ( ! open ) throw new IllegalStateException();
+
+      int i = attributeCount;
+      while (i > 0 && attributeNames[i-1].compareTo(name) > 0) i--;
+
+      if (i > 0 && attributeNames[i-1].equals(name)) {
+         attributeValues[i-1] = value;
+         return;
+      }
+
+      if (attributeCount == attributeNames.length) growAttributes();
+      System.arraycopy(attributeNames, i,attributeNames, i+1,attributeCount-i);
+      System.arraycopy(attributeValues,i,attributeValues,i+1,attributeCount-i);
+      attributeNames [i] = name;
+      attributeValues[i] = value;
+      attributeCount++;
+   }
+
+   /**
+    * Write text into the current element.
+    */
+   public void text(String s) throws IOException {
+      if (depth == 0) throw new IllegalStateException();
+      if (s.length() == 0) return; // so that the element can still be empty
+
+      closeStart();
+      writeEscaped(s,/* isAttribute = */ false);
+   }
+
+   /**
+    * End the current element.
+    */
+   public void endElement() throws IOException {
+      if (depth == 0) throw new IllegalStateException();
+      depth--;
+
+      if (open) {
+         writeAttributes();
+         writer.write("/>");
+         open = false;
+         return;
+      }
+
+      if (indent && nested[depth]) newline(depth);
+
+      writer.write("</");
+      writer.write(names[depth]);
+      writer.write('>');
+   }
+
+   /**
+    * Write an element that contains only text.
+    */
+   public void element(String name, String text) throws IOException {
+      startElement(name);
+      text(text);
+      endElement();
+   }
+
+   /**
+    * Flush everything to the stream, which is not closed.
+    */
+   public void flush() throws IOException {
+      closeStart();
+      writer.flush();
+   }
+
+   private void closeStart() throws IOException {
+      if (open) {
+         writeAttributes();
+         writer.write('>');
+         open = false;
+      }
+   }
+
+   private void writeAttributes() throws IOException {
+      for (int i=0; i<attributeCount; i++) {
+         writer.write(' ');
+         writer.write(attributeNames[i]);
+         writer.write("=\"");
+         writeEscaped(attributeValues[i],/* isAttribute = */ true);
+         writer.write('"');
+         attributeValues[i] = null; // don't hold on to it
+      }
+      attributeCount = 0;
+   }
+
+   private void newline(int n) throws IOException {
+      writer.write(lineSeparator);
+      for (int i=0; i<n; i++) writer.write(INDENT);
+   }
+
+   private void grow() {
+      String[] temp1 = new String[names.length * 2];
+      System.arraycopy(names,0,temp1,0,names.length);
+      names = temp1;
+
+      boolean[] temp2 = new boolean[nested.length * 2];
+      System.arraycopy(nested,0,temp2,0,nested.length);
+      nested = temp2;
+   }
+
+   private void growAttributes() {
+      String[] temp1 = new String[attributeNames.length * 2];
+      System.arraycopy(attributeNames,0,temp1,0,attributeNames.length);
+      attributeNames = temp1;
+
+      String[] temp2 = new String[attributeValues.length * 2];
+      System.arraycopy(attributeValues,0,temp2,0,attributeValues.length);
+      attributeValues = temp2;
+   }
+
+// --- nodes ---
+
+   /**
+    * Get an empty element that isn't attached to anything, for code that
+    * can only store into a node.  Pass it to {@link #content(Node) content}
+    * when it's filled in.
+    */
+   public Node getScratch() throws IOException {
+      if (scratch == null) scratch = XML.createDocument();
+      return scratch.createElement("Scratch"); // the name is never written
+   }
+
+   /**
+    * Write the attributes and children of a node as if they belonged to
+    * the current element.  Attributes are only allowed if the start tag
+    * is still open.
+    */
+   public void content(Node node) throws IOException {
+
+      NamedNodeMap attributes = node.getAttributes();
+      int n = attributes.getLength();
+      for (int i=0; i<n; i++) {
+         Node attribute = attributes.item(i);
+         attribute(attribute.getNodeName(),attribute.getNodeValue());
+      }
+
+      NodeList children = node.getChildNodes();
+      int len = children.getLength();
+      for (int i=0; i<len; i++) {
+         Node child = children.item(i);
+         if (child.getNodeType() == Node.TEXT_NODE) {
+            text(child.getNodeValue());
+         } else {
+            startElement(child.getNodeName());
+            content(child);
+            endElement();
+         }
+      }
+   }
+
+// --- escaping ---
+
+   private void writeEscaped(String s, boolean isAttribute) throws IOException {
+      int len = s.length();
+      int start = 0; // start of the run of characters that don't need escaping
+
+      for (int i=0; i<len; i++) {
+         char c = s.charAt(i);
+
+         String replace;
+         int skip = 0;
+
+         if (c >= 0x20 && c < 0x7F) {
+            if      (c == '&') replace = "&amp;";
+            else if (c == '<') replace = "&lt;";
+            else if (c == '>') replace = "&gt;";
+            else if (c == '"' && isAttribute) replace = "&quot;";
+            else continue; // the usual case
+         } else if (c == '\n' && ! isAttribute) {
+            replace = lineSeparator;
+         } else if (c == '\t' && ! isAttribute) {
+            continue;
+         } else if (c < 0x20 || (c >= 0x7F && c <= 0x9F && ! isAttribute) || isHigh(c) || isLow(c)) {
+            if (high != 0) {
+               if ( ! isLow(c) ) throw invalid(high);
+               replace = reference(high,c);
+               high = 0;
+            } else if ( ! isHigh(c) ) {
+               replace = reference(c);
+            } else if (i+1 == len) {
+               replace = "";
+               high = c;
+            } else if (isLow(s.charAt(i+1))) {
+               replace = reference(c,s.charAt(i+1));
+               skip = 1;
+            } else {
+               throw invalid(c);
+            }
+         } else {
+            continue;
+         }
+
+         if (start < i) writer.write(s,start,i-start);
+         writer.write(replace);
+         i += skip;
+         start = i+1;
+      }
+
+      if (start < len) writer.write(s,start,len-start);
+   }
+
+   private static boolean isHigh(char c) { return (c >= 0xD800 && c <= 0xDBFF); }
+   private static boolean isLow (char c) { return (c >= 0xDC00 && c <= 0xDFFF); }
+
+   private static String reference(int c) {
+      return "&#" + Integer.toString(c) + ";";
+   }
+
+   private static String reference(char high, char low) {
+      return reference(0x10000 + ((high - 0xD800) << 10) + (low - 0xDC00));
+   }
+
+   private static IOException invalid(char c) {
+      return new IOException(Text.get(XMLWriter.class,"e1",new Object[] { Integer.toHexString(c).toUpperCase() }));
+   }
+
+}
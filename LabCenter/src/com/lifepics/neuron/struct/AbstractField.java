@@ -6,8 +6,11 @@ package com.lifepics.neuron.struct;
 
 import com.lifepics.neuron.core.Text;
 import com.lifepics.neuron.core.ValidationException;
+import com.lifepics.neuron.object.XMLLoader;
+import com.lifepics.neuron.object.XMLWriter;
 
 import java.io.File;
+import java.io.IOException;
 
 import org.w3c.dom.Node;
 
@@ -45,6 +48,13 @@ public abstract class AbstractField implements FieldNode {
    // primitive-type fields will have default values, too,
    // but I want to keep those in appropriate-type fields.
 
+   private boolean customLoad;
+   private boolean customLoadSpecial;
+   private boolean streamLoad;
+   private boolean streamStore;
+   private boolean streamTstore;
+   private boolean streamTstoreSpecial;
+
 // --- construction ---
 
    // the convention is, any field that gets defaulted, whether by version upgrade
@@ -68,6 +78,56 @@ public abstract class AbstractField implements FieldNode {
 
    public void bind(Class c) throws NoSuchFieldException {
       javaField = c.getField(javaName);
+      try {
+         javaField.setAccessible(true);
+      } catch (SecurityException e) {
+         // fine, the field is public, it just costs an access check per call
+      }
+      // the structure functions go through javaField for every field of
+      // every copy, compare, load, and store, so skip the per-call check.
+
+      // the stream functions do the same jobs as the node functions, so
+      // they can only be used if no subclass has overridden a node function
+      // without also overriding its stream twin, which the anonymous subclasses
+      // in the structure definitions do all the time.  so, look at where each
+      // function was last declared, and decide once.
+
+      customLoad        = (declarer("load",       N_O_I) != AbstractField.class);
+      customLoadSpecial = (declarer("loadSpecial",N_O_I) != AbstractField.class);
+
+      streamLoad = (    ! customLoad
+                     && declarer("loadNormal",N_O) == declarer("getTargetNormal",O_B) );
+      // if getTargetNormal isn't implemented, it's declared here and loadNormal isn't
+
+      streamStore = (declarer("store",N_O) == declarer("store",W_O));
+
+      boolean plain = (declarer("tstore",I_N_O_I) == AbstractField.class);
+      streamTstore        = (plain && declarer("tstoreNormal",I_N_O) == declarer("tstoreNormal",I_W_O));
+      streamTstoreSpecial = (plain && declarer("tstoreSpecial",I_N_O_I) == AbstractField.class);
+   }
+
+   // argument lists, by type
+   private static final Class[] N_O     = new Class[] { Node.class, Object.class };
+   private static final Class[] N_O_I   = new Class[] { Node.class, Object.class, Integer.TYPE };
+   private static final Class[] I_N_O   = new Class[] { Integer.TYPE, Node.class, Object.class };
+   private static final Class[] I_N_O_I = new Class[] { Integer.TYPE, Node.class, Object.class, Integer.TYPE };
+   private static final Class[] W_O     = new Class[] { XMLWriter.class, Object.class };
+   private static final Class[] I_W_O   = new Class[] { Integer.TYPE, XMLWriter.class, Object.class };
+   private static final Class[] O_B     = new Class[] { Object.class, Boolean.TYPE };
+
+   /**
+    * Find the class where a method was last declared, at or above the class of this field.
+    */
+   private Class declarer(String name, Class[] types) {
+      for (Class c = getClass(); c != null; c = c.getSuperclass()) {
+         try {
+            c.getDeclaredMethod(name,types);
+            return c;
+         } catch (NoSuchMethodException e) {
+            // keep looking
+         }
+      }
+      throw new Error(name); // they're all declared here, so can't happen
    }
 
 // --- implementation of FieldNode ---
@@ -178,5 +238,95 @@ public abstract class AbstractField implements FieldNode {
       store(node,o);
    }
 
+// --- stream hooks ---
+
+   /**
+    * Check whether loading the field might run custom code that looks at
+    * more of the node than the field's own elements.  Custom loadNormal
+    * functions don't count, they stick to their own elements.
+    */
+   public boolean isCustomLoad(int version) {
+      return customLoad || (version < sinceVersion && customLoadSpecial);
+   }
+
+   /**
+    * Get the name of the elements that {@link #getTarget(Object,int,boolean) getTarget}
+    * can take as events, or null if the field only loads from a node.
+    */
+   public String getTargetName() {
+      return streamLoad ? xmlName : null;
+   }
+
+   /**
+    * Get a target that loads the field from the events for one element,
+    * or null if the element has to be captured and loaded from the node.
+    *
+    * @param first Whether any earlier element has gone to a target.
+    *              Fields that only read the first element should return
+    *              null for the rest, which are then ignored.
+    */
+   public XMLLoader.Target getTarget(Object o, int version, boolean first) {
+      if ( ! streamLoad || version < sinceVersion ) return null;
+      return getTargetNormal(o,first);
+   }
+
+   /**
+    * Get a target, not taking the version into account.
+    * The default is that the field only loads from a node.
+    */
+   protected XMLLoader.Target getTargetNormal(Object o, boolean first) {
+      return null;
+   }
+
+   /**
+    * Store into a writer.  Fields that can only store into a node,
+    * including ones where a subclass has overridden the node function,
+    * store into a scratch node that's written out right away.
+    */
+   public void write(XMLWriter writer, Object o) throws IOException {
+      if (streamStore) {
+         store(writer,o);
+      } else {
+         storeScratch(writer,o);
+      }
+   }
+
+   /**
+    * Store into a writer.  Subclasses that implement this must also implement
+    * {@link #store(Node,Object) store}, so that both are declared in the same class.
+    */
+   protected void store(XMLWriter writer, Object o) throws IOException {
+      storeScratch(writer,o);
+   }
+
+   private void storeScratch(XMLWriter writer, Object o) throws IOException {
+      Node node = writer.getScratch();
+      store(node,o);
+      writer.content(node);
+   }
+
+   /**
+    * Store into a writer in the form that was used at the given time.
+    */
+   public void twrite(int t, XMLWriter writer, Object o, int version) throws IOException, ValidationException {
+      if (version >= sinceVersion) {
+         if (streamTstore) { tstoreNormal(t,writer,o); return; }
+      } else {
+         if (streamTstoreSpecial) { tstoreDefault(t,o); return; }
+      }
+      Node node = writer.getScratch();
+      tstore(t,node,o,version);
+      writer.content(node);
+   }
+
+   /**
+    * Store into a writer, not taking the version into account.
+    * Subclasses that do recursion need to override this along with
+    * the node function, same as for tstore.
+    */
+   protected void tstoreNormal(int t, XMLWriter writer, Object o) throws IOException, ValidationException {
+      write(writer,o);
+   }
+
 }
 
@@ -7,7 +7,9 @@ package com.lifepics.neuron.struct;
 import com.lifepics.neuron.core.ValidationException;
 import com.lifepics.neuron.meta.EditAccessor;
 import com.lifepics.neuron.object.XML;
+import com.lifepics.neuron.object.XMLWriter;
 
+import java.io.IOException;
 import java.util.Collection;
 
 import org.w3c.dom.Node;
@@ -20,6 +22,10 @@ import org.w3c.dom.Node;
  *
  * Attribute-ness shouldn't be a dynamic property, this is just
  * the easiest way I could see to implement it.
+ *
+ * Atomic values must be primitives or immutable objects,
+ * because StructureDefinition doesn't call the init and copy hooks
+ * for atomic fields.
  */
 
 public abstract class AtomicField extends AbstractField implements EditAccessor {
@@ -69,5 +75,14 @@ public abstract class AtomicField extends AbstractField implements EditAccessor
       else                                 XML.createNullableText(node,name,value);
    }
 
+   protected void writeElementText(XMLWriter writer, String name, String value) throws IOException {
+      if (attributed) writer.attribute(name,value);
+      else            writer.element  (name,value);
+   }
+
+   protected void writeNullableText(XMLWriter writer, String name, String value) throws IOException {
+      if (value != null) writeElementText(writer,name,value);
+   }
+
 }
 
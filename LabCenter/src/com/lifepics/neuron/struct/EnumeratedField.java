@@ -5,6 +5,9 @@
 package com.lifepics.neuron.struct;
 
 import com.lifepics.neuron.core.ValidationException;
+import com.lifepics.neuron.object.XMLWriter;
+
+import java.io.IOException;
 
 import org.w3c.dom.Node;
 
@@ -44,5 +47,9 @@ public class EnumeratedField extends IntegerField {
       createElementText(node,xmlName,type.fromIntForm(tget(o)));
    }
 
+   protected void store(XMLWriter writer, Object o) throws IOException {
+      writeElementText(writer,xmlName,type.fromIntForm(tget(o)));
+   }
+
 }
 
@@ -7,8 +7,10 @@ package com.lifepics.neuron.struct;
 import com.lifepics.neuron.core.Convert;
 import com.lifepics.neuron.core.ValidationException;
 import com.lifepics.neuron.object.Relative;
+import com.lifepics.neuron.object.XMLWriter;
 
 import java.io.File;
+import java.io.IOException;
 
 import org.w3c.dom.Node;
 
@@ -97,6 +99,10 @@ public class FileField extends AtomicField {
       createElementText(node,xmlName,Convert.fromFile(tget(o)));
    }
 
+   protected void store(XMLWriter writer, Object o) throws IOException {
+      writeElementText(writer,xmlName,Convert.fromFile(tget(o)));
+   }
+
    protected boolean isDefault(Object o) {
       return tget(o).equals(defaultValue);
    }
@@ -6,9 +6,12 @@ package com.lifepics.neuron.struct;
 
 import com.lifepics.neuron.core.ValidationException;
 import com.lifepics.neuron.object.XML;
+import com.lifepics.neuron.object.XMLWriter;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedList;
 
 import org.w3c.dom.Node;
@@ -94,6 +97,20 @@ public class InlineListField extends CompositeField {
       XML.createInlineList(node,xmlName,tget(o));
    }
 
+   protected void store(XMLWriter writer, Object o) throws IOException {
+      writeInlineList(writer,xmlName,tget(o));
+   }
+
+   /**
+    * The writer form of XML.createInlineList, for this and the other list fields.
+    */
+   static void writeInlineList(XMLWriter writer, String name, LinkedList list) throws IOException {
+      Iterator i = list.iterator();
+      while (i.hasNext()) {
+         writer.element(name,(String) i.next());
+      }
+   }
+
    protected boolean isDefault(Object o) {
       return (tget(o).size() == 0); // default is empty list
    }
@@ -7,7 +7,9 @@ package com.lifepics.neuron.struct;
 import com.lifepics.neuron.core.Convert;
 import com.lifepics.neuron.core.ValidationException;
 import com.lifepics.neuron.object.XML;
+import com.lifepics.neuron.object.XMLWriter;
 
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.LinkedList;
 
@@ -77,5 +79,12 @@ public class IntegerListField extends InlineListField {
       XML.createInlineList(node,xmlName,temp);
    }
 
+   protected void store(XMLWriter writer, Object o) throws IOException {
+      Iterator i = tget(o).iterator();
+      while (i.hasNext()) {
+         writer.element(xmlName,type.fromIntForm(((Integer) i.next()).intValue()));
+      }
+   }
+
 }
 
@@ -0,0 +1,40 @@
+/*
+ * InternedStringField.java
+ */
+
+package com.lifepics.neuron.struct;
+
+import com.lifepics.neuron.core.ValidationException;
+
+import org.w3c.dom.Node;
+
+/**
+ * A class that represents a non-null String-valued field of a structure
+ * whose values repeat a lot from one object to the next (states, countries,
+ * queue IDs, and so on).  The loaded values are interned so that objects
+ * share them.  Copies share them anyway, since strings are immutable.
+ */
+
+public class InternedStringField extends StringField {
+
+// --- fields ---
+
+   static final Interner interner = new Interner(); // shared with NullableInternedStringField
+
+// --- construction ---
+
+   public InternedStringField(String javaName, String xmlName) {
+      super(javaName,xmlName);
+   }
+
+   public InternedStringField(String javaName, String xmlName, int sinceVersion, String defaultValue) {
+      super(javaName,xmlName,sinceVersion,defaultValue);
+   }
+
+// --- subclass hooks ---
+
+   protected void loadNormal(Node node, Object o) throws ValidationException {
+      tset(o,(String) interner.intern(getElementText(node,xmlName)));
+   }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Interner.java
+ */
+
+package com.lifepics.neuron.struct;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * A utility class that maps equal immutable values to one shared instance,
+ * so that a value that appears in thousands of objects is stored once.
+ * Unlike String.intern, the table only holds weak references,
+ * so values that aren't in use anywhere can still be collected.
+ */
+
+public class Interner {
+
+// --- fields ---
+
+   private WeakHashMap map; // value -> WeakReference(value)
+
+// --- construction ---
+
+   public Interner() {
+      map = new WeakHashMap();
+   }
+
+// --- methods ---
+
+   /**
+    * Get the shared instance that's equal to the given value.
+    * As a convenience, null produces null.
+    */
+   public synchronized Object intern(Object o) {
+      if (o == null) return null;
+
+      WeakReference ref = (WeakReference) map.get(o);
+      if (ref != null) {
+         Object shared = ref.get();
+         if (shared != null) return shared;
+      }
+
+      map.put(o,new WeakReference(o));
+      return o;
+
+      // the value has to be a weak reference too, since otherwise
+      // it would keep the key alive.  the key and the value are the
+      // same object, except in the moment before the put replaces
+      // an entry whose value has been collected.
+   }
+
+}
@@ -6,8 +6,10 @@ package com.lifepics.neuron.struct;
 
 import com.lifepics.neuron.core.Convert;
 import com.lifepics.neuron.core.ValidationException;
+import com.lifepics.neuron.object.XMLWriter;
 
 import java.io.File;
+import java.io.IOException;
 
 import org.w3c.dom.Node;
 
@@ -96,6 +98,10 @@ public class LongField extends AtomicField {
       createElementText(node,xmlName,Convert.fromLong(tget(o)));
    }
 
+   protected void store(XMLWriter writer, Object o) throws IOException {
+      writeElementText(writer,xmlName,Convert.fromLong(tget(o)));
+   }
+
    protected boolean isDefault(Object o) {
       return (tget(o) == defaultValue);
    }
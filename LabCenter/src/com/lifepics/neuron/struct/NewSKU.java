@@ -57,6 +57,8 @@ public final class NewSKU implements SKU {
 
 // --- fields ---
 
+   private static final long serialVersionUID = 1L; // see PSKU
+
    private String product;
    private Map attributes; // String -> String
 
@@ -134,6 +136,14 @@ public final class NewSKU implements SKU {
       }
    }
 
+   /**
+    * Replace a deserialized object with the interned one, since
+    * equality depends on interning.
+    */
+   private Object readResolve() {
+      return get(product,attributes);
+   }
+
 // --- private methods ---
 
    /**
@@ -7,8 +7,10 @@ package com.lifepics.neuron.struct;
 import com.lifepics.neuron.core.Convert;
 import com.lifepics.neuron.core.Nullable;
 import com.lifepics.neuron.core.ValidationException;
+import com.lifepics.neuron.object.XMLWriter;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Date;
 
 import org.w3c.dom.Node;
@@ -95,6 +97,10 @@ public class NullableDateField extends AtomicField {
       createNullableText(node,xmlName,Convert.fromNullableDateInternal(tget(o)));
    }
 
+   protected void store(XMLWriter writer, Object o) throws IOException {
+      writeNullableText(writer,xmlName,Convert.fromNullableDateInternal(tget(o)));
+   }
+
    protected boolean isDefault(Object o) {
       return Nullable.equals(tget(o),/* defaultValue = */ null);
    }
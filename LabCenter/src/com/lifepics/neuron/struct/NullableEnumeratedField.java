@@ -5,6 +5,9 @@
 package com.lifepics.neuron.struct;
 
 import com.lifepics.neuron.core.ValidationException;
+import com.lifepics.neuron.object.XMLWriter;
+
+import java.io.IOException;
 
 import org.w3c.dom.Node;
 
@@ -48,5 +51,11 @@ public class NullableEnumeratedField extends NullableIntegerField {
       createNullableText(node,xmlName,temp);
    }
 
+   protected void store(XMLWriter writer, Object o) throws IOException {
+      Integer i = tget(o);
+      String temp = (i == null) ? null : type.fromIntForm(i.intValue());
+      writeNullableText(writer,xmlName,temp);
+   }
+
 }
 
@@ -8,8 +8,10 @@ import com.lifepics.neuron.core.Convert;
 import com.lifepics.neuron.core.Nullable;
 import com.lifepics.neuron.core.ValidationException;
 import com.lifepics.neuron.object.Relative;
+import com.lifepics.neuron.object.XMLWriter;
 
 import java.io.File;
+import java.io.IOException;
 
 import org.w3c.dom.Node;
 
@@ -99,6 +101,10 @@ public class NullableFileField extends AtomicField {
       createNullableText(node,xmlName,Convert.fromNullableFile(tget(o)));
    }
 
+   protected void store(XMLWriter writer, Object o) throws IOException {
+      writeNullableText(writer,xmlName,Convert.fromNullableFile(tget(o)));
+   }
+
    protected boolean isDefault(Object o) {
       return Nullable.equals(tget(o),defaultValue);
    }
@@ -0,0 +1,35 @@
+/*
+ * NullableInternedStringField.java
+ */
+
+package com.lifepics.neuron.struct;
+
+import com.lifepics.neuron.core.ValidationException;
+
+import org.w3c.dom.Node;
+
+/**
+ * A class that represents a nullable String-valued field of a structure
+ * whose values repeat a lot from one object to the next.
+ * See {@link InternedStringField}.
+ */
+
+public class NullableInternedStringField extends NullableStringField {
+
+// --- construction ---
+
+   public NullableInternedStringField(String javaName, String xmlName) {
+      super(javaName,xmlName);
+   }
+
+   public NullableInternedStringField(String javaName, String xmlName, int sinceVersion, String defaultValue) {
+      super(javaName,xmlName,sinceVersion,defaultValue);
+   }
+
+// --- subclass hooks ---
+
+   protected void loadNormal(Node node, Object o) throws ValidationException {
+      tset(o,(String) InternedStringField.interner.intern(getNullableText(node,xmlName)));
+   }
+
+}
@@ -6,8 +6,10 @@ package com.lifepics.neuron.struct;
 
 import com.lifepics.neuron.core.Nullable;
 import com.lifepics.neuron.core.ValidationException;
+import com.lifepics.neuron.object.XMLWriter;
 
 import java.io.File;
+import java.io.IOException;
 
 import org.w3c.dom.Node;
 
@@ -127,6 +129,15 @@ public class NullableSKUField extends AtomicField {
       }
    }
 
+   protected void store(XMLWriter writer, Object o) throws IOException {
+      SKU val = tget(o);
+      if (val instanceof NewSKU) {
+         writeElementText(writer,xmlName,NewSKU.encode((NewSKU) val));
+      } else {
+         writeNullableText(writer,oldName,(val != null) ? OldSKU.encode((OldSKU) val) : null);
+      }
+   }
+
    protected boolean isDefault(Object o) {
       return Nullable.equalsObject(tget(o),/* defaultValue = */ null);
    }
@@ -7,8 +7,10 @@ package com.lifepics.neuron.struct;
 import com.lifepics.neuron.core.Nullable;
 import com.lifepics.neuron.core.ValidationException;
 import com.lifepics.neuron.object.XML;
+import com.lifepics.neuron.object.XMLWriter;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.LinkedList;
 
@@ -113,6 +115,15 @@ public class NullableStringListField extends CompositeField {
       if (list != null) XML.createStringList(node,xmlName,xmlNestedName,list);
    }
 
+   protected void store(XMLWriter writer, Object o) throws IOException {
+      LinkedList list = tget(o);
+      if (list != null) {
+         writer.startElement(xmlName);
+         InlineListField.writeInlineList(writer,xmlNestedName,list);
+         writer.endElement();
+      }
+   }
+
    protected boolean isDefault(Object o) {
       return (tget(o) == null); // default is null
    }
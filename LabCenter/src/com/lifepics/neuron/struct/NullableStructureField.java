@@ -9,8 +9,11 @@ import com.lifepics.neuron.core.ValidationException;
 import com.lifepics.neuron.object.Copyable;
 import com.lifepics.neuron.object.CopyUtil;
 import com.lifepics.neuron.object.XML;
+import com.lifepics.neuron.object.XMLLoader;
+import com.lifepics.neuron.object.XMLWriter;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 
 import org.w3c.dom.Node;
@@ -112,16 +115,41 @@ public class NullableStructureField extends CompositeField {
       if (child != null) tset(o,sd.load(child,sd.construct()));
    }
 
+   protected XMLLoader.Target getTargetNormal(final Object o, boolean first) {
+      if ( ! first ) return null; // loadNormal only reads the first
+      return sd.getTarget(sd.construct(),new StructureDefinition.Receiver() {
+         public void receive(Object val) { tset(o,val); }
+      });
+   }
+
    public void store(Node node, Object o) {
       Object val = tget(o);
       if (val != null) sd.store(XML.createElement(node,xmlName),val);
    }
 
+   protected void store(XMLWriter writer, Object o) throws IOException {
+      Object val = tget(o);
+      if (val != null) {
+         writer.startElement(xmlName);
+         sd.store(writer,val);
+         writer.endElement();
+      }
+   }
+
    protected void tstoreNormal(int t, Node node, Object o) throws ValidationException {
       Object val = tget(o);
       if (val != null) sd.tstore(t,XML.createElement(node,xmlName),val);
    }
 
+   protected void tstoreNormal(int t, XMLWriter writer, Object o) throws IOException, ValidationException {
+      Object val = tget(o);
+      if (val != null) {
+         writer.startElement(xmlName);
+         sd.tstore(t,writer,val);
+         writer.endElement();
+      }
+   }
+
    protected boolean isDefault(Object o) {
       return (tget(o) == null); // default is null
    }
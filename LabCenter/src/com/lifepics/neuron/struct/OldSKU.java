@@ -8,17 +8,21 @@ package com.lifepics.neuron.struct;
  * An object that represents an old SKU, which is just a string.
  * I'd rather subclass String, but I can't do that because it's
  * a final class.  Like NewSKU, this is used mostly on the
- * dendron side of things; unlike NewSKU, it's small enough that
- * I think it's not worth interning.
+ * dendron side of things.  Unlike NewSKU, it's not necessary
+ * to intern it, since equals compares the strings, but decode
+ * does intern it anyway, weakly, so that the thousands of items
+ * in loaded orders share a few SKU objects.
  */
 
 public final class OldSKU implements SKU {
 
+   private static final long serialVersionUID = 1L; // see PSKU
+
    private String product;
    public OldSKU(String product) { this.product = product; }
 
    public boolean equals(Object o) {
-      return (o instanceof OldSKU && product.equals(((OldSKU) o).product));
+      return (o == this || (o instanceof OldSKU && product.equals(((OldSKU) o).product)));
    }
    public boolean matches(SKU sku) { return equals(sku); }
 
@@ -41,7 +45,17 @@ public final class OldSKU implements SKU {
    }
 
    public static OldSKU decode(String s) {
-      return new OldSKU(s);
+      return (OldSKU) interner.intern(new OldSKU(s));
+   }
+
+   private static Interner interner = new Interner();
+
+   /**
+    * Replace a deserialized object with the interned one,
+    * not for correctness as in NewSKU, just to share memory.
+    */
+   private Object readResolve() {
+      return decode(product);
    }
 
 }
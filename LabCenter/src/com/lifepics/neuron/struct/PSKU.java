@@ -4,15 +4,21 @@
 
 package com.lifepics.neuron.struct;
 
+import java.io.Serializable;
+
 /**
  * A marker interface for OldSKU, NewSKU, and Pattern.
  * The name is short for "pattern SKU" or something.
  * Every SKU is also a PSKU that matches just one SKU.
  */
 
-public interface PSKU {
+public interface PSKU extends Serializable {
 
    // implement equals, hashCode, toString, and matches
+   // (serializable so that tables can snapshot them, see SnapshotStorage.
+   // the implementations have fixed serial version numbers, so if you
+   // change the fields of one, change its number too, otherwise a snapshot
+   // from before the change would still load, with the new fields empty.)
 
    /**
     * Test whether the argument matches the PSKU object.
@@ -5,8 +5,10 @@
 package com.lifepics.neuron.struct;
 
 import com.lifepics.neuron.core.ValidationException;
+import com.lifepics.neuron.object.XMLWriter;
 
 import java.io.File;
+import java.io.IOException;
 
 import org.w3c.dom.Node;
 
@@ -118,6 +120,17 @@ public class PSKUField extends AtomicField {
       }
    }
 
+   protected void store(XMLWriter writer, Object o) throws IOException {
+      PSKU val = tget(o);
+      if (val instanceof NewSKU) {
+         writeElementText(writer,xmlName,NewSKU.encode((NewSKU) val));
+      } else if (val instanceof Pattern) {
+         writeElementText(writer,patternName,Pattern.encode((Pattern) val));
+      } else {
+         writeElementText(writer,oldName,OldSKU.encode((OldSKU) val));
+      }
+   }
+
    // isDefault can remain false
 
 }
@@ -6,6 +6,9 @@ package com.lifepics.neuron.struct;
 
 import com.lifepics.neuron.core.ValidationException;
 import com.lifepics.neuron.object.Obfuscate;
+import com.lifepics.neuron.object.XMLWriter;
+
+import java.io.IOException;
 
 import org.w3c.dom.Node;
 
@@ -46,5 +49,9 @@ public class PasswordField extends StringField {
       createElementText(node,xmlName,Obfuscate.hide(tget(o),classifier));
    }
 
+   protected void store(XMLWriter writer, Object o) throws IOException {
+      writeElementText(writer,xmlName,Obfuscate.hide(tget(o),classifier));
+   }
+
 }
 
@@ -8,6 +8,7 @@ import com.lifepics.neuron.core.Text;
 import com.lifepics.neuron.core.ValidationException;
 import com.lifepics.neuron.meta.NoCaseComparator;
 
+import java.io.Serializable;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -29,6 +30,8 @@ public final class Pattern implements PSKU {
 
 // --- fields ---
 
+   private static final long serialVersionUID = 1L; // see PSKU
+
    private String product;
    private Map attributes; // String -> ValueSet
 
@@ -184,7 +187,9 @@ public final class Pattern implements PSKU {
    // validate against duplicate keys either, we just do what we're
    // told and construct whatever object.
 
-   public static class ValueSet {
+   public static class ValueSet implements Serializable {
+
+      private static final long serialVersionUID = 1L; // see PSKU
 
       public boolean inverted;
       public HashSet values; // String
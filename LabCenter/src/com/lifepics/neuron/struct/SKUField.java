@@ -5,8 +5,10 @@
 package com.lifepics.neuron.struct;
 
 import com.lifepics.neuron.core.ValidationException;
+import com.lifepics.neuron.object.XMLWriter;
 
 import java.io.File;
+import java.io.IOException;
 
 import org.w3c.dom.Node;
 
@@ -121,6 +123,15 @@ public class SKUField extends AtomicField {
       }
    }
 
+   protected void store(XMLWriter writer, Object o) throws IOException {
+      SKU val = tget(o);
+      if (val instanceof NewSKU) {
+         writeElementText(writer,xmlName,NewSKU.encode((NewSKU) val));
+      } else {
+         writeElementText(writer,oldName,OldSKU.encode((OldSKU) val));
+      }
+   }
+
    // isDefault can remain false
 
 }
@@ -5,8 +5,10 @@
 package com.lifepics.neuron.struct;
 
 import com.lifepics.neuron.core.ValidationException;
+import com.lifepics.neuron.object.XMLWriter;
 
 import java.io.File;
+import java.io.IOException;
 
 import org.w3c.dom.Node;
 
@@ -95,6 +97,10 @@ public class StringField extends AtomicField {
       createElementText(node,xmlName,tget(o));
    }
 
+   protected void store(XMLWriter writer, Object o) throws IOException {
+      writeElementText(writer,xmlName,tget(o));
+   }
+
    protected boolean isDefault(Object o) {
       return tget(o).equals(defaultValue);
    }
@@ -6,6 +6,9 @@ package com.lifepics.neuron.struct;
 
 import com.lifepics.neuron.core.ValidationException;
 import com.lifepics.neuron.object.XML;
+import com.lifepics.neuron.object.XMLWriter;
+
+import java.io.IOException;
 
 import org.w3c.dom.Node;
 
@@ -45,5 +48,11 @@ public class StringListField extends InlineListField {
       XML.createStringList(node,xmlName,xmlNestedName,tget(o));
    }
 
+   protected void store(XMLWriter writer, Object o) throws IOException {
+      writer.startElement(xmlName);
+      writeInlineList(writer,xmlNestedName,tget(o));
+      writer.endElement();
+   }
+
 }
 
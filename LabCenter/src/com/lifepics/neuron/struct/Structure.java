@@ -8,8 +8,11 @@ import com.lifepics.neuron.core.ValidationException;
 import com.lifepics.neuron.object.Copyable;
 import com.lifepics.neuron.object.Relative;
 import com.lifepics.neuron.object.XML;
+import com.lifepics.neuron.object.XMLLoader;
+import com.lifepics.neuron.object.XMLWriter;
 
 import java.io.File;
+import java.io.IOException;
 
 import org.w3c.dom.Node;
 
@@ -18,7 +21,7 @@ import org.w3c.dom.Node;
  * with calls to a single static StructureDefinition object.
  */
 
-public abstract class Structure implements XML.Persist, Copyable, Relative.Path {
+public abstract class Structure implements XML.Streamed, Copyable, Relative.Path {
 
 // --- subclass hook ---
 
@@ -51,6 +54,15 @@ public abstract class Structure implements XML.Persist, Copyable, Relative.Path
       return o;
    }
 
+   /**
+    * Make a new structure with copies of only the atomic fields.
+    */
+   public Object copyAtomic() {
+      Object o = sd().construct();
+      sd().copyAtomic(o,this);
+      return o;
+   }
+
 // --- equals ---
 
    public boolean equals(Object o) {
@@ -95,5 +107,17 @@ public abstract class Structure implements XML.Persist, Copyable, Relative.Path
       sd().tstore(t,node,this);
    }
 
+   public XMLLoader.Target getTarget() {
+      return sd().getTarget(this,null);
+   }
+
+   public void store(XMLWriter writer) throws IOException {
+      sd().store(writer,this);
+   }
+
+   public void tstore(int t, XMLWriter writer) throws IOException, ValidationException {
+      sd().tstore(t,writer,this);
+   }
+
 }
 
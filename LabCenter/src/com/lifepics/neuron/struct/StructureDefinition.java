@@ -8,11 +8,15 @@ import com.lifepics.neuron.core.Convert;
 import com.lifepics.neuron.core.Text;
 import com.lifepics.neuron.core.ValidationException;
 import com.lifepics.neuron.object.XML;
+import com.lifepics.neuron.object.XMLLoader;
+import com.lifepics.neuron.object.XMLWriter;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 
@@ -37,6 +41,8 @@ public class StructureDefinition {
 
    private Class c;
    private AbstractField[] fields; // constant, so array is nice
+   private AbstractField[] composite; // the non-atomic subset, see bind
+   private HashMap targets; // element name -> Integer field index, see bind
 
    private boolean versioned;
    private int versionMin;
@@ -104,6 +110,25 @@ public class StructureDefinition {
       } catch (NoSuchFieldException e) {
          throw new Error(e);
       }
+
+      // atomic fields hold primitives and immutable objects, so their
+      // init and copy hooks never do anything.  since every table read
+      // and notification makes a copy, it's worth not even calling them.
+
+      LinkedList list = new LinkedList();
+      for (int i=0; i<fields.length; i++) {
+         if ( ! (fields[i] instanceof AtomicField) ) list.add(fields[i]);
+      }
+      composite = (AbstractField[]) list.toArray(new AbstractField[list.size()]);
+
+      // the fields that can load from parser events, by element name.
+      // if two fields use the same name, only the first gets the events.
+
+      targets = new HashMap();
+      for (int i=0; i<fields.length; i++) {
+         String name = fields[i].getTargetName();
+         if (name != null && ! targets.containsKey(name)) targets.put(name,new Integer(i));
+      }
    }
 
    public void setAttributed() {
@@ -146,8 +171,8 @@ public class StructureDefinition {
 // --- subclass hooks ---
 
    public void init(Object o) {
-      for (int i=0; i<fields.length; i++) {
-         fields[i].init(o);
+      for (int i=0; i<composite.length; i++) {
+         composite[i].init(o);
       }
    }
 
@@ -158,9 +183,28 @@ public class StructureDefinition {
    }
 
    public void copy(Object oDest, Object oSrc) {
+      for (int i=0; i<composite.length; i++) {
+         composite[i].copy(oDest,oSrc);
+      }
+   }
+
+   /**
+    * Copy only the atomic fields, leaving the lists and substructures
+    * the way init left them.  This is the cheap copy for views that
+    * only show simple columns; see {@link com.lifepics.neuron.table.Projector}.
+    */
+   public void copyAtomic(Object oDest, Object oSrc) {
       for (int i=0; i<fields.length; i++) {
-         fields[i].copy(oDest,oSrc);
+         if (fields[i] instanceof AtomicField) {
+            AtomicField field = (AtomicField) fields[i];
+            field.put(oDest,field.get(oSrc));
+            field.copy(oDest,oSrc);
+         }
       }
+      // oDest isn't a clone, so first do what clone would have done,
+      // then let the field do any deeper copying it needs.  the atomic
+      // hooks skipped in copy are no-ops today, but this is the rare path,
+      // so don't depend on that here.
    }
 
    public boolean equals(Object o1, Object o2) {
@@ -227,6 +271,122 @@ public class StructureDefinition {
       }
    }
 
+// --- stream functions ---
+
+   /**
+    * Store into the current element of a writer.
+    */
+   public void store(XMLWriter writer, Object o) throws IOException {
+      if (versioned) writeVersion(writer,versionMax);
+      for (int i=0; i<fields.length; i++) {
+         fields[i].write(writer,o);
+      }
+   }
+
+   public void tstore(int t, XMLWriter writer, Object o) throws IOException, ValidationException {
+      int version = versioned ? (history == null ? versionMax : history.getVersion(t)) : 0;
+      if (versioned) writeVersion(writer,version);
+      for (int i=0; i<fields.length; i++) {
+         fields[i].twrite(t,writer,o,version);
+      }
+   }
+
+   /**
+    * An interface for receiving a structure that's done loading from events.
+    */
+   public interface Receiver {
+      void receive(Object o) throws ValidationException;
+   }
+
+   /**
+    * Get a target that loads a structure from parser events.
+    *
+    * @param receiver The receiver for the structure when it's done, or null.
+    */
+   public XMLLoader.Target getTarget(Object o, Receiver receiver) {
+      return new Loader(o,receiver);
+   }
+
+   // the loader lets fields take their elements as events when they can,
+   // which for now means the structure fields, so that lists of structures
+   // load one element at a time.  everything else is captured, and at the
+   // end, the rest of the fields load from the node in the usual order.
+   // the structure fields don't care about order, since each one only
+   // sets its own value from its own elements.
+   //
+   // the version has to be known before anything can be passed through,
+   // so if it's not an attribute, it has to come first, which it does in
+   // everything we write.  and, if any field might run custom code that
+   // reads elements other than its own, we capture everything, because
+   // we don't know which elements it wants.  that's rare in practice, it
+   // mostly happens when loading an old version of a structure.
+
+   private static final int STATE_UNKNOWN = 0;
+   private static final int STATE_STREAM  = 1;
+   private static final int STATE_CAPTURE = 2;
+
+   private class Loader implements XMLLoader.Target {
+
+      private Object o;
+      private Receiver receiver;
+      private int state;
+      private int version;
+      private boolean[] handled; // whether each field went to targets
+
+      public Loader(Object o, Receiver receiver) {
+         this.o = o;
+         this.receiver = receiver;
+         state = STATE_UNKNOWN;
+      }
+
+      public XMLLoader.Target child(String name, Node node) throws ValidationException {
+
+         if (state == STATE_UNKNOWN) {
+            if ( ! versioned ) {
+               version = 0;
+            } else if (attributed) {
+               version = getVersion(node,versionMin,versionMax);
+            } else if (name.equals(NAME_VERSION)) {
+               return null; // capture it, and decide at the next element
+            } else if (XML.getElementTry(node,NAME_VERSION) != null) {
+               version = getVersion(node,versionMin,versionMax);
+            } else {
+               state = STATE_CAPTURE;
+               return null;
+            }
+            state = isCustomLoad(version) ? STATE_CAPTURE : STATE_STREAM;
+         }
+
+         if (state != STATE_STREAM) return null;
+
+         Integer index = (Integer) targets.get(name);
+         if (index == null) return null;
+         int i = index.intValue();
+
+         if (handled == null) handled = new boolean[fields.length];
+
+         XMLLoader.Target target = fields[i].getTarget(o,version,/* first = */ ! handled[i]);
+         if (target != null) handled[i] = true;
+         return target;
+      }
+
+      public void end(Node node) throws ValidationException {
+         int v = versioned ? getVersion(node,versionMin,versionMax) : 0;
+         for (int i=0; i<fields.length; i++) {
+            if (handled == null || ! handled[i]) fields[i].load(node,o,v);
+         }
+         // same as load, and the version is checked again the same way
+         if (receiver != null) receiver.receive(o);
+      }
+   }
+
+   private boolean isCustomLoad(int version) {
+      for (int i=0; i<fields.length; i++) {
+         if (fields[i].isCustomLoad(version)) return true;
+      }
+      return false;
+   }
+
 // --- version helpers ---
 
    private static final String NAME_VERSION = "Version";
@@ -259,5 +419,15 @@ public class StructureDefinition {
       else            XML.createElementText(node,NAME_VERSION,  value);
    }
 
+   /**
+    * Write a version entry into the current element.
+    */
+   public void writeVersion(XMLWriter writer, int version) throws IOException {
+      String value = Convert.fromInt(version);
+
+      if (attributed) writer.attribute(NAME_ATTRIBUTE,value);
+      else            writer.element  (NAME_VERSION,  value);
+   }
+
 }
 
@@ -8,8 +8,11 @@ import com.lifepics.neuron.core.ValidationException;
 import com.lifepics.neuron.object.Copyable;
 import com.lifepics.neuron.object.CopyUtil;
 import com.lifepics.neuron.object.XML;
+import com.lifepics.neuron.object.XMLLoader;
+import com.lifepics.neuron.object.XMLWriter;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 
 import org.w3c.dom.Node;
@@ -92,14 +95,33 @@ public class StructureField extends CompositeField {
       tset(o,sd.load(XML.getElement(node,xmlName),sd.construct()));
    }
 
+   protected XMLLoader.Target getTargetNormal(final Object o, boolean first) {
+      if ( ! first ) return null; // loadNormal only reads the first
+      return sd.getTarget(sd.construct(),new StructureDefinition.Receiver() {
+         public void receive(Object val) { tset(o,val); }
+      });
+   }
+
    public void store(Node node, Object o) {
       sd.store(XML.createElement(node,xmlName),tget(o));
    }
 
+   protected void store(XMLWriter writer, Object o) throws IOException {
+      writer.startElement(xmlName);
+      sd.store(writer,tget(o));
+      writer.endElement();
+   }
+
    protected void tstoreNormal(int t, Node node, Object o) throws ValidationException {
       sd.tstore(t,XML.createElement(node,xmlName),tget(o));
    }
 
+   protected void tstoreNormal(int t, XMLWriter writer, Object o) throws IOException, ValidationException {
+      writer.startElement(xmlName);
+      sd.tstore(t,writer,tget(o));
+      writer.endElement();
+   }
+
    protected boolean isDefault(Object o) {
       Object model = sd.loadDefault(sd.construct());
       return sd.equals(tget(o),model); // default is model
@@ -8,8 +8,11 @@ import com.lifepics.neuron.core.ValidationException;
 import com.lifepics.neuron.meta.Accessor;
 import com.lifepics.neuron.object.CopyUtil;
 import com.lifepics.neuron.object.XML;
+import com.lifepics.neuron.object.XMLLoader;
+import com.lifepics.neuron.object.XMLWriter;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -131,6 +134,13 @@ public class StructureListField extends CompositeField {
       }
    }
 
+   protected XMLLoader.Target getTargetNormal(Object o, boolean first) {
+      final LinkedList list = tget(o);
+      return sd.getTarget(sd.construct(),new StructureDefinition.Receiver() {
+         public void receive(Object val) { list.add(val); }
+      });
+   }
+
    public void store(Node node, Object o) {
       Iterator i = tget(o).iterator();
       while (i.hasNext()) {
@@ -138,6 +148,15 @@ public class StructureListField extends CompositeField {
       }
    }
 
+   protected void store(XMLWriter writer, Object o) throws IOException {
+      Iterator i = tget(o).iterator();
+      while (i.hasNext()) {
+         writer.startElement(xmlName);
+         sd.store(writer,i.next());
+         writer.endElement();
+      }
+   }
+
    protected void tstoreNormal(int t, Node node, Object o) throws ValidationException {
       Iterator i = tget(o).iterator();
       while (i.hasNext()) {
@@ -145,6 +164,15 @@ public class StructureListField extends CompositeField {
       }
    }
 
+   protected void tstoreNormal(int t, XMLWriter writer, Object o) throws IOException, ValidationException {
+      Iterator i = tget(o).iterator();
+      while (i.hasNext()) {
+         writer.startElement(xmlName);
+         sd.tstore(t,writer,i.next());
+         writer.endElement();
+      }
+   }
+
    protected boolean isDefault(Object o) {
       LinkedList list = tget(o);
       if (list.size() != defaultCount) return false;
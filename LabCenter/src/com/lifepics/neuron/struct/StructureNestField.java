@@ -6,6 +6,10 @@ package com.lifepics.neuron.struct;
 
 import com.lifepics.neuron.core.ValidationException;
 import com.lifepics.neuron.object.XML;
+import com.lifepics.neuron.object.XMLLoader;
+import com.lifepics.neuron.object.XMLWriter;
+
+import java.io.IOException;
 
 import org.w3c.dom.Node;
 
@@ -39,13 +43,40 @@ public class StructureNestField extends StructureListField {
       super.loadNormal(XML.getElement(node,xmlParentName),o);
    }
 
+   public String getTargetName() {
+      return (super.getTargetName() != null) ? xmlParentName : null;
+   }
+
+   protected XMLLoader.Target getTargetNormal(final Object o, boolean first) {
+      if ( ! first ) return null; // loadNormal only reads the first
+      return new XMLLoader.Target() {
+         public XMLLoader.Target child(String name, Node node) {
+            return name.equals(xmlName) ? StructureNestField.super.getTargetNormal(o,true) : null;
+         }
+         public void end(Node node) {}
+      };
+      // anything else in the parent element is captured and ignored
+   }
+
    public void store(Node node, Object o) {
       super.store(XML.createElement(node,xmlParentName),o);
    }
 
+   protected void store(XMLWriter writer, Object o) throws IOException {
+      writer.startElement(xmlParentName);
+      super.store(writer,o);
+      writer.endElement();
+   }
+
    protected void tstoreNormal(int t, Node node, Object o) throws ValidationException {
       super.tstoreNormal(t,XML.createElement(node,xmlParentName),o);
    }
 
+   protected void tstoreNormal(int t, XMLWriter writer, Object o) throws IOException, ValidationException {
+      writer.startElement(xmlParentName);
+      super.tstoreNormal(t,writer,o);
+      writer.endElement();
+   }
+
 }
 
@@ -446,6 +446,21 @@ public class AlternatingFile {
       return t;
    }
 
+   /**
+    * Get the length of whatever component we would read from.
+    * If neither component exists, throw an exception.
+    */
+   public long getLength() throws IOException {
+
+      File source = null;
+
+      if      (file     .exists()) source = file;
+      else if (alternate.exists()) source = alternate;
+      else fail("e22");
+
+      return source.length();
+   }
+
 // --- list ---
 
    /**
@@ -34,6 +34,13 @@ public class AlternatingFileStorage implements Storage {
       this.suffix = (suffix != null) ? ('.' + suffix) : null;
    }
 
+   /**
+    * Describe the storage, for log messages.
+    */
+   public String toString() {
+      return dir.getName();
+   }
+
 // --- implementation of Storage ---
 
    /**
@@ -99,6 +106,15 @@ public class AlternatingFileStorage implements Storage {
       }
    }
 
+   /**
+    * Get a string that changes whenever the stored object changes,
+    * or at least whenever the file size or modification time does.
+    */
+   public String getFingerprint(String key) throws IOException {
+      AlternatingFile af = getFile(key);
+      return af.getLength() + "/" + af.getLastModified();
+   }
+
    /**
     * Delete the object from the space identified by the given key.
     */
@@ -0,0 +1,176 @@
+/*
+ * Delta.java
+ */
+
+package com.lifepics.neuron.table;
+
+import com.lifepics.neuron.core.Text;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A package-private helper class that computes and applies
+ * line-by-line differences between two versions of a payload,
+ * for use by {@link JournalStorage}.
+ */
+
+class Delta {
+
+   // the payloads are indented XML, one field per line, and a typical
+   // update changes a few field values and nothing else.  so, if the
+   // two versions have the same number of lines, we compare them line
+   // by line and record each run of changed lines as a hunk; otherwise
+   // (something was added or removed) we fall back to a single hunk
+   // that covers everything between the common prefix and suffix.
+   //
+   // the format is
+   //
+   //    int   length of the old payload, as a sanity check
+   //    int   number of hunks
+   //    hunks int offset in old, int length in old, int length of new, new bytes
+   //
+   // with the hunks in increasing order of offset.
+
+// --- create ---
+
+   /**
+    * Compute the difference between two payloads.
+    */
+   public static byte[] create(byte[] a, byte[] b) throws IOException {
+
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      DataOutputStream data = new DataOutputStream(buffer);
+
+      int[] la = getLines(a);
+      int[] lb = getLines(b);
+
+      data.writeInt(a.length);
+
+      if (la.length == lb.length) {
+
+         int count = 0;
+         ByteArrayOutputStream hunks = new ByteArrayOutputStream();
+         DataOutputStream hunkData = new DataOutputStream(hunks);
+
+         int n = la.length - 1; // number of lines
+         int i = 0;
+         while (i < n) {
+            if (lineEquals(a,la,b,lb,i)) { i++; continue; }
+
+            int j = i+1;
+            while (j < n && ! lineEquals(a,la,b,lb,j)) j++;
+
+            writeHunk(hunkData,la[i],la[j],b,lb[i],lb[j]);
+            count++;
+            i = j;
+         }
+
+         hunkData.flush();
+         data.writeInt(count);
+         hunks.writeTo(data);
+
+      } else {
+
+         int prefix = 0;
+         int max = Math.min(a.length,b.length);
+         while (prefix < max && a[prefix] == b[prefix]) prefix++;
+
+         int suffix = 0;
+         max -= prefix;
+         while (suffix < max && a[a.length-1-suffix] == b[b.length-1-suffix]) suffix++;
+
+         data.writeInt(1);
+         writeHunk(data,prefix,a.length-suffix,b,prefix,b.length-suffix);
+      }
+
+      data.flush();
+      return buffer.toByteArray();
+   }
+
+   /**
+    * Find the line boundaries in a payload.
+    *
+    * @return An array of n+1 offsets for n lines, where line i is the range
+    *         from entry i to entry i+1, including the line break if any.
+    */
+   private static int[] getLines(byte[] a) {
+
+      int n = 1;
+      for (int i=0; i<a.length; i++) {
+         if (a[i] == '\n') n++;
+      }
+      if (a.length > 0 && a[a.length-1] == '\n') n--;
+      // a break at the very end doesn't start another line
+
+      int[] lines = new int[n+1];
+      int k = 1;
+      for (int i=0; i<a.length; i++) {
+         if (a[i] == '\n' && k < n) lines[k++] = i+1;
+      }
+      lines[n] = a.length;
+
+      return lines;
+   }
+
+   private static boolean lineEquals(byte[] a, int[] la, byte[] b, int[] lb, int i) {
+      int start = la[i];
+      int len = la[i+1] - start;
+      if (lb[i+1] - lb[i] != len) return false;
+
+      int offset = lb[i] - start;
+      for (int k=start; k<start+len; k++) {
+         if (a[k] != b[k+offset]) return false;
+      }
+      return true;
+   }
+
+   private static void writeHunk(DataOutputStream data, int startA, int endA, byte[] b, int startB, int endB) throws IOException {
+      data.writeInt(startA);
+      data.writeInt(endA - startA);
+      data.writeInt(endB - startB);
+      data.write(b,startB,endB - startB);
+   }
+
+// --- apply ---
+
+   private static void fail() throws IOException {
+      throw new IOException(Text.get(Delta.class,"e1"));
+   }
+
+   /**
+    * Apply a difference to the payload it was computed from.
+    */
+   public static byte[] apply(byte[] a, byte[] delta) throws IOException {
+
+      DataInputStream data = new DataInputStream(new ByteArrayInputStream(delta));
+      ByteArrayOutputStream result = new ByteArrayOutputStream(a.length);
+
+      if (data.readInt() != a.length) fail();
+
+      int pos = 0; // position in a
+      int count = data.readInt();
+      for (int i=0; i<count; i++) {
+
+         int offset = data.readInt();
+         int remove = data.readInt();
+         int insert = data.readInt();
+         if (offset < pos || remove < 0 || insert < 0 || offset + remove > a.length) fail();
+
+         result.write(a,pos,offset - pos);
+
+         byte[] b = new byte[insert];
+         data.readFully(b);
+         result.write(b,0,insert);
+
+         pos = offset + remove;
+      }
+
+      result.write(a,pos,a.length - pos);
+      return result.toByteArray();
+   }
+
+}
@@ -230,7 +230,7 @@ public class DerivedTable implements TableListener {
 
    // construct the view
 
-      TableView view = new TableView(selector,comparator,derivedAdapter,c);
+      TableView view = new TableView(selector,comparator,derivedAdapter,null,c);
       if (dynamic) addListener( transfer ? view.transferrer() : view );
       return view;
    }
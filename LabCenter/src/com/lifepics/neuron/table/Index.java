@@ -7,7 +7,8 @@ package com.lifepics.neuron.table;
 /**
  * An interface representing an index on a set of objects.
  * The point is to be able to look up single objects with
- * some value that's not the primary key.
+ * some value that's not the primary key, or, if the index
+ * isn't unique, all the objects that share some value.
  */
 
 public interface Index {
@@ -17,6 +18,11 @@ public interface Index {
     */
    String lookup(Object index);
 
+   /**
+    * Look up all the primary keys that have an index value.
+    */
+   String[] lookupAll(Object index);
+
    /**
     * Suspend dynamic updates of the index.
     * This should only be done for short intervals,
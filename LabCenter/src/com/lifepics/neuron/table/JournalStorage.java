@@ -0,0 +1,803 @@
+/*
+ * JournalStorage.java
+ */
+
+package com.lifepics.neuron.table;
+
+import com.lifepics.neuron.core.Log;
+import com.lifepics.neuron.core.Text;
+import com.lifepics.neuron.core.ValidationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.zip.Adler32;
+
+/**
+ * Persistent storage implemented as an append-only journal of records
+ * spread across a series of numbered segment files in a single directory.
+ * The journal is replayed at construction and compacted in the background.
+ */
+
+public class JournalStorage implements Storage {
+
+   // some notes on the file format.
+   //
+   // every segment starts with a header (magic, format, kind).
+   // the kind is either APPEND, for segments that we write
+   // record by record, or BASE, for segments produced by compaction.
+   // a base segment contains the complete set of live objects
+   // as of the time it was written, so on replay everything in
+   // lower-numbered segments can be ignored (and deleted).
+   //
+   // after the header, a segment is just a sequence of records.
+   //
+   //    int    length of body
+   //    body   byte type, UTF key, payload (for stores and deltas)
+   //    long   Adler32 checksum of body
+   //
+   // the payload is whatever the table adapter writes, so for the
+   // order table it's the same XML that would go in the queue file.
+   //
+   // a delta record holds just the lines that changed since the
+   // previous record for the same key (see Delta), which for the
+   // per-file status updates on a large order is a tiny fraction
+   // of the whole thing.  to load an object, we read the most
+   // recent full record and apply the deltas after it in order.
+   // the chains are kept short, and compaction flattens them.
+   // we only write a delta when we still have the previous payload
+   // in memory, from a recent store or load, so that a store never
+   // has to read back from the journal.
+
+   // the crash-safety argument goes like this.
+   //
+   // an append is a single write of a complete record at the end of
+   // the active segment.  if the system goes down partway through,
+   // the record is torn, the checksum (or the length) doesn't match,
+   // and on replay we truncate the segment back to the last good
+   // record.  that's the same guarantee AlternatingFile gives, that
+   // after a crash you see either the old object or the new one.
+   //
+   // a torn record anywhere except the end of the last segment
+   // can't be explained by a crash, so that's treated as damage.
+   //
+   // compaction writes the base segment with AlternatingFile, on top
+   // of the most recent closed segment, and only deletes the older
+   // segments once that's committed.  so, at any instant, replay
+   // sees either the old segments or the new base, never a mixture
+   // that loses anything.
+
+// --- constants ---
+
+   private static final int MAGIC  = 0x4C434A4E; // "LCJN"
+   private static final int FORMAT = 2;
+   private static final int FORMAT_OLD = 1; // no deltas, still readable
+
+   private static final byte KIND_APPEND = 0;
+   private static final byte KIND_BASE   = 1;
+
+   private static final byte TYPE_STORE  = 1;
+   private static final byte TYPE_DELETE = 2;
+   private static final byte TYPE_DELTA  = 3;
+
+   private static final int HEADER_SIZE = 9; // int + int + byte
+   private static final int RECORD_OVERHEAD = 12; // int + long
+
+   private static final long SEGMENT_LIMIT = 4194304; // 4 MB
+   private static final int COMPACT_SEGMENTS = 4;
+
+   private static final int CHAIN_LIMIT = 16;  // max number of deltas in a row
+   private static final int RECENT_LIMIT = 16; // number of payloads kept for deltas
+
+   private static final String PREFIX = "journal";
+   private static final String SUFFIX = ".dat";
+
+// --- fields ---
+
+   private File dir;
+
+   private HashMap locations; // key -> Location
+   private long liveBytes;    // sum of record sizes of current locations
+   private long totalBytes;   // sum of sizes of all segments
+
+   private int activeNumber;  // number of the segment we append to
+   private FileOutputStream activeStream;
+   private long activeSize;
+
+   private int baseNumber;    // number of the oldest segment still in use
+   private boolean compacting;
+   private boolean fresh;     // true if the journal was empty when opened
+
+   private LinkedHashMap recent; // key -> byte[] current payload, in access order
+
+// --- helper classes ---
+
+   private static class Location {
+
+      public int segment;
+      public long offset; // position of the payload within the segment
+      public int length;  // length of the payload
+      public int size;    // size of the whole record, for accounting
+      public Location prev; // for a delta, the location it applies to; else null
+
+      public Location(int segment, long offset, int length, int size, Location prev) {
+         this.segment = segment;
+         this.offset = offset;
+         this.length = length;
+         this.size = size;
+         this.prev = prev;
+      }
+   }
+
+   /**
+    * Sum the record sizes along a chain, for accounting.
+    */
+   private static long getChainSize(Location loc) {
+      long size = 0;
+      for ( ; loc != null; loc = loc.prev) size += loc.size;
+      return size;
+   }
+
+   private static int getChainLength(Location loc) {
+      int n = 0;
+      for ( ; loc.prev != null; loc = loc.prev) n++;
+      return n;
+   }
+
+// --- construction ---
+
+   /**
+    * Open a journal, replaying any existing segments.
+    */
+   public JournalStorage(File dir) throws IOException {
+      this.dir = dir;
+
+      if ( ! dir.exists() && ! dir.mkdirs() ) fail("e1",dir.getName());
+
+      locations = new HashMap();
+      recent = new LinkedHashMap(RECENT_LIMIT*2,0.75f,/* accessOrder = */ true) {
+         protected boolean removeEldestEntry(Map.Entry eldest) { return size() > RECENT_LIMIT; }
+      };
+      if ( ! replay() ) openActive(activeNumber + 1);
+   }
+
+   /**
+    * Open a journal, and if it has no segments at all, seed it with
+    * all the objects from some other storage.  This is the way
+    * to migrate a table from {@link AlternatingFileStorage}.
+    */
+   public JournalStorage(File dir, Storage seed, TableAdapter adapter) throws IOException, ValidationException {
+      this(seed(dir,seed,adapter));
+   }
+
+   /**
+    * Write the seed objects as a base segment, if there are no segments yet.
+    *
+    * @return The directory, so that the constructor can go on to replay.
+    */
+   private static File seed(File dir, Storage seed, TableAdapter adapter) throws IOException, ValidationException {
+
+      // the seed objects go into a single base segment, written with
+      // AlternatingFile the same way compaction does it.  so, either the
+      // whole seed is committed, or there's no segment, and next time
+      // we seed again from the start.  if any object fails to load,
+      // nothing is committed, and the error goes back to the caller.
+      // there's no way to skip a bad object and still know later that
+      // the seeding is complete.
+
+      if ( ! dir.exists() && ! dir.mkdirs() ) throw new IOException(Text.get(JournalStorage.class,"e1",new Object[] { dir.getName() }));
+
+      if (countSegments(dir) > 0) return dir;
+      // this also removes the temporary file from an interrupted seeding
+
+      String[] keys = seed.list();
+
+      AlternatingFile af = new AlternatingFile(getSegmentFile(dir,1));
+      try {
+         OutputStream stream = af.beginWrite();
+         writeHeader(stream,KIND_BASE);
+
+         for (int i=0; i<keys.length; i++) {
+            Object o;
+            try {
+               o = seed.load(keys[i],adapter);
+            } catch (IOException e) {
+               throw (IOException) new IOException(Text.get(JournalStorage.class,"e9",new Object[] { keys[i], dir.getName() })).initCause(e);
+            } catch (ValidationException e) {
+               throw new ValidationException(Text.get(JournalStorage.class,"e9",new Object[] { keys[i], dir.getName() }),e);
+            }
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            adapter.store(buffer,o);
+            stream.write(encode(TYPE_STORE,keys[i],buffer.toByteArray()));
+         }
+
+         af.commitWrite();
+      } finally {
+         af.endWrite();
+      }
+
+      if (keys.length > 0) Log.log(Level.INFO,JournalStorage.class,"i1",new Object[] { new Integer(keys.length), dir.getName() });
+      return dir;
+   }
+
+// --- helpers ---
+
+   private void fail(String key, Object arg) throws IOException {
+      throw new IOException(Text.get(this,key,new Object[] { arg }));
+   }
+
+   private File getSegmentFile(int n) {
+      return getSegmentFile(dir,n);
+   }
+
+   private static File getSegmentFile(File dir, int n) {
+      String s = String.valueOf(n);
+      while (s.length() < 8) s = "0" + s;
+      return new File(dir,PREFIX + s + SUFFIX);
+   }
+
+   private static int parseSegmentNumber(String name) {
+      if ( ! (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) ) return -1;
+      try {
+         return Integer.parseInt(name.substring(PREFIX.length(),name.length()-SUFFIX.length()));
+      } catch (NumberFormatException e) {
+         return -1;
+      }
+   }
+
+   private static byte[] encode(byte type, String key, byte[] payload) throws IOException {
+
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      DataOutputStream data = new DataOutputStream(body);
+      data.writeByte(type);
+      data.writeUTF(key);
+      if (payload != null) data.write(payload);
+      data.flush();
+      byte[] b = body.toByteArray();
+
+      Adler32 checksum = new Adler32();
+      checksum.update(b);
+
+      ByteArrayOutputStream record = new ByteArrayOutputStream(b.length + RECORD_OVERHEAD);
+      data = new DataOutputStream(record);
+      data.writeInt(b.length);
+      data.write(b);
+      data.writeLong(checksum.getValue());
+      data.flush();
+      return record.toByteArray();
+   }
+
+   private static int getPayloadStart(String key) {
+      int utf = 0;
+      for (int i=0; i<key.length(); i++) {
+         char c = key.charAt(i);
+         if      (c >= 0x0001 && c <= 0x007F) utf += 1;
+         else if (c <= 0x07FF)                utf += 2;
+         else                                 utf += 3;
+      }
+      return 4 + 1 + 2 + utf; // length, type, UTF length, UTF bytes
+   }
+
+   private static void writeHeader(OutputStream stream, byte kind) throws IOException {
+      DataOutputStream data = new DataOutputStream(stream);
+      data.writeInt(MAGIC);
+      data.writeInt(FORMAT);
+      data.writeByte(kind);
+      data.flush();
+   }
+
+// --- replay ---
+
+   /**
+    * Count the segments in a directory.  Like replay, this cleans up
+    * the temporary files left over from an interrupted write.
+    */
+   private static int countSegments(File dir) {
+      int count = 0;
+      Iterator i = AlternatingFile.list(dir).iterator();
+      while (i.hasNext()) {
+         if (parseSegmentNumber((String) i.next()) != -1) count++;
+      }
+      return count;
+   }
+
+   /**
+    * @return True if the last segment was reopened for appending.
+    */
+   private boolean replay() throws IOException {
+
+      // AlternatingFile.list deletes temporary files left over from
+      // an interrupted compaction and folds alternates into their bases
+
+      HashSet set = AlternatingFile.list(dir);
+      int[] numbers = new int[set.size()];
+      int count = 0;
+
+      Iterator i = set.iterator();
+      while (i.hasNext()) {
+         int n = parseSegmentNumber((String) i.next());
+         if (n != -1) numbers[count++] = n;
+      }
+      Arrays.sort(numbers,0,count);
+
+      // clean up damaged alternate states the same way a read would
+
+      for (int j=0; j<count; j++) {
+         AlternatingFile af = new AlternatingFile(getSegmentFile(numbers[j]));
+         try {
+            af.beginRead();
+         } finally {
+            af.endRead();
+         }
+      }
+
+      // a new segment with a torn header is the one crash case
+      // that the record checksums can't cover, so check for it here
+
+      if (count > 0) {
+         File file = getSegmentFile(numbers[count-1]);
+         long length = file.length();
+         if (length < HEADER_SIZE) {
+            if (file.delete()) count--;
+            Log.log(Level.WARNING,this,"e5",new Object[] { file.getName(), new Long(length) });
+         }
+      }
+
+      // find the most recent base segment, that's where replay starts
+
+      int start = 0;
+      for (int j=count-1; j>=0; j--) {
+         if (readKind(getSegmentFile(numbers[j])) == KIND_BASE) { start = j; break; }
+      }
+
+      for (int j=0; j<start; j++) {
+         File file = getSegmentFile(numbers[j]);
+         if ( ! file.delete() ) Log.log(Level.WARNING,this,"e2",new Object[] { file.getName() });
+      }
+
+      liveBytes = 0;
+      totalBytes = 0;
+
+      for (int j=start; j<count; j++) {
+         replaySegment(numbers[j],(j == count-1));
+      }
+
+      fresh = (count == 0);
+      baseNumber   = fresh ? 1 : numbers[start];
+      activeNumber = fresh ? 0 : numbers[count-1];
+
+      // keep appending to the last segment, unless it's a base segment,
+      // so that every restart doesn't leave behind another tiny segment
+
+      if (fresh || readKind(getSegmentFile(activeNumber)) == KIND_BASE) return false;
+      if (readFormat(getSegmentFile(activeNumber)) != FORMAT) return false;
+      // don't put delta records into a segment that claims it has none
+
+      File file = getSegmentFile(activeNumber);
+      activeStream = new FileOutputStream(file.getPath(),/* append = */ true);
+      activeSize = file.length();
+      return true;
+   }
+
+   private byte readKind(File file) throws IOException {
+      return (byte) readHeader(file,/* wantFormat = */ false);
+   }
+
+   private int readFormat(File file) throws IOException {
+      return readHeader(file,/* wantFormat = */ true);
+   }
+
+   private int readHeader(File file, boolean wantFormat) throws IOException {
+      DataInputStream data = new DataInputStream(new FileInputStream(file));
+      try {
+         if (data.readInt() != MAGIC) fail("e3",file.getName());
+         int format = data.readInt();
+         if (format != FORMAT && format != FORMAT_OLD) fail("e3",file.getName());
+         byte kind = data.readByte();
+         return wantFormat ? format : kind;
+      } catch (EOFException e) {
+         fail("e3",file.getName());
+         return 0; // not reached
+      } finally {
+         data.close();
+      }
+   }
+
+   private void replaySegment(int n, boolean last) throws IOException {
+
+      File file = getSegmentFile(n);
+      RandomAccessFile raf = new RandomAccessFile(file,last ? "rw" : "r");
+      try {
+         long length = raf.length();
+         long offset = HEADER_SIZE;
+         raf.seek(offset);
+
+         while (offset < length) {
+
+            byte[] body = null;
+            if (length - offset >= RECORD_OVERHEAD) {
+               int bodyLength = raf.readInt();
+               if (bodyLength > 0 && bodyLength <= length - offset - RECORD_OVERHEAD) {
+                  body = new byte[bodyLength];
+                  raf.readFully(body);
+                  long expected = raf.readLong();
+
+                  Adler32 checksum = new Adler32();
+                  checksum.update(body);
+                  if (checksum.getValue() != expected) body = null;
+               }
+            }
+
+            if (body == null) { // torn or damaged record
+
+               if ( ! last ) fail("e4",file.getName());
+
+               raf.setLength(offset);
+               Log.log(Level.WARNING,this,"e5",new Object[] { file.getName(), new Long(length - offset) });
+               length = offset;
+               break;
+            }
+
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(body));
+            byte type = data.readByte();
+            String key = data.readUTF();
+            int size = body.length + RECORD_OVERHEAD;
+
+            Location old;
+            if (type == TYPE_STORE) {
+               int start = getPayloadStart(key);
+               old = (Location) locations.put(key,new Location(n,offset + start,body.length + 4 - start,size,null));
+               liveBytes += size;
+            } else if (type == TYPE_DELTA) {
+               Location prev = (Location) locations.get(key);
+               if (prev == null) fail("e4",file.getName());
+               int start = getPayloadStart(key);
+               locations.put(key,new Location(n,offset + start,body.length + 4 - start,size,prev));
+               liveBytes += size;
+               old = null; // still part of the chain
+            } else if (type == TYPE_DELETE) {
+               old = (Location) locations.remove(key);
+            } else {
+               fail("e4",file.getName());
+               old = null; // not reached
+            }
+            if (old != null) liveBytes -= getChainSize(old);
+
+            offset += size;
+         }
+
+         totalBytes += length;
+
+      } finally {
+         raf.close();
+      }
+   }
+
+// --- append ---
+
+   private void openActive(int n) throws IOException {
+      File file = getSegmentFile(n);
+      activeStream = new FileOutputStream(file);
+      try {
+         writeHeader(activeStream,KIND_APPEND);
+      } catch (IOException e) {
+         activeStream.close();
+         activeStream = null;
+         throw e;
+      }
+      activeNumber = n;
+      activeSize = HEADER_SIZE;
+      totalBytes += HEADER_SIZE;
+   }
+
+   private void closeActive() throws IOException {
+      FileOutputStream stream = activeStream;
+      activeStream = null;
+      stream.close();
+   }
+
+   /**
+    * Append a record to the active segment.
+    *
+    * @return The offset of the record within the segment.
+    */
+   private long append(byte[] record) throws IOException {
+
+      if (activeStream == null) openActive(activeNumber + 1); // recover from failed rotate
+
+      long offset = activeSize;
+
+      try {
+         activeStream.write(record);
+         activeStream.flush();
+      } catch (IOException e) {
+         discardPartial();
+         throw e;
+      }
+      // no sync, same as AlternatingFile ... we rely on the OS
+      // to get the data to disk, and on the checksum to catch
+      // anything that doesn't make it.
+
+      activeSize += record.length;
+      totalBytes += record.length;
+      return offset;
+   }
+
+   /**
+    * After a failed write, cut the active segment back to the end of
+    * the last good record.  Otherwise the partial bytes would stay, the
+    * next record would land after them, not at the offset we record,
+    * and on replay the torn record would cut off or fail everything
+    * after it.  If the cut fails too, close the segment, so that the
+    * next append starts a new one.
+    */
+   private void discardPartial() {
+      try {
+         activeStream.getChannel().truncate(activeSize);
+         // this also moves the position back, see FileChannel.truncate
+      } catch (IOException e) {
+         Log.log(Level.WARNING,this,"e10",new Object[] { getSegmentFile(activeNumber).getName() },e);
+         try {
+            closeActive();
+         } catch (IOException e2) {
+            // ignore, it's already null
+         }
+      }
+   }
+
+   private void rotateIfNeeded() {
+      if (activeSize < SEGMENT_LIMIT) return;
+
+      try {
+         closeActive();
+         openActive(activeNumber + 1);
+      } catch (IOException e) {
+         Log.log(Level.WARNING,this,"e6",e);
+         // append will try again with the next number
+      }
+
+      if (activeStream == null) return;
+      // if the rotate failed, the segment we just closed is still the
+      // active number, so the snapshot below would include records that
+      // aren't in the target or before it.  they'd be in the base and
+      // also in a segment that's not deleted, and replay would apply
+      // them twice.  compaction can wait for the next rotate.
+
+      if (    ! compacting
+           && activeNumber - baseNumber >= COMPACT_SEGMENTS
+           && totalBytes > 2 * liveBytes ) {
+
+         compacting = true;
+
+         // take the snapshot now, while everything in it is in a closed segment.
+         // if we waited for the thread, records could land in the new active
+         // segment first, and then on replay they'd be applied a second time
+         // on top of the base, which works for stores but not for deltas.
+
+         final int target = activeNumber - 1;
+         final HashMap snapshot = new HashMap(locations);
+
+         Thread thread = new Thread(new Runnable() { public void run() { compact(target,snapshot); } },Text.get(this,"s1"));
+         thread.setDaemon(true);
+         thread.start();
+      }
+   }
+
+// --- compaction ---
+
+   private void compact(int target, HashMap snapshot) {
+      try {
+         compactImpl(target,snapshot);
+      } catch (Exception e) {
+         Log.log(Level.WARNING,this,"e7",new Object[] { dir.getName() },e);
+      } finally {
+         synchronized (this) { compacting = false; }
+      }
+   }
+
+   private void compactImpl(int target, HashMap snapshot) throws IOException {
+
+      // phase 1: rotateIfNeeded took a snapshot of the locations
+      // right after rotating, so everything in the snapshot is in
+      // a closed segment, and closed segments never change, so we
+      // can read them without holding the lock.
+
+      // phase 2: write the base segment into the alternate of the target
+
+      HashMap moved = new HashMap();
+
+      AlternatingFile af = new AlternatingFile(getSegmentFile(target));
+      long size;
+      try {
+         OutputStream stream = af.beginWrite();
+         writeHeader(stream,KIND_BASE);
+         long offset = HEADER_SIZE;
+
+         Iterator i = snapshot.entrySet().iterator();
+         while (i.hasNext()) {
+            Map.Entry entry = (Map.Entry) i.next();
+            String key = (String) entry.getKey();
+            Location loc = (Location) entry.getValue();
+
+            byte[] record = encode(TYPE_STORE,key,readFull(loc));
+            stream.write(record);
+
+            int start = getPayloadStart(key);
+            moved.put(key,new Location(target,offset + start,record.length - RECORD_OVERHEAD + 4 - start,record.length,null));
+            offset += record.length;
+         }
+         size = offset;
+
+      // phase 3: under the lock, commit and update locations
+
+         synchronized (this) {
+            long sizeOld = getSegmentFile(target).length();
+            af.commitWrite();
+
+            i = moved.entrySet().iterator();
+            while (i.hasNext()) {
+               Map.Entry entry = (Map.Entry) i.next();
+               Object key = entry.getKey();
+               Location loc = (Location) locations.get(key);
+               Location old = (Location) snapshot.get(key);
+               if (loc == old) {
+                  locations.put(key,entry.getValue());
+               } else {
+                  // if deltas were added since the snapshot, they apply to
+                  // the old location, which is going away, so move them over
+                  for ( ; loc != null; loc = loc.prev) {
+                     if (loc.prev == old) { loc.prev = (Location) entry.getValue(); break; }
+                  }
+               }
+            }
+
+            for (int n=baseNumber; n<target; n++) {
+               File file = getSegmentFile(n);
+               long length = file.length();
+               if (file.delete()) totalBytes -= length;
+               else Log.log(Level.WARNING,this,"e2",new Object[] { file.getName() });
+            }
+            totalBytes += size - sizeOld;
+            baseNumber = target;
+
+            recount();
+         }
+
+      } finally {
+         af.endWrite();
+      }
+   }
+
+   private void recount() {
+      liveBytes = 0;
+      Iterator i = locations.values().iterator();
+      while (i.hasNext()) liveBytes += getChainSize((Location) i.next());
+   }
+
+   private byte[] readPayload(Location loc) throws IOException {
+      RandomAccessFile raf = new RandomAccessFile(getSegmentFile(loc.segment),"r");
+      try {
+         byte[] payload = new byte[loc.length];
+         raf.seek(loc.offset);
+         raf.readFully(payload);
+         return payload;
+      } finally {
+         raf.close();
+      }
+   }
+
+   /**
+    * Read the complete payload for a location, applying deltas if necessary.
+    */
+   private byte[] readFull(Location loc) throws IOException {
+      if (loc.prev == null) return readPayload(loc);
+      return Delta.apply(readFull(loc.prev),readPayload(loc));
+      // recursion depth is limited by CHAIN_LIMIT
+   }
+
+   /**
+    * Describe the storage, for log messages.
+    */
+   public String toString() {
+      return dir.getName();
+   }
+
+// --- implementation of Storage ---
+
+   /**
+    * Get a list of all the keys of objects that exist in the storage.
+    */
+   public synchronized String[] list() {
+      return (String[]) locations.keySet().toArray(new String[locations.size()]);
+   }
+
+   /**
+    * Load the object from the space identified by the given key.
+    */
+   public synchronized Object load(String key, TableAdapter adapter) throws IOException, ValidationException {
+      Location loc = (Location) locations.get(key);
+      if (loc == null) fail("e8",key);
+
+      byte[] payload = readFull(loc);
+      recent.put(key,payload);
+
+      InputStream inputStream = new ByteArrayInputStream(payload);
+      return adapter.load(inputStream);
+   }
+
+   /**
+    * Store an object into the space identified by the given key.
+    */
+   public synchronized void store(String key, Object o, TableAdapter adapter) throws IOException {
+
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      adapter.store(buffer,o);
+      byte[] payload = buffer.toByteArray();
+
+      Location old = (Location) locations.get(key);
+      byte[] oldPayload = (byte[]) recent.remove(key);
+      recent.put(key,payload);
+
+      // write a delta if we can, and if it saves enough to be worth the
+      // cost of applying it at load time; otherwise start a new chain.
+
+      Location prev = null;
+      byte[] record = null;
+      if (old != null && oldPayload != null && getChainLength(old) < CHAIN_LIMIT) {
+         byte[] delta = Delta.create(oldPayload,payload);
+         if (delta.length * 2 < payload.length) {
+            prev = old;
+            record = encode(TYPE_DELTA,key,delta);
+         }
+      }
+      if (record == null) record = encode(TYPE_STORE,key,payload);
+
+      long offset;
+      try {
+         offset = append(record);
+      } catch (IOException e) {
+         recent.remove(key); // payload didn't make it
+         throw e;
+      }
+
+      int start = getPayloadStart(key);
+      locations.put(key,new Location(activeNumber,offset + start,record.length - RECORD_OVERHEAD + 4 - start,record.length,prev));
+      liveBytes += record.length;
+      if (old != null && prev == null) liveBytes -= getChainSize(old);
+
+      rotateIfNeeded();
+   }
+
+   /**
+    * Delete the object from the space identified by the given key.
+    */
+   public synchronized void delete(String key) throws IOException {
+      if ( ! locations.containsKey(key) ) fail("e8",key);
+
+      append(encode(TYPE_DELETE,key,null));
+
+      Location old = (Location) locations.remove(key);
+      liveBytes -= getChainSize(old);
+      recent.remove(key);
+
+      rotateIfNeeded();
+   }
+
+}
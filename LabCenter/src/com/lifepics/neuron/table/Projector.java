@@ -0,0 +1,22 @@
+/*
+ * Projector.java
+ */
+
+package com.lifepics.neuron.table;
+
+/**
+ * An interface for reducing table objects to the part that a view shows.
+ * See {@link Table#select(com.lifepics.neuron.meta.Selector,java.util.Comparator,boolean,boolean,Projector) Table.select}.
+ */
+
+public interface Projector {
+
+   /**
+    * Make a lightweight copy of an object.  The copy must have the same key,
+    * and everything that the view's comparator and its users look at,
+    * but it can leave out the rest.  To get the full object back,
+    * call {@link Table#get(Object) Table.get} with the copy.
+    */
+   Object project(Object o);
+
+}
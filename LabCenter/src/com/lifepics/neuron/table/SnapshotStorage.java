@@ -0,0 +1,398 @@
+/*
+ * SnapshotStorage.java
+ */
+
+package com.lifepics.neuron.table;
+
+import com.lifepics.neuron.core.Log;
+import com.lifepics.neuron.core.Text;
+import com.lifepics.neuron.core.ValidationException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.InvalidObjectException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * A wrapper around {@link AlternatingFileStorage} that can save a binary
+ * snapshot of all the objects at shutdown and use it to skip parsing
+ * the files at the next startup.  The files are still the real storage,
+ * the snapshot is just a cache.
+ */
+
+public class SnapshotStorage implements Storage {
+
+   // how do we know a cached object is still good?  along with each object,
+   // the snapshot has a fingerprint (size and last-modified time) of the file
+   // it came from.  if the fingerprint still matches, we use the object,
+   // otherwise we parse the file like always.
+   //
+   // the weak point is that a file could change without changing its size
+   // or its time (to the resolution of the file system).  to keep that from
+   // mattering, the snapshot is deleted as soon as it's read.  so, the only
+   // changes that can slip past are ones made by someone else while we're
+   // not running, within a second or two of the snapshot being written.
+   //
+   // likewise, the snapshot is only written when nothing is locked,
+   // because a locked object could be halfway through an update,
+   // with the file written but the table not yet changed.
+   //
+   // the objects are written with Java serialization, but the structures
+   // aren't serializable themselves.  that would mean a serial version
+   // number on every structure class, and a fixed number would let a
+   // snapshot from before a class change load with the new fields empty.
+   // instead, the stream replaces each non-serializable object with a
+   // Proxy that holds its field values plus a signature of its fields.
+   // if the class has changed since, the signature won't match, the read
+   // fails, and we fall back to the full load, same as with serialization.
+
+// --- constants ---
+
+   private static final int MAGIC  = 0x4C43534E; // "LCSN"
+   private static final int FORMAT = 2;
+
+// --- fields ---
+
+   private AlternatingFileStorage base;
+   private File file;
+
+   private HashMap cache; // key -> Entry
+   private int hits;
+   private int misses;
+
+// --- helper classes ---
+
+   private static class Entry {
+      public String fingerprint;
+      public Object o;
+   }
+
+// --- construction ---
+
+   /**
+    * @param file The file to hold the snapshot.  It should not be in the storage directory.
+    */
+   public SnapshotStorage(AlternatingFileStorage base, File file) {
+      this.base = base;
+      this.file = file;
+
+      cache = new HashMap();
+
+      AlternatingFile af = new AlternatingFile(file);
+      if ( ! af.exists() ) return;
+
+      try {
+         read(af);
+         Log.log(Level.INFO,this,"i1",new Object[] { toString(), new Integer(cache.size()) });
+      } catch (Exception e) {
+         cache.clear();
+         Log.log(Level.WARNING,this,"e1",new Object[] { toString() },e);
+         // not a problem, we'll just parse everything
+      }
+
+      try {
+         af.delete();
+      } catch (IOException e) {
+         Log.log(Level.WARNING,this,"e2",new Object[] { toString() },e);
+      }
+   }
+
+   private void read(AlternatingFile af) throws Exception {
+      try {
+         InputStream inputStream = af.beginRead();
+         ObjectInputStream data = new ProxyInputStream(new BufferedInputStream(inputStream));
+
+         if (data.readInt() != MAGIC || data.readInt() != FORMAT) throw new IOException(Text.get(this,"e3"));
+
+         int count = data.readInt();
+         for (int i=0; i<count; i++) {
+            Entry entry = new Entry();
+            String key = data.readUTF();
+            entry.fingerprint = data.readUTF();
+            entry.o = data.readObject();
+            cache.put(key,entry);
+         }
+
+         // if the classes have changed since the snapshot was written,
+         // readObject will fail, and we'll fall back to the full load.
+
+      } finally {
+         af.endRead();
+      }
+   }
+
+// --- snapshot ---
+
+   /**
+    * Write a snapshot of the given objects.
+    * This should be called only by {@link Table}, and only at shutdown.
+    *
+    * @param objects A map from key to object, which we trust this class not to modify.
+    */
+   void write(Map objects) {
+      AlternatingFile af = new AlternatingFile(file);
+      try {
+         OutputStream outputStream = af.beginWrite();
+         ObjectOutputStream data = new ProxyOutputStream(new BufferedOutputStream(outputStream));
+
+         data.writeInt(MAGIC);
+         data.writeInt(FORMAT);
+         data.writeInt(objects.size());
+
+         Iterator i = objects.entrySet().iterator();
+         while (i.hasNext()) {
+            Map.Entry entry = (Map.Entry) i.next();
+            String key = (String) entry.getKey();
+
+            data.writeUTF(key);
+            data.writeUTF(base.getFingerprint(key));
+            data.writeObject(entry.getValue());
+            data.reset(); // otherwise the stream remembers every object it's written
+         }
+
+         data.flush();
+         af.commitWrite();
+
+         Log.log(Level.INFO,this,"i2",new Object[] { toString(), new Integer(objects.size()) });
+
+      } catch (Exception e) {
+         Log.log(Level.WARNING,this,"e4",new Object[] { toString() },e);
+         // not a problem, next startup will just be slower
+      } finally {
+         af.endWrite();
+      }
+   }
+
+   /**
+    * Report how the snapshot worked out, for log messages.
+    */
+   synchronized String getReport() {
+      return Text.get(this,"s1",new Object[] { new Integer(hits), new Integer(misses) });
+   }
+
+   /**
+    * Describe the storage, for log messages.
+    */
+   public String toString() {
+      return base.toString();
+   }
+
+// --- implementation of Storage ---
+
+   /**
+    * Get a list of all the keys of objects that exist in the storage.
+    */
+   public String[] list() {
+      String[] keys = base.list();
+
+      // drop cache entries for objects that were deleted behind our back
+
+      synchronized (this) {
+         HashSet set = new HashSet();
+         for (int i=0; i<keys.length; i++) set.add(keys[i]);
+         cache.keySet().retainAll(set);
+      }
+
+      return keys;
+   }
+
+   /**
+    * Load the object from the space identified by the given key.
+    */
+   public Object load(String key, TableAdapter adapter) throws IOException, ValidationException {
+      Entry entry;
+      synchronized (this) {
+         entry = (Entry) cache.remove(key); // only good once
+      }
+
+      if (entry != null && entry.fingerprint.equals(base.getFingerprint(key))) {
+         synchronized (this) { hits++; }
+         return entry.o;
+      }
+
+      synchronized (this) { misses++; }
+      return base.load(key,adapter);
+   }
+
+   /**
+    * Store an object into the space identified by the given key.
+    */
+   public void store(String key, Object o, TableAdapter adapter) throws IOException {
+      base.store(key,o,adapter);
+   }
+
+   /**
+    * Delete the object from the space identified by the given key.
+    */
+   public void delete(String key) throws IOException {
+      base.delete(key);
+   }
+
+// --- proxy classes ---
+
+   private static class Proxy implements Serializable {
+
+      private static final long serialVersionUID = 1L;
+
+      public String className;
+      public String signature;
+      public Object[] values;
+   }
+
+   private static class Shape {
+      public Field[] fields;
+      public String signature; // one instance per class, so the stream writes it only once
+   }
+
+   private static HashMap shapeCache = new HashMap(); // Class -> Shape
+
+   /**
+    * Get the fields that a proxy holds, all the instance fields
+    * of the class and its superclasses, in a fixed order.
+    */
+   private static Shape getShape(Class c) {
+      synchronized (shapeCache) {
+         Shape shape = (Shape) shapeCache.get(c);
+         if (shape != null) return shape;
+
+         LinkedList list = new LinkedList();
+         for (Class k = c; k != null; k = k.getSuperclass()) {
+            Field[] declared = k.getDeclaredFields();
+            for (int i=0; i<declared.length; i++) {
+               int m = declared[i].getModifiers();
+               if (Modifier.isStatic(m) || Modifier.isTransient(m)) continue;
+               declared[i].setAccessible(true);
+               list.add(declared[i]);
+            }
+         }
+
+         Field[] fields = (Field[]) list.toArray(new Field[list.size()]);
+         Arrays.sort(fields,new Comparator() {
+            public int compare(Object o1, Object o2) {
+               return describe((Field) o1).compareTo(describe((Field) o2));
+            }
+         });
+         // getDeclaredFields doesn't promise any order
+
+         shape = new Shape();
+         shape.fields = fields;
+         shape.signature = getSignature(fields);
+
+         shapeCache.put(c,shape);
+         return shape;
+      }
+   }
+
+   private static String describe(Field field) {
+      return field.getDeclaringClass().getName() + "." + field.getName() + ":" + field.getType().getName();
+   }
+
+   private static String getSignature(Field[] fields) {
+      StringBuffer b = new StringBuffer();
+      for (int i=0; i<fields.length; i++) {
+         b.append(describe(fields[i]));
+         b.append(';');
+      }
+      return b.toString();
+   }
+
+   private static class ProxyOutputStream extends ObjectOutputStream {
+
+      public ProxyOutputStream(OutputStream out) throws IOException {
+         super(out);
+         enableReplaceObject(true);
+      }
+
+      protected Object replaceObject(Object o) throws IOException {
+         if (o instanceof Serializable) return o; // null doesn't come through here
+
+         Class c = o.getClass();
+         try {
+            c.getDeclaredConstructor(new Class[0]);
+         } catch (NoSuchMethodException e) {
+            throw new NotSerializableException(c.getName());
+            // fail now rather than on every read
+         }
+
+         Shape shape = getShape(c);
+         Field[] fields = shape.fields;
+
+         Proxy proxy = new Proxy();
+         proxy.className = c.getName();
+         proxy.signature = shape.signature;
+         proxy.values = new Object[fields.length];
+
+         try {
+            for (int i=0; i<fields.length; i++) {
+               proxy.values[i] = fields[i].get(o); // primitives come back wrapped
+            }
+         } catch (IllegalAccessException e) {
+            throw (IOException) new NotSerializableException(c.getName()).initCause(e);
+         }
+
+         return proxy;
+      }
+   }
+
+   private static class ProxyInputStream extends ObjectInputStream {
+
+      public ProxyInputStream(InputStream in) throws IOException {
+         super(in);
+         enableResolveObject(true);
+      }
+
+      // the values are read before the proxy that holds them, so nested
+      // proxies are already resolved by the time we get to the outer one.
+      // a proxy in a cycle would still be unresolved, but structures are
+      // trees, so that can't happen; if it does, the read fails cleanly.
+
+      protected Object resolveObject(Object o) throws IOException {
+         if ( ! (o instanceof Proxy) ) return o;
+         Proxy proxy = (Proxy) o;
+
+         try {
+            Class c = Class.forName(proxy.className,false,SnapshotStorage.class.getClassLoader());
+
+            Shape shape = getShape(c);
+            Field[] fields = shape.fields;
+            if ( ! shape.signature.equals(proxy.signature) ) throw new InvalidClassException(proxy.className);
+
+            Constructor constructor = c.getDeclaredConstructor(new Class[0]);
+            constructor.setAccessible(true);
+            Object result = constructor.newInstance(new Object[0]);
+
+            for (int i=0; i<fields.length; i++) {
+               if (proxy.values[i] instanceof Proxy) throw new InvalidObjectException(proxy.className);
+               fields[i].set(result,proxy.values[i]); // primitives get unwrapped
+            }
+
+            return result;
+
+         } catch (IOException e) {
+            throw e;
+         } catch (Exception e) {
+            throw (IOException) new InvalidClassException(proxy.className).initCause(e);
+         }
+      }
+   }
+
+}
\ No newline at end of file
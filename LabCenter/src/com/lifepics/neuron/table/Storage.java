@@ -10,6 +10,8 @@ import java.io.IOException;
 
 /**
  * An interface for persistent storage, for use by a {@link Table}.
+ * The table may call store and delete from several threads at once,
+ * but never concurrently for the same key.
  */
 
 public interface Storage {
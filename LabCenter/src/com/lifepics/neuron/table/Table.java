@@ -4,17 +4,26 @@
 
 package com.lifepics.neuron.table;
 
+import com.lifepics.neuron.core.Log;
 import com.lifepics.neuron.core.Text;
 import com.lifepics.neuron.core.ValidationException;
 import com.lifepics.neuron.meta.Accessor;
 import com.lifepics.neuron.meta.Selector;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.ListIterator;
+import java.util.Map;
+import java.util.logging.Level;
 
 /**
  * A class representing a simple database table.
@@ -25,6 +34,8 @@ import java.util.ListIterator;
  *
  * The class is thread-safe, and makes copies of the objects as necessary
  * so that modifications in one thread will never affect another.
+ * Storage operations on different keys can run concurrently.
+ * Optionally, the table can share read-only snapshots instead.
  */
 
 public class Table {
@@ -32,12 +43,18 @@ public class Table {
 // --- fields ---
 
    private TableAdapter adapter;
+   private TableAdapter shareAdapter; // same as adapter unless shared
    private Storage storage;
    private AutoNumber autoNumber;
 
    private HashMap objects;
    private HashMap locks;
    private LinkedList listeners;
+   private LinkedList queues;
+
+   private TransactionLog log; // nullable
+   private String name; // name in the log
+   private HashMap dirty; // key -> Boolean, whether storage has the object; only with a log
 
 // --- construction ---
 
@@ -45,13 +62,25 @@ public class Table {
     * @param autoNumber An auto-numbering object, or null for no auto-numbering.
     */
    public Table(TableAdapter adapter, Storage storage, AutoNumber autoNumber) throws TableException {
+      this(adapter,storage,autoNumber,/* shared = */ false);
+   }
+
+   /**
+    * @param autoNumber An auto-numbering object, or null for no auto-numbering.
+    * @param shared Whether the table should hand out shared snapshots
+    *               instead of copies.  See {@link #getSnapshot(String) getSnapshot}.
+    */
+   public Table(TableAdapter adapter, Storage storage, AutoNumber autoNumber, boolean shared) throws TableException {
       this.adapter = adapter;
+      this.shareAdapter = shared ? new ShareAdapter(adapter) : adapter;
       this.storage = storage;
       this.autoNumber = autoNumber;
 
       objects = new HashMap();
       locks = new HashMap();
       listeners = new LinkedList();
+      queues = new LinkedList();
+      dirty = new HashMap();
 
       try {
          load();
@@ -62,18 +91,60 @@ public class Table {
       }
    }
 
+// --- shared mode ---
+
+   // normally the table copies an object every time it hands one out,
+   // once per get and once per listener per notification.  for big
+   // objects with lots of views, that's a lot of copying, and almost
+   // all of it is wasted, because the views never modify anything.
+   //
+   // so, in shared mode, the objects in the table are treated as frozen
+   // snapshots.  an insert or update still makes one copy, because the
+   // caller keeps the original and will probably go on modifying it,
+   // but after that the same instance goes out to every listener, view,
+   // index, and derived table, and to getSnapshot.  the only remaining
+   // copies are made by get, which is the way to ask for something
+   // you can edit.  so, copy-on-write, where asking is the write.
+   //
+   // nothing enforces the freezing, it's a contract.  that's why it's
+   // opt-in ... only turn it on for tables whose listeners and view
+   // users have been checked for modifications.  DerivedAdapter is the
+   // same idea applied to derived tables.
+
+   private static class ShareAdapter implements TableAdapter {
+
+      private TableAdapter adapter;
+      public ShareAdapter(TableAdapter adapter) { this.adapter = adapter; }
+
+      public String getKey(Object o) { return adapter.getKey(o); }
+      public boolean setKey(Object o, String key) { return adapter.setKey(o,key); }
+
+      public Object copy(Object o) { return o; }
+
+      public Object load(InputStream inputStream) throws IOException, ValidationException { return adapter.load(inputStream); }
+      public void store(OutputStream outputStream, Object o) throws IOException { adapter.store(outputStream,o); }
+   }
+
 // --- initialization ---
 
    private void load() throws IOException, ValidationException, TableException {
+      long start = System.currentTimeMillis();
+
       String[] keys = storage.list();
+      Arrays.sort(keys); // so that errors are reported the same way every time
+
+      Loader loader = new Loader(keys);
+      loader.run();
+
       for (int i=0; i<keys.length; i++) {
 
-         Object o;
-         try {
-            o = storage.load(keys[i],adapter);
-         } catch (Exception e) {
-            throw new TableException(Text.get(this,"e20",new Object[] { keys[i] }),e);
+         // the loads happened in parallel, but the checks happen here in order,
+         // so the first failure by key order is the one that's reported
+
+         if (loader.errors[i] != null) {
+            throw new TableException(Text.get(this,"e20",new Object[] { keys[i] }),loader.errors[i]);
          }
+         Object o = loader.results[i];
 
          // important consistency check
          String key = adapter.getKey(o);
@@ -90,6 +161,135 @@ public class Table {
 
          objects.put(key,o); // ignore result
       }
+
+      long elapsed = System.currentTimeMillis() - start;
+      Log.log(Level.INFO,this,"i1",new Object[] { storage.toString(), new Integer(keys.length), new Long(loader.getBytes()), new Long(elapsed) });
+      if (storage instanceof SnapshotStorage) {
+         Log.log(Level.INFO,this,"i2",new Object[] { storage.toString(), ((SnapshotStorage) storage).getReport() });
+      }
+   }
+
+   /**
+    * A helper class that loads objects from storage on several threads.
+    * Parsing dominates startup time for big tables, and the parsing
+    * of one object is completely independent of the others.
+    */
+   private class Loader implements Runnable {
+
+      private String[] keys;
+      public Object[] results;
+      public Throwable[] errors;
+
+      private int next;
+      private long bytes;
+
+      public Loader(String[] keys) {
+         this.keys = keys;
+         results = new Object[keys.length];
+         errors = new Throwable[keys.length];
+      }
+
+      private synchronized int claim() {
+         return (next < keys.length) ? next++ : -1;
+      }
+
+      private synchronized void addBytes(long n) {
+         bytes += n;
+      }
+
+      public synchronized long getBytes() {
+         return bytes;
+      }
+
+      /**
+       * Load everything, returning when done.
+       */
+      public void run() {
+
+         int n = Runtime.getRuntime().availableProcessors();
+         if (n > LOAD_THREAD_LIMIT) n = LOAD_THREAD_LIMIT;
+         if (n > keys.length / LOAD_THREAD_MINIMUM) n = keys.length / LOAD_THREAD_MINIMUM;
+         // small tables aren't worth the thread overhead
+
+         Thread[] threads = new Thread[n];
+         for (int i=0; i<n; i++) {
+            threads[i] = new Thread(new Runnable() { public void run() { work(); } },Text.get(Table.class,"s2"));
+            threads[i].start();
+         }
+
+         work(); // the calling thread helps
+
+         for (int i=0; i<n; i++) {
+            while (true) {
+               try {
+                  threads[i].join();
+                  break;
+               } catch (InterruptedException e) {
+                  // can't give up, the results aren't ready, so just keep waiting
+               }
+            }
+         }
+      }
+
+      private void work() {
+         TableAdapter counter = new CountingAdapter();
+         int i;
+         while ((i = claim()) != -1) {
+            try {
+               results[i] = storage.load(keys[i],counter);
+            } catch (Throwable t) {
+               errors[i] = t;
+            }
+         }
+      }
+
+      /**
+       * An adapter that passes everything through, but counts the bytes loaded.
+       */
+      private class CountingAdapter implements TableAdapter {
+
+         public String getKey(Object o) { return adapter.getKey(o); }
+         public boolean setKey(Object o, String key) { return adapter.setKey(o,key); }
+         public Object copy(Object o) { return adapter.copy(o); }
+
+         public Object load(InputStream inputStream) throws IOException, ValidationException {
+            CountingInputStream counting = new CountingInputStream(inputStream);
+            try {
+               return adapter.load(counting);
+            } finally {
+               addBytes(counting.count);
+            }
+         }
+
+         public void store(OutputStream outputStream, Object o) throws IOException { adapter.store(outputStream,o); }
+      }
+   }
+
+   private static final int LOAD_THREAD_LIMIT = 8;
+   private static final int LOAD_THREAD_MINIMUM = 50; // objects per thread
+
+   private static class CountingInputStream extends FilterInputStream {
+
+      public long count;
+      public CountingInputStream(InputStream in) { super(in); }
+
+      public int read() throws IOException {
+         int b = super.read();
+         if (b != -1) count++;
+         return b;
+      }
+
+      public int read(byte[] b, int off, int len) throws IOException {
+         int n = super.read(b,off,len);
+         if (n > 0) count += n;
+         return n;
+      }
+
+      public long skip(long n) throws IOException {
+         long k = super.skip(n);
+         count += k;
+         return k;
+      }
    }
 
 // --- listeners ---
@@ -127,6 +327,7 @@ public class Table {
    // you should think of reportInsert and reportUpdate as like get.
    // they dispense an object out of the table,
    // and so they have to make a copy to avoid sharing and back-writing.
+   // (in shared mode they're like getSnapshot, and don't copy.)
 
    private void reportInsert(Object o) {
       ListIterator li = listeners.listIterator();
@@ -136,7 +337,7 @@ public class Table {
          if (listener == null) {
             li.remove();
          } else {
-            listener.reportInsert(adapter.copy(o));
+            listener.reportInsert(shareAdapter.copy(o));
          }
       }
    }
@@ -149,7 +350,7 @@ public class Table {
          if (listener == null) {
             li.remove();
          } else {
-            listener.reportUpdate(adapter.copy(o));
+            listener.reportUpdate(shareAdapter.copy(o));
          }
       }
    }
@@ -167,6 +368,22 @@ public class Table {
       }
    }
 
+   // the work queues are also weak, and hear about unlocking,
+   // which ordinary listeners have no need for.
+
+   private void reportUnlock(String key, Object lock) {
+      ListIterator li = queues.listIterator();
+      while (li.hasNext()) {
+         WeakReference ref = (WeakReference) li.next();
+         WorkQueue queue = (WorkQueue) ref.get();
+         if (queue == null) {
+            li.remove();
+         } else {
+            queue.reportUnlock(key,lock);
+         }
+      }
+   }
+
    private void reportRefresh() {
       ListIterator li = listeners.listIterator();
       while (li.hasNext()) {
@@ -223,57 +440,109 @@ public class Table {
    // there are three things that need to be kept consistent:
    // the storage, the map of objects, and the map of locks
 
+   // the storage calls are made outside the table monitor,
+   // so that a slow write for one object doesn't hold up
+   // readers and writers of every other object.  that's safe
+   // because the object lock is what serializes the changes
+   // to any one key -- update and delete require the caller
+   // to hold it, and insert takes it before writing.  so, for
+   // a given key, the storage calls and the notifications
+   // still happen in the same order they always did.
+   //
+   // the object map and the notifications are still handled
+   // together under the monitor, so that select and friends
+   // see each change either completely or not at all.
+
    /**
     * Insert an object into the table.
     * If auto-numbering is active, the object's key will be changed.
     *
     * @return A lock on the newly-inserted object.
     */
-   public synchronized Object insert(Object o) throws TableException {
+   public Object insert(Object o) throws TableException {
 
-      if (autoNumber != null) {
-         String key = autoNumber.getKey();
-         if ( ! adapter.setKey(o,key) ) {
-            fail("e15",key);
+      if (log != null) {
+         Transaction t = new Transaction();
+         try {
+            Object lock = t.insert(this,o);
+            t.commit();
+            return lock;
+         } finally {
+            t.abort();
          }
       }
 
+      Object lock = reserve(o);
       String key = adapter.getKey(o);
-      if (objects.containsKey(key)) fail("e3",key);
 
       try {
          storage.store(key,o,adapter); // do this first, it can fail (but is atomic)
       } catch (IOException e) {
+         unreserve(key);
          fail("e17",key,e);
       }
       Object copy = adapter.copy(o);
-      objects.put(key,copy); // ignore result
       // copy the object so that nobody can hold a reference to it
 
-      // set the lock before telling anyone the object exists, just in case.
-      // in general, though, notifications shouldn't feed back and alter the table
+      synchronized (this) {
+         objects.put(key,copy); // ignore result
+
+         reportInsert(copy);
+         // whether we use "o" or "copy" here is almost a technicality,
+         // since reportInsert makes more copies of it.
+         // but, "copy" is better, because it is theoretically possible
+         // that one of the listeners could modify "o"
+         // and as a result mess up a later notification.
+      }
+
+      return lock;
+   }
+
+   /**
+    * Assign a key to an object that's about to be inserted,
+    * and reserve the key by locking it.
+    */
+   Object reserve(Object o) throws TableException {
+
+      String key;
       Object lock = new Lock();
-      locks.put(key,lock); // ignore result
 
-      if (autoNumber != null) autoNumber.advance();
-      // in theory we ought to roll back if the auto-number fails to advance,
-      // but that is very unlikely ... easier to just let later inserts fail.
+      synchronized (this) {
+
+         if (autoNumber != null) {
+            key = autoNumber.getKey();
+            if ( ! adapter.setKey(o,key) ) {
+               fail("e15",key);
+            }
+         }
+
+         key = adapter.getKey(o);
+         if (objects.containsKey(key)) fail("e3",key);
+         if (locks.containsKey(key)) fail("e3",key); // insert in progress
 
-      reportInsert(copy);
-      // whether we use "o" or "copy" here is almost a technicality,
-      // since reportInsert makes more copies of it.
-      // but, "copy" is better, because it is theoretically possible
-      // that one of the listeners could modify "o"
-      // and as a result mess up a later notification.
+         // set the lock before the object exists, so that the key is reserved
+         // while we're writing to storage.  nothing else looks at the lock map
+         // for keys that aren't in the object map, so the reservation is invisible.
+         locks.put(key,lock); // ignore result
+
+         if (autoNumber != null) autoNumber.advance();
+         // we have to advance before we let go of the table, or another insert
+         // could get the same key.  if the store fails, the number is wasted,
+         // but that's harmless.
+      }
 
       return lock;
    }
 
+   synchronized void unreserve(String key) {
+      locks.remove(key); // ignore result
+   }
+
    /**
     * Delete an object from the table.
     * (The object must be locked first.)
     */
-   public synchronized void delete(Object o, Object a_lock) throws TableException {
+   public void delete(Object o, Object a_lock) throws TableException {
       delete(adapter.getKey(o),a_lock);
    }
 
@@ -281,22 +550,39 @@ public class Table {
     * Delete an object from the table.
     * (The object must be locked first.)
     */
-   public synchronized void delete(String key, Object a_lock) throws TableException {
-      if ( ! objects.containsKey(key) ) fail("e4",key);
+   public void delete(String key, Object a_lock) throws TableException {
 
-      Object lock = locks.get(key);
-      if (lock == null) fail("e5a",key); // two tests, because messages are different
-      if (lock != a_lock) fail("e5b",key);
+      if (log != null) {
+         Transaction t = new Transaction();
+         try {
+            t.delete(this,key,a_lock);
+            t.commit();
+         } finally {
+            t.abort();
+         }
+         return;
+      }
+
+      synchronized (this) {
+         if ( ! objects.containsKey(key) ) fail("e4",key);
+
+         Object lock = locks.get(key);
+         if (lock == null) fail("e5a",key); // two tests, because messages are different
+         if (lock != a_lock) fail("e5b",key);
+      }
 
       try {
          storage.delete(key); // do this first, it can fail
       } catch (IOException e) {
          fail("e18",key,e);
       }
-      objects.remove(key); // ignore result
-      locks.remove(key); // ignore result
 
-      reportDelete(key);
+      synchronized (this) {
+         objects.remove(key); // ignore result
+         locks.remove(key); // ignore result
+
+         reportDelete(key);
+      }
    }
 
 // --- update ---
@@ -398,14 +684,31 @@ public class Table {
    /**
     * Update an object in the table.
     * (This does not release the lock.)
+    * If the object hasn't changed, nothing is written and nobody is notified.
     */
-   public synchronized void update(Object o, Object a_lock) throws TableException {
+   public void update(Object o, Object a_lock) throws TableException {
+      if (log != null) {
+         Transaction t = new Transaction();
+         try {
+            t.update(this,o,a_lock);
+            t.commit();
+         } finally {
+            t.abort();
+         }
+         return;
+      }
+
       String key = adapter.getKey(o);
-      if ( ! objects.containsKey(key) ) fail("e8",key);
 
-      Object lock = locks.get(key);
-      if (lock == null) fail("e9",key); // two tests, because messages are different
-      if (lock != a_lock) fail("e10",key);
+      synchronized (this) {
+         if ( ! objects.containsKey(key) ) fail("e8",key);
+
+         Object lock = locks.get(key);
+         if (lock == null) fail("e9",key); // two tests, because messages are different
+         if (lock != a_lock) fail("e10",key);
+      }
+
+      if (isUnchanged(key,o)) return;
 
       try {
          storage.store(key,o,adapter); // do this first, it can fail
@@ -413,11 +716,34 @@ public class Table {
          fail("e19",key,e);
       }
       Object copy = adapter.copy(o);
-      objects.put(key,copy); // ignore result
       // copy the object so that nobody can hold a reference to it
 
-      reportUpdate(copy);
-      // see note in insert about using "o" vs. "copy"
+      synchronized (this) {
+         objects.put(key,copy); // ignore result
+
+         reportUpdate(copy);
+         // see note in insert about using "o" vs. "copy"
+      }
+   }
+
+   /**
+    * Check whether an object is the same as the one in the table.
+    * The caller must hold the lock, so that the table object can't change.
+    */
+   private boolean isUnchanged(String key, Object o) {
+      Object old;
+      synchronized (this) { old = objects.get(key); }
+      if (o == old) return false;
+      return o.equals(old);
+
+      // structures compare field by field, and most of the other
+      // table objects don't define equals, so they always look changed.
+      // that's fine, the point is to catch the frequent status updates
+      // that set a field to the value it already has.
+      //
+      // the same instance means the caller changed a shared snapshot
+      // object in place.  then the table object has changed too, and
+      // comparing tells us nothing, so write it and notify as before.
    }
 
    /**
@@ -438,6 +764,167 @@ public class Table {
       if (lock != a_lock) fail("e13",key);
 
       locks.remove(key); // ignore result
+
+      reportUnlock(key,lock);
+   }
+
+// --- transactions ---
+
+   // these are the pieces of insert, update, and delete,
+   // broken apart so that Transaction can do each step
+   // for all the objects before going on to the next.
+   //
+   // once a table is attached to a log, insert, update, and delete
+   // are just one-change transactions, so that every change goes
+   // through the log.  a direct storage write could land underneath
+   // a logged change to the same object that hasn't been written yet,
+   // and then the checkpoint, or the redo after a crash, would undo it.
+   //
+   // with a log, apply doesn't touch the storage, it just marks the key
+   // dirty, and the checkpoint writes out whatever is current then.
+
+   /**
+    * Attach the table to a transaction log, and redo its part
+    * of any transaction that was interrupted by a crash.
+    * Call this right after construction, before anyone uses the table.
+    *
+    * @param name A name that identifies the table in the log.
+    */
+   public void attach(TransactionLog log, String name) throws TableException {
+      this.log = log;
+      this.name = name;
+      log.recover(name,this); // also registers us for checkpoints
+   }
+
+   TransactionLog getLog() { return log; }
+   String getName() { return name; }
+   TableAdapter getAdapter() { return adapter; }
+
+   String getKey(Object o) { return adapter.getKey(o); }
+   Object copy(Object o) { return adapter.copy(o); }
+
+   synchronized void check(Transaction.Op op) throws TableException {
+      String key = op.key;
+
+      if (op.type == Transaction.OP_INSERT) {
+         if (locks.get(key) != op.lock) fail("e3",key); // reservation lost, shouldn't happen
+         return;
+      }
+
+      boolean isDelete = (op.type == Transaction.OP_DELETE);
+
+      if ( ! objects.containsKey(key) ) fail(isDelete ? "e4" : "e8",key);
+
+      Object lock = locks.get(key);
+      if (lock == null) fail(isDelete ? "e5a" : "e9",key);
+      if (lock != op.lock) fail(isDelete ? "e5b" : "e10",key);
+   }
+
+   void checkUnchanged(Transaction.Op op) {
+      op.unchanged = (op.type == Transaction.OP_UPDATE && isUnchanged(op.key,op.o));
+   }
+
+   void store(Transaction.Op op) throws IOException {
+      if (op.unchanged) return;
+
+      if (op.type == Transaction.OP_DELETE) {
+         storage.delete(op.key);
+      } else {
+         storage.store(op.key,op.o,adapter);
+      }
+   }
+
+   /**
+    * Put the storage back the way the table still has it.
+    */
+   void undo(Transaction.Op op) throws IOException {
+      Object o;
+      synchronized (this) { o = objects.get(op.key); }
+
+      if (o == null) {
+         storage.delete(op.key);
+      } else {
+         storage.store(op.key,o,adapter);
+      }
+   }
+
+   synchronized void apply(Transaction.Op op) {
+      String key = op.key;
+
+      if (op.unchanged) return;
+
+      if (log != null && ! dirty.containsKey(key)) {
+         dirty.put(key,Boolean.valueOf(op.type != Transaction.OP_INSERT));
+         // the first change tells whether the storage has the object
+      }
+
+      if (op.type == Transaction.OP_DELETE) {
+         objects.remove(key); // ignore result
+         locks.remove(key); // ignore result
+
+         reportDelete(key);
+      } else {
+         objects.put(key,op.o); // ignore result, op.o is already a private copy
+
+         if (op.type == Transaction.OP_INSERT) reportInsert(op.o); else reportUpdate(op.o);
+      }
+   }
+
+   /**
+    * Redo a change from the transaction log.
+    * There are no listeners yet, so there's nothing to report.
+    */
+   void redo(String key, int type, byte[] data) throws IOException, ValidationException {
+      if (type == Transaction.OP_DELETE) {
+         if (exists(key)) storage.delete(key);
+         synchronized (this) { objects.remove(key); } // ignore result
+      } else {
+         Object o = adapter.load(new ByteArrayInputStream(data));
+         storage.store(key,o,adapter);
+         synchronized (this) { objects.put(key,o); } // ignore result
+      }
+   }
+
+   /**
+    * Write the current version of every object that has changed
+    * since the last checkpoint.  This should be called only by
+    * {@link TransactionLog}, while no commits are in progress.
+    *
+    * @return True if everything was written.
+    */
+   boolean checkpoint() {
+      HashMap keys;
+      synchronized (this) {
+         if (dirty.isEmpty()) return true;
+         keys = dirty;
+         dirty = new HashMap();
+      }
+
+      boolean ok = true;
+
+      Iterator i = keys.entrySet().iterator();
+      while (i.hasNext()) {
+         Map.Entry entry = (Map.Entry) i.next();
+         String key = (String) entry.getKey();
+
+         Object o;
+         synchronized (this) { o = objects.get(key); }
+
+         try {
+            if (o != null) {
+               storage.store(key,o,adapter);
+            } else if (((Boolean) entry.getValue()).booleanValue()) {
+               storage.delete(key);
+            }
+            // else inserted and deleted since the last checkpoint
+         } catch (IOException e) {
+            Log.log(Level.SEVERE,this,"e23",new Object[] { key },e);
+            synchronized (this) { dirty.put(key,entry.getValue()); } // try again next time
+            ok = false;
+         }
+      }
+
+      return ok;
    }
 
 // --- get and select ---
@@ -484,6 +971,38 @@ public class Table {
       // copy the object so that nobody can hold a reference to it
    }
 
+   /**
+    * Get an object in the table for reading only.
+    */
+   public synchronized Object getSnapshot(Object o) throws TableException {
+      return getSnapshot(adapter.getKey(o));
+   }
+
+   /**
+    * Get an object in the table for reading only.
+    * If the table is shared, this is the same instance that all the
+    * listeners and views see, so it must not be modified; otherwise
+    * it's a copy, same as {@link #get(String) get}.
+    */
+   public synchronized Object getSnapshot(String key) throws TableException {
+      Object o = objects.get(key);
+      if (o == null) fail("e14",key);
+
+      return shareAdapter.copy(o);
+   }
+
+   /**
+    * Test whether an object in the table passes a selector,
+    * without making a copy of it.  The selector sees the table's
+    * own instance, so it must not modify or hold on to it.
+    *
+    * @return False if the object doesn't exist.
+    */
+   public synchronized boolean matches(String key, Selector selector) {
+      Object o = objects.get(key);
+      return (o != null && selector.select(o));
+   }
+
    /**
     * Select a subset of the objects in the table.
     *
@@ -500,23 +1019,71 @@ public class Table {
     *                 that the view contents will change partway through.
     */
    public synchronized View select(Selector selector, Comparator comparator, boolean dynamic, boolean transfer) {
-      TableView view = new TableView(selector,comparator,adapter,objects.values());
+      return select(selector,comparator,dynamic,transfer,null);
+   }
+
+   /**
+    * Select a subset of the objects in the table, holding only projections of them.
+    * This is for big views that feed grids, where the grid columns only use
+    * a few fields; the full object can be fetched by key when it's needed.
+    *
+    * @param projector The projector, or null to hold full copies.
+    */
+   public synchronized View select(Selector selector, Comparator comparator, boolean dynamic, boolean transfer, Projector projector) {
+      TableView view = new TableView(selector,comparator,shareAdapter,projector,objects.values());
       if (dynamic) addListener( transfer ? view.transferrer() : view );
       return view;
    }
 
+   /**
+    * Create a work queue, which is a dynamic view that threads
+    * can wait on instead of polling.  See {@link WorkQueue}.
+    */
+   public synchronized WorkQueue queue(Selector selector, Comparator comparator) {
+      TableView view = new TableView(selector,comparator,shareAdapter,null,objects.values());
+      addListener(view);
+      WorkQueue queue = new WorkQueue(this,view);
+      queues.add(new WeakReference(queue));
+      return queue;
+   }
+
    public synchronized DerivedTable derive(Derivation derivation) {
-      DerivedTable derivedTable = new DerivedTable(derivation,adapter,objects.values());
+      DerivedTable derivedTable = new DerivedTable(derivation,shareAdapter,objects.values());
       addListener(derivedTable); // always dynamic, never transferred
       return derivedTable;
    }
 
    public synchronized Index createIndex(Accessor accessor) {
-      TableIndex index = new TableIndex(accessor,adapter,objects.values());
+      return createIndex(accessor,/* unique = */ true);
+   }
+
+   /**
+    * @param unique Whether the index values are unique.  A non-unique index
+    *               maps each value to a set of keys; use {@link Index#lookupAll(Object) lookupAll}.
+    */
+   public synchronized Index createIndex(Accessor accessor, boolean unique) {
+      TableIndex index = new TableIndex(accessor,shareAdapter,unique,objects.values());
       addListener(index); // always dynamic, never transferred
       return index;
    }
 
+// --- snapshot ---
+
+   /**
+    * Write a snapshot of the table contents, if the storage supports it.
+    * Call this at shutdown, after everything else has stopped using the table.
+    */
+   public synchronized void writeSnapshot() {
+      if ( ! (storage instanceof SnapshotStorage) ) return;
+
+      if ( ! locks.isEmpty() ) { // see note in SnapshotStorage
+         Log.log(Level.WARNING,this,"e22",new Object[] { storage.toString() });
+         return;
+      }
+
+      ((SnapshotStorage) storage).write(objects);
+   }
+
 // --- refresh ---
 
    public synchronized void refresh() {
@@ -9,6 +9,7 @@ import com.lifepics.neuron.meta.Accessor;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 
 /**
@@ -21,8 +22,9 @@ public class TableIndex implements Index, TableListener {
 
    private Accessor accessor;
    private TableAdapter adapter;
+   private boolean unique;
 
-   private HashMap indexToKey;
+   private HashMap indexToKey; // if not unique, index -> HashSet of keys
    private HashMap keyToIndex;
 
    private int suspendCount;
@@ -35,14 +37,17 @@ public class TableIndex implements Index, TableListener {
     *
     * @param accessor The accessor that retrieves the index value.
     *                 Null values are not indexed.
-    *                 If the values aren't unique, only the most recent entry will be kept (not recommended).
     * @param adapter The table adapter, used only to get keys for objects.
+    * @param unique Whether the index values are unique.  If they're not,
+    *               and the index was created unique anyway, only the most
+    *               recent entry will be kept (not recommended).
     * @param tableObjects The objects in the table, presented as a collection
     *                     which we trust the index not to modify or hold.
     */
-   TableIndex(Accessor accessor, TableAdapter adapter, Collection tableObjects) {
+   TableIndex(Accessor accessor, TableAdapter adapter, boolean unique, Collection tableObjects) {
       this.accessor = accessor;
       this.adapter = adapter;
+      this.unique = unique;
 
       indexToKey = new HashMap();
       keyToIndex = new HashMap();
@@ -60,7 +65,26 @@ public class TableIndex implements Index, TableListener {
     * Look up the primary key from an index value.
     */
    public synchronized String lookup(Object index) {
-      return (String) indexToKey.get(index);
+      if (unique) return (String) indexToKey.get(index);
+
+      HashSet set = (HashSet) indexToKey.get(index);
+      return (set == null) ? null : (String) set.iterator().next();
+      // sets are never left empty, see remove
+   }
+
+   /**
+    * Look up all the primary keys that have an index value.
+    *
+    * @return The keys, in no particular order, or an empty array.
+    */
+   public synchronized String[] lookupAll(Object index) {
+      if (unique) {
+         String key = (String) indexToKey.get(index);
+         return (key == null) ? new String[0] : new String[] { key };
+      }
+
+      HashSet set = (HashSet) indexToKey.get(index);
+      return (set == null) ? new String[0] : (String[]) set.toArray(new String[set.size()]);
    }
 
    /**
@@ -93,6 +117,8 @@ public class TableIndex implements Index, TableListener {
     * Add a bond, breaking any existing ones on either side.
     */
    private void add(Object index, String key) {
+      if ( ! unique ) { addMulti(index,key); return; }
+
       Object keyOld = indexToKey.put(index,key);
       if (keyOld != null) keyToIndex.remove(keyOld);
       Object indexOld = keyToIndex.put(key,index);
@@ -104,9 +130,34 @@ public class TableIndex implements Index, TableListener {
     */
    private void remove(String key) {
       Object index = keyToIndex.remove(key);
-      if (index != null) indexToKey.remove(index);
-      // else the index value was null,
+      if (index == null) return;
+      // the index value was null,
       // or we had a collision of index values
+
+      if (unique) indexToKey.remove(index); else removeMulti(index,key);
+   }
+
+   // in the non-unique case, the only bond to break is the one
+   // from the key to its old index value
+
+   private void addMulti(Object index, String key) {
+      Object indexOld = keyToIndex.put(key,index);
+      if (indexOld != null) removeMulti(indexOld,key);
+
+      HashSet set = (HashSet) indexToKey.get(index);
+      if (set == null) {
+         set = new HashSet();
+         indexToKey.put(index,set);
+      }
+      set.add(key);
+   }
+
+   private void removeMulti(Object index, String key) {
+      HashSet set = (HashSet) indexToKey.get(index);
+      if (set == null) return; // shouldn't happen
+
+      set.remove(key);
+      if (set.isEmpty()) indexToKey.remove(index);
    }
 
    public synchronized void reportInsert(Object o) {
@@ -128,7 +179,8 @@ public class TableIndex implements Index, TableListener {
       } else {
          remove(key);
       }
-      // academic since we don't change index values, but let's do it right
+      // academic for unique indexes since we don't change those values,
+      // but non-unique ones are often on fields that do change
    }
 
    public synchronized void reportDelete(String key) {
@@ -14,6 +14,7 @@ public interface TableListener {
     * Report that an object has been inserted.
     *
     * @param o A copy of the object that you can keep if you want.
+    *          If the table is shared, it's a snapshot, don't modify it.
     */
    void reportInsert(Object o);
 
@@ -23,6 +24,7 @@ public interface TableListener {
     * that's how you can find the old object.
     *
     * @param o A copy of the object that you can keep if you want.
+    *          If the table is shared, it's a snapshot, don't modify it.
     */
    void reportUpdate(Object o);
 
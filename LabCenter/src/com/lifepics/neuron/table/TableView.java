@@ -4,6 +4,10 @@
 
 package com.lifepics.neuron.table;
 
+import com.lifepics.neuron.meta.Accessor;
+import com.lifepics.neuron.meta.CompoundComparator;
+import com.lifepics.neuron.meta.FieldComparator;
+import com.lifepics.neuron.meta.NaturalComparator;
 import com.lifepics.neuron.meta.Selector;
 import com.lifepics.neuron.meta.SortUtil;
 
@@ -11,6 +15,7 @@ import java.lang.ref.WeakReference;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.ListIterator;
@@ -28,10 +33,12 @@ public class TableView implements View, TableListener {
 // --- fields ---
 
    private Selector selector;
-   private Comparator comparator;
+   private Comparator comparator; // with ties broken by key, see breakTies
    private TableAdapter adapter;
+   private Projector projector; // nullable
 
    private Vector objects;
+   private HashMap index; // key -> object in view
    private LinkedList listeners;
 
    private int suspendCount;
@@ -45,15 +52,18 @@ public class TableView implements View, TableListener {
     *
     * @param adapter The table adapter, used only to get keys for objects,
     *                and to copy them during initialization.
+    * @param projector The projector, or null to hold full copies.
     * @param tableObjects The objects in the table, presented as a collection
     *                     which we trust the view not to modify or hold.
     */
-   TableView(Selector selector, Comparator comparator, TableAdapter adapter, Collection tableObjects) {
+   TableView(Selector selector, Comparator comparator, TableAdapter adapter, Projector projector, Collection tableObjects) {
       this.selector = selector;
-      this.comparator = comparator;
       this.adapter = adapter;
+      this.comparator = breakTies(comparator);
+      this.projector = projector;
 
       objects = new Vector();
+      index = new HashMap();
       listeners = new LinkedList();
 
       suspendCount = 0;
@@ -75,13 +85,25 @@ public class TableView implements View, TableListener {
          // that saves us from making and discarding a lot of copies.
 
          if (selector.select(o)) {
-            objects.add(adapter.copy(o)); // ignore result, always true
+            Object copy = project(o,/* isCopy = */ false);
+            objects.add(copy); // ignore result, always true
+            index.put(adapter.getKey(copy),copy);
          }
       }
 
       Collections.sort(objects,comparator);
    }
 
+   // with a projector, the view holds only lightweight copies,
+   // which are made straight from the master objects at load time
+   // and from the notification copies after that.  the selector
+   // always sees the full object, the comparator sees the projection.
+
+   private Object project(Object o, boolean isCopy) {
+      if (projector != null) return projector.project(o);
+      return isCopy ? o : adapter.copy(o);
+   }
+
    TableListener transferrer() {
       transferrer = new TableListenerUtil.Transferrer(this);
       return transferrer;
@@ -196,8 +218,8 @@ public class TableView implements View, TableListener {
     * Sort the view array.
     */
    public synchronized void sort(Comparator comparator) {
-      this.comparator = comparator;
-      Collections.sort(objects,comparator);
+      this.comparator = breakTies(comparator);
+      Collections.sort(objects,this.comparator);
       reportChange();
    }
 
@@ -226,20 +248,64 @@ public class TableView implements View, TableListener {
    // would be able to slip through after suspension, or you'd get deadlocks.
    // what I have here is not beautiful, but it works.
 
+   /**
+    * Test whether the view contains an object.
+    * This should be called only by {@link WorkQueue}.
+    */
+   synchronized boolean contains(String key) {
+      return index.containsKey(key);
+   }
+
 // --- implementation of TableListener ---
 
-   private int remove(String key) {
+   // the index tells us which object in the view has a given key,
+   // and since the view is sorted, we can then find the object
+   // by binary search.  the caller's comparator can have long runs
+   // of ties, thousands of objects with the same status, say, and
+   // looking through a run for the exact object is a linear scan.
+   // so we break ties by key, which the caller can't tell apart from
+   // the arbitrary order ties had before, and then no two objects are
+   // equal, and the search lands right on the one we want.
+   //
+   // the view isn't always perfectly sorted, though -- a computed field
+   // can change (see reportRefresh) without anything being moved.
+   // so, if the search comes up empty, fall back to a linear scan.
+
+   private Comparator breakTies(Comparator comparator) {
+      Accessor keyAccessor = new Accessor() {
+         public Class getFieldClass() { return String.class; }
+         public Object get(Object o) { return adapter.getKey(o); }
+      };
+      return new CompoundComparator(comparator,new FieldComparator(keyAccessor,new NaturalComparator()));
+   }
+
+   private int find(Object o) {
+      int k = Collections.binarySearch(objects,o,comparator);
+      if (k >= 0 && objects.get(k) == o) return k;
+
       for (int i=0; i<objects.size(); i++) {
-         if (adapter.getKey(objects.get(i)).equals(key)) {
-            objects.removeElementAt(i);
-            return i;
-         }
+         if (objects.get(i) == o) return i;
       }
-      return -1;
+      return -1; // shouldn't happen
+   }
+
+   private boolean fits(int i, Object o) {
+      return (    i == 0                  || comparator.compare(objects.get(i-1),o) <= 0 )
+          && (    i == objects.size()-1   || comparator.compare(o,objects.get(i+1)) <= 0 );
+   }
+
+   private int remove(String key) {
+      Object old = index.remove(key);
+      if (old == null) return -1;
+
+      int i = find(old);
+      if (i != -1) objects.removeElementAt(i);
+      return i;
    }
 
    private int add(Object o) {
-      if ( ! selector.select(o) ) return -1;
+      // o is already projected, and selected
+      index.put(adapter.getKey(o),o);
       return SortUtil.addInSortedOrder(objects,o,comparator);
    }
 
@@ -249,8 +315,11 @@ public class TableView implements View, TableListener {
    public synchronized void reportInsert(Object o) {
       if (suspendCount > 0) { accumulator.reportInsert(o); return; }
 
+      if ( ! selector.select(o) ) return;
+
+      o = project(o,/* isCopy = */ true);
       int j = add(o);
-      if (j != -1) reportInsert(j,o);
+      reportInsert(j,o);
    }
 
    /**
@@ -259,13 +328,28 @@ public class TableView implements View, TableListener {
    public synchronized void reportUpdate(Object o) {
       if (suspendCount > 0) { accumulator.reportUpdate(o); return; }
 
-      // we could optimize this to avoid shifting the array
-      // in the special case where the object doesn't move,
-      // but that's just asking for bugs.
-      // also it is a premature optimization.
+      String key = adapter.getKey(o);
 
-      int i = remove(adapter.getKey(o));
-      int j = add(o);
+      // most updates are status changes that don't affect the sort order,
+      // so if the object is still selected and still fits between
+      // its neighbors, just replace it without shifting the array.
+
+      boolean select = selector.select(o);
+      if (select) o = project(o,/* isCopy = */ true);
+
+      Object old = index.get(key);
+      if (old != null && select) {
+         int k = find(old);
+         if (k != -1 && fits(k,o)) {
+            objects.set(k,o);
+            index.put(key,o);
+            reportUpdate(k,k,o);
+            return;
+         }
+      }
+
+      int i = remove(key);
+      int j = select ? add(o) : -1;
       if (i != -1) {
          if (j != -1) reportUpdate(i,j,o);
          else         reportDelete(i);
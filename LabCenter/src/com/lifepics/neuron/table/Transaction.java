@@ -0,0 +1,325 @@
+/*
+ * Transaction.java
+ */
+
+package com.lifepics.neuron.table;
+
+import com.lifepics.neuron.core.Log;
+import com.lifepics.neuron.core.Text;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.logging.Level;
+
+/**
+ * A class that collects changes to one or more tables
+ * and then commits them all at once.<p>
+ *
+ * The changes are staged with the same locks that the ordinary
+ * table functions use, and nothing is visible until {@link #commit() commit}.
+ * If the tables are attached to a {@link TransactionLog}, the commit
+ * is atomic even across a crash; otherwise it's atomic only
+ * as far as the storage writes don't fail.  The tables in one
+ * transaction must either all use the same log or all use none.
+ */
+
+public class Transaction {
+
+   // with a log, the commit goes like this.
+   //
+   // (1) check that all the locks are still held
+   // (2) append the whole transaction to the log, as one record
+   // (3) put the objects into the tables and send notifications
+   //
+   // and that's all, the storage is written later by the checkpoint,
+   // see TransactionLog.  so a commit is one file write, and when
+   // several threads commit at once, their records share that write.
+   // if the append fails, nothing has happened yet.
+   //
+   // without a log, (2) is instead to write the objects to their
+   // storage.  if one of those writes fails, we undo the writes that
+   // already happened by writing back the table contents, which haven't
+   // been touched yet.  only if that fails too is anything left half done.
+   //
+   // staging the same object twice just replaces the staged copy,
+   // so an object that's touched for every job in a loop is
+   // written once per commit instead of once per job.
+   // an update that doesn't change anything isn't written at all.
+
+// --- constants ---
+
+   static final int OP_INSERT = 0;
+   static final int OP_UPDATE = 1;
+   static final int OP_DELETE = 2;
+
+// --- fields ---
+
+   private LinkedList ops;
+   private HashMap opMap; // table -> (key -> Op)
+   private boolean done;
+
+// --- helper classes ---
+
+   static class Op {
+      public Table table;
+      public String key;
+      public int type;
+      public Object o; // private copy, null for delete
+      public Object lock;
+      public boolean unchanged; // set during commit if the update turns out to be a no-op
+   }
+
+// --- construction ---
+
+   public Transaction() {
+      ops = new LinkedList();
+      opMap = new HashMap();
+      done = false;
+   }
+
+// --- staging ---
+
+   private Op find(Table table, String key) {
+      HashMap map = (HashMap) opMap.get(table);
+      return (map == null) ? null : (Op) map.get(key);
+   }
+
+   private void add(Op op) {
+      HashMap map = (HashMap) opMap.get(op.table);
+      if (map == null) {
+         map = new HashMap();
+         opMap.put(op.table,map);
+      }
+      map.put(op.key,op);
+      ops.add(op);
+   }
+
+   private void checkNotDone() throws TableException {
+      if (done) throw new TableException(Text.get(this,"e1"));
+   }
+
+   /**
+    * Stage the insertion of an object.
+    * If auto-numbering is active, the object's key is assigned right away.
+    *
+    * @return A lock on the object, which is reserved now and
+    *         becomes a normal lock if the transaction commits.
+    */
+   public Object insert(Table table, Object o) throws TableException {
+      checkNotDone();
+
+      Object lock = table.reserve(o);
+
+      Op op = new Op();
+      op.table = table;
+      op.key = table.getKey(o);
+      op.type = OP_INSERT;
+      op.o = table.copy(o);
+      op.lock = lock;
+      add(op);
+
+      return lock;
+   }
+
+   /**
+    * Stage an update of an object.  (The object must be locked first.)
+    */
+   public void update(Table table, Object o, Object lock) throws TableException {
+      checkNotDone();
+
+      String key = table.getKey(o);
+
+      Op op = find(table,key);
+      if (op != null) {
+         if (op.type == OP_DELETE) throw new TableException(Text.get(this,"e2",new Object[] { key }));
+         if (op.lock != lock) throw new TableException(Text.get(this,"e3",new Object[] { key }));
+         op.o = table.copy(o); // an insert stays an insert
+         return;
+      }
+
+      op = new Op();
+      op.table = table;
+      op.key = key;
+      op.type = OP_UPDATE;
+      op.o = table.copy(o);
+      op.lock = lock;
+      table.check(op); // fail early if it's not going to work
+      add(op);
+   }
+
+   /**
+    * Stage the deletion of an object.  (The object must be locked first.)
+    */
+   public void delete(Table table, String key, Object lock) throws TableException {
+      checkNotDone();
+
+      Op op = find(table,key);
+      if (op != null) {
+         if (op.type != OP_UPDATE) throw new TableException(Text.get(this,"e2",new Object[] { key }));
+         if (op.lock != lock) throw new TableException(Text.get(this,"e3",new Object[] { key }));
+         op.type = OP_DELETE;
+         op.o = null;
+         return;
+      }
+
+      op = new Op();
+      op.table = table;
+      op.key = key;
+      op.type = OP_DELETE;
+      op.lock = lock;
+      table.check(op);
+      add(op);
+   }
+
+// --- commit ---
+
+   /**
+    * Abandon the staged changes, and release the reserved keys of any inserts.
+    * It's safe to call this after a commit, so it can go in a finally clause.
+    */
+   public void abort() {
+      if (done) return;
+      done = true;
+
+      unreserve();
+   }
+
+   private void unreserve() {
+      Iterator i = ops.iterator();
+      while (i.hasNext()) {
+         Op op = (Op) i.next();
+         if (op.type == OP_INSERT) op.table.unreserve(op.key);
+      }
+   }
+
+   /**
+    * Find the log that all the tables share, or null if none of them has one.
+    */
+   private TransactionLog getLog() throws TableException {
+      TransactionLog log = null;
+      boolean none = false;
+
+      Iterator i = ops.iterator();
+      while (i.hasNext()) {
+         Op op = (Op) i.next();
+         TransactionLog temp = op.table.getLog();
+         if (temp == null) none = true;
+         else if (log == null) log = temp;
+         else if (log != temp) throw new TableException(Text.get(this,"e7"));
+      }
+
+      if (log != null && none) throw new TableException(Text.get(this,"e7"));
+      // a table without the log would be written right away,
+      // and a crash could leave only half the transaction
+
+      return log;
+   }
+
+   /**
+    * Commit the staged changes.  The locks are not released.
+    */
+   public void commit() throws TableException {
+      checkNotDone();
+      done = true;
+
+      if (ops.isEmpty()) return;
+
+   // (1) check locks
+
+      TransactionLog log;
+      try {
+         Iterator i = ops.iterator();
+         while (i.hasNext()) {
+            Op op = (Op) i.next();
+            op.table.check(op);
+            op.table.checkUnchanged(op);
+         }
+         log = getLog();
+      } catch (TableException e) {
+         unreserve();
+         throw e;
+      }
+
+   // (2) write, and (3) apply
+
+      if (log != null) {
+         commit(log);
+      } else {
+         store();
+         apply();
+      }
+   }
+
+   private void commit(TransactionLog log) throws TableException {
+
+      byte[] record = null;
+      if (hasChanges()) {
+         try {
+            record = log.encode(ops); // do this before begin, no need to hold up checkpoints
+         } catch (IOException e) {
+            unreserve();
+            throw new TableException(Text.get(this,"e4"),e);
+         }
+      }
+
+      log.begin();
+      try {
+         if (record != null) {
+            try {
+               log.append(record);
+            } catch (IOException e) {
+               unreserve();
+               throw new TableException(Text.get(this,"e4"),e);
+            }
+         }
+         apply();
+      } finally {
+         log.end();
+      }
+   }
+
+   private boolean hasChanges() {
+      Iterator i = ops.iterator();
+      while (i.hasNext()) {
+         if ( ! ((Op) i.next()).unchanged ) return true;
+      }
+      return false;
+   }
+
+   private void apply() {
+      Iterator i = ops.iterator();
+      while (i.hasNext()) {
+         Op op = (Op) i.next();
+         op.table.apply(op);
+      }
+   }
+
+   private void store() throws TableException {
+      Op[] a = (Op[]) ops.toArray(new Op[ops.size()]);
+
+      for (int n=0; n<a.length; n++) {
+         try {
+            a[n].table.store(a[n]);
+         } catch (IOException e) {
+
+            // storage writes are atomic, so the failed one didn't happen,
+            // but the ones before it did, and need to be undone.
+
+            for (int k=n-1; k>=0; k--) {
+               if (a[k].unchanged) continue;
+               try {
+                  a[k].table.undo(a[k]);
+               } catch (IOException e2) {
+                  Log.log(Level.SEVERE,this,"e6",new Object[] { a[k].key },e2);
+               }
+            }
+
+            unreserve();
+            throw new TableException(Text.get(this,"e5",new Object[] { a[n].key }),e);
+         }
+      }
+   }
+
+}
@@ -0,0 +1,487 @@
+/*
+ * TransactionLog.java
+ */
+
+package com.lifepics.neuron.table;
+
+import com.lifepics.neuron.core.Log;
+import com.lifepics.neuron.core.Text;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.logging.Level;
+import java.util.zip.Adler32;
+
+/**
+ * A write-ahead log for the tables that take part in transactions.
+ * A commit only appends to the log; the objects are written to their
+ * storage later, at a checkpoint.  See {@link Transaction}.
+ */
+
+public class TransactionLog {
+
+   // how it works.
+   //
+   // a commit appends one record, holding the whole transaction, to the
+   // log, and then the changes go into the tables.  that's the only file
+   // write a commit has to wait for.  when several threads commit at the
+   // same time, the first one to get there writes everybody's records in
+   // a single write, and the others just wait for it.  that's the group
+   // commit part.
+   //
+   // the tables remember which objects have changed since they were last
+   // written to storage.  every so often, the checkpoint thread writes the
+   // current version of each changed object, so an object that changed ten
+   // times is written once, and then, since the storage has everything
+   // in the log, the log is cleared.  the checkpoint waits for commits
+   // that are partway through, and holds off new ones, so that there's
+   // never a record in the log that isn't in the tables yet.
+   //
+   // if we go down, the log has everything since the last checkpoint.
+   // at startup, each table redoes its part of every record, in order,
+   // and once all the tables have been attached, the log is cleared.
+   // a torn record at the end of the log was never committed, since the
+   // commit doesn't return until the write is done, so it's dropped,
+   // the same way JournalStorage drops one.
+   //
+   // like everything else here, the log isn't synced, we rely on the OS
+   // to get the data to disk, and on the checksums to catch anything
+   // that doesn't make it.
+   //
+   // the file is a header (magic, format) and then a sequence of records.
+   //
+   //    int    length of body
+   //    body   int count, then for each change UTF table name, UTF key,
+   //           int type, and except for deletes, int length and data
+   //    long   Adler32 checksum of body
+
+// --- constants ---
+
+   private static final int MAGIC  = 0x4C435458; // "LCTX"
+   private static final int FORMAT = 2; // format 1 held one transaction at a time
+
+   private static final int HEADER_SIZE = 8; // int + int
+   private static final int RECORD_OVERHEAD = 12; // int + long
+
+   private static final long CHECKPOINT_INTERVAL = 2000; // millis
+
+// --- fields ---
+
+   private File file;
+   private LinkedList entries; // entries to recover, or null
+   private LinkedList tables;  // attached tables, for checkpoints
+
+   private RandomAccessFile raf; // open while the log has records, else null
+   private long size;            // length of the good part of the file
+
+   private LinkedList queue;     // requests waiting to be written
+   private boolean writing;      // whether some thread is writing the queue
+   private int active;           // number of commits between begin and end
+   private boolean checkpointing;
+   private ThreadLocal nesting;  // Integer, depth of begin calls on this thread
+
+   private Object timer;         // for the checkpoint thread to wait on
+   private boolean stopping;     // guarded by timer
+
+// --- helper classes ---
+
+   private static class Entry {
+      public String name;
+      public String key;
+      public int type;
+      public byte[] data; // null for delete
+   }
+
+   private static class Request {
+      public byte[] record;
+      public boolean done;
+      public IOException error;
+      public Request(byte[] record) { this.record = record; }
+   }
+
+// --- construction ---
+
+   public TransactionLog(File file) {
+      this.file = file;
+
+      tables = new LinkedList();
+      queue = new LinkedList();
+      nesting = new ThreadLocal();
+      timer = new Object();
+
+      if ( ! file.exists() ) return;
+
+      try {
+         entries = read(file);
+         if (entries.size() > 0) Log.log(Level.WARNING,this,"i1",new Object[] { new Integer(entries.size()) });
+      } catch (Exception e) {
+         entries = null;
+         Log.log(Level.SEVERE,this,"e1",e);
+         clear();
+         // a torn record at the end isn't an exception,
+         // so this is real damage, and there's nothing to do but go on.
+      }
+   }
+
+   private LinkedList read(File file) throws IOException {
+      LinkedList list = new LinkedList();
+
+      long length = file.length();
+      if (length < HEADER_SIZE) return list; // torn header, nothing was ever committed
+
+      DataInputStream data = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try {
+
+         if (data.readInt() != MAGIC || data.readInt() != FORMAT) throw new IOException(Text.get(TransactionLog.class,"e2"));
+
+         long position = HEADER_SIZE;
+         while (position < length) {
+
+            int len = (length - position >= 4) ? data.readInt() : -1;
+            if (len < 0 || len > length - position - RECORD_OVERHEAD) break; // torn
+
+            byte[] body = new byte[len];
+            data.readFully(body);
+            long value = data.readLong();
+
+            Adler32 checksum = new Adler32();
+            checksum.update(body);
+            if (checksum.getValue() != value) break; // torn
+
+            readBody(body,list);
+            position += len + RECORD_OVERHEAD;
+         }
+
+         if (position < length) {
+            Log.log(Level.WARNING,this,"e5",new Object[] { new Long(length - position) });
+         }
+
+      } finally {
+         data.close();
+      }
+
+      return list;
+   }
+
+   private static void readBody(byte[] body, LinkedList list) throws IOException {
+      DataInputStream data = new DataInputStream(new ByteArrayInputStream(body));
+
+      int count = data.readInt();
+      for (int i=0; i<count; i++) {
+         Entry entry = new Entry();
+         entry.name = data.readUTF();
+         entry.key = data.readUTF();
+         entry.type = data.readInt();
+         if (entry.type != Transaction.OP_DELETE) {
+            entry.data = new byte[data.readInt()];
+            data.readFully(entry.data);
+         }
+         list.add(entry);
+      }
+   }
+
+// --- recovery ---
+
+   /**
+    * Redo one table's part of the logged transactions, if there are any,
+    * and remember the table for checkpoints.
+    * This should be called only by {@link Table}.
+    */
+   synchronized void recover(String name, Table table) throws TableException {
+      tables.add(table);
+
+      if (entries == null) return;
+
+      Iterator i = entries.iterator();
+      while (i.hasNext()) {
+         Entry entry = (Entry) i.next();
+         if ( ! entry.name.equals(name) ) continue;
+
+         try {
+            table.redo(entry.key,entry.type,entry.data);
+         } catch (Exception e) {
+            throw new TableException(Text.get(this,"e3",new Object[] { name, entry.key }),e);
+         }
+         Log.log(Level.INFO,this,"i2",new Object[] { name, entry.key });
+      }
+   }
+
+   /**
+    * Clear the log once all the tables have been attached,
+    * and start taking checkpoints.
+    */
+   public void recoverDone() {
+      synchronized (this) {
+         entries = null;
+         clear();
+      }
+
+      Thread thread = new Thread(new Runnable() { public void run() { runCheckpoints(); } },Text.get(this,"s1"));
+      thread.setDaemon(true);
+      thread.start();
+   }
+
+   /**
+    * Stop taking checkpoints, and take one last one,
+    * so that the storage is up to date when we exit.
+    * Call this after everything else has stopped using the tables.
+    */
+   public void close() {
+      synchronized (timer) {
+         stopping = true;
+         timer.notify();
+      }
+      checkpoint();
+   }
+
+// --- commit ---
+
+   /**
+    * Start a commit.  Checkpoints wait until every commit that's
+    * started has ended, so call {@link #end() end} in a finally clause.
+    * This should be called only by {@link Transaction}.
+    */
+   void begin() {
+      Integer depth = (Integer) nesting.get();
+
+      synchronized (this) {
+         if (depth == null) { // see below
+            while (checkpointing) waitQuietly();
+         }
+         active++;
+      }
+
+      nesting.set(new Integer((depth == null) ? 1 : depth.intValue() + 1));
+
+      // a listener that hears about one commit could commit something
+      // else on the same thread.  if a checkpoint had started in between,
+      // waiting for it would be a deadlock, since it's waiting for us.
+   }
+
+   void end() {
+      Integer depth = (Integer) nesting.get();
+      nesting.set((depth.intValue() == 1) ? null : new Integer(depth.intValue() - 1));
+
+      synchronized (this) {
+         active--;
+         notifyAll();
+      }
+   }
+
+   /**
+    * Encode a transaction as a log record, leaving out the updates
+    * that don't change anything.
+    * This should be called only by {@link Transaction}.
+    */
+   byte[] encode(LinkedList ops) throws IOException {
+
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      DataOutputStream data = new DataOutputStream(body);
+
+      int count = 0;
+      Iterator i = ops.iterator();
+      while (i.hasNext()) {
+         if ( ! ((Transaction.Op) i.next()).unchanged ) count++;
+      }
+      data.writeInt(count);
+
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+      i = ops.iterator();
+      while (i.hasNext()) {
+         Transaction.Op op = (Transaction.Op) i.next();
+         if (op.unchanged) continue;
+
+         data.writeUTF(op.table.getName());
+         data.writeUTF(op.key);
+         data.writeInt(op.type);
+         if (op.type != Transaction.OP_DELETE) {
+            buffer.reset();
+            op.table.getAdapter().store(buffer,op.o);
+            data.writeInt(buffer.size());
+            buffer.writeTo(data);
+         }
+      }
+
+      data.flush();
+      byte[] b = body.toByteArray();
+
+      Adler32 checksum = new Adler32();
+      checksum.update(b);
+
+      ByteArrayOutputStream record = new ByteArrayOutputStream(b.length + RECORD_OVERHEAD);
+      data = new DataOutputStream(record);
+      data.writeInt(b.length);
+      data.write(b);
+      data.writeLong(checksum.getValue());
+      data.flush();
+      return record.toByteArray();
+   }
+
+   /**
+    * Append a record to the log, and don't return until it's written.
+    * This has to be called between {@link #begin() begin} and {@link #end() end}.
+    * This should be called only by {@link Transaction}.
+    */
+   void append(byte[] record) throws IOException {
+      Request request = new Request(record);
+      LinkedList batch;
+
+      synchronized (this) {
+         queue.add(request);
+
+         while ( ! request.done && writing ) waitQuietly();
+         if (request.done) {
+            if (request.error != null) throw request.error;
+            return;
+         }
+
+         // nobody is writing, so we write everything that's queued,
+         // including our own request.
+
+         writing = true;
+         batch = queue;
+         queue = new LinkedList();
+      }
+
+      IOException error = null;
+      try {
+         write(batch);
+      } catch (IOException e) {
+         error = e;
+      }
+
+      synchronized (this) {
+         Iterator i = batch.iterator();
+         while (i.hasNext()) {
+            Request r = (Request) i.next();
+            r.done = true;
+            r.error = error;
+         }
+         writing = false;
+         notifyAll();
+      }
+
+      if (error != null) throw error;
+   }
+
+   /**
+    * Write a batch of requests in one write.  Only one thread at a time
+    * gets here, and never during a checkpoint, so no lock is needed.
+    */
+   private void write(LinkedList batch) throws IOException {
+
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      Iterator i = batch.iterator();
+      while (i.hasNext()) {
+         buffer.write(((Request) i.next()).record);
+      }
+      byte[] b = buffer.toByteArray();
+
+      if (raf == null) {
+         raf = new RandomAccessFile(file,"rw");
+         raf.setLength(0);
+         raf.writeInt(MAGIC);
+         raf.writeInt(FORMAT);
+         size = HEADER_SIZE;
+      }
+
+      try {
+         raf.seek(size);
+         raf.write(b);
+         size += b.length;
+      } catch (IOException e) {
+         try {
+            raf.setLength(size);
+         } catch (IOException e2) {
+            // ignore, the next write goes at the same place anyway
+         }
+         throw e;
+      }
+      // if a write fails partway, the next one goes where it started,
+      // so that nothing good ever ends up after a torn record.
+   }
+
+// --- checkpoint ---
+
+   /**
+    * Write every changed object to its storage, and if that works,
+    * clear the log.  If it doesn't, the objects stay changed,
+    * the log stays, and the next checkpoint tries again.
+    */
+   public void checkpoint() {
+      synchronized (this) {
+         while (checkpointing) waitQuietly(); // close could overlap the thread
+         checkpointing = true;
+         while (active > 0) waitQuietly();
+      }
+      try {
+
+         boolean ok = true;
+         Iterator i = tables.iterator();
+         while (i.hasNext()) {
+            if ( ! ((Table) i.next()).checkpoint() ) ok = false;
+         }
+         if (ok) clear();
+
+      } finally {
+         synchronized (this) {
+            checkpointing = false;
+            notifyAll();
+         }
+      }
+   }
+
+   private void runCheckpoints() {
+      while (true) {
+         synchronized (timer) {
+            if ( ! stopping ) {
+               try {
+                  timer.wait(CHECKPOINT_INTERVAL);
+               } catch (InterruptedException e) {
+                  // won't happen
+               }
+            }
+            if (stopping) return; // close takes the last checkpoint
+         }
+         checkpoint();
+      }
+   }
+
+   /**
+    * Remove the log file.  The caller has to make sure that
+    * nobody is writing, and that nothing in the log is needed.
+    */
+   private void clear() {
+
+      if (raf != null) {
+         try {
+            raf.close();
+         } catch (IOException e) {
+            // ignore, we're about to delete it
+         }
+         raf = null;
+      }
+
+      if (file.exists() && ! file.delete()) Log.log(Level.SEVERE,this,"e4");
+      // if the delete fails, the next write truncates the file anyway
+   }
+
+   private void waitQuietly() {
+      try {
+         wait();
+      } catch (InterruptedException e) {
+         // won't happen
+      }
+   }
+
+}
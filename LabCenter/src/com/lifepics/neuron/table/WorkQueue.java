@@ -0,0 +1,177 @@
+/*
+ * WorkQueue.java
+ */
+
+package com.lifepics.neuron.table;
+
+import com.lifepics.neuron.meta.Selector;
+
+import java.util.Comparator;
+
+/**
+ * A dynamic view of a {@link Table} that threads can take work from.
+ * Instead of polling the view, a thread can wait on the queue,
+ * and it will be woken up as soon as an object arrives in the view
+ * or an object in the view is unlocked.
+ * To construct a queue, call {@link Table#queue(Selector,Comparator) Table.queue}.
+ */
+
+public class WorkQueue implements ViewListener {
+
+   // the design is a view to say which objects are candidates,
+   // plus notifications about unlocking, since being locked
+   // isn't a property of the object, so no selector can see it.
+   // but, rather than filter the locked objects out of the view, which
+   // would mean locking objects in the middle of notifications, we just
+   // keep a counter of interesting changes.  a thread reads the counter,
+   // tries to lock something, and if that doesn't work, waits until
+   // the counter moves.  so, no notification can slip through the gap
+   // between trying and waiting.
+   //
+   // one exception: when a thread polls an object and then turns it down,
+   // the unlock is its own doing and nothing has really changed.  if that
+   // moved the counter, the thread's next wait would return right away,
+   // and it would poll the same object again, forever.  so, objects that
+   // are turned down are released through the queue, which ignores the
+   // report for that one lock.
+   //
+   // the waiting is done on the queue object, which never holds its
+   // monitor while calling anything else, so it can be woken from inside
+   // the table and view monitors without any risk of deadlock.
+
+// --- fields ---
+
+   private Table table;
+   private TableView view;
+   private long stamp;
+   private Object releasing; // lock being released through the queue, see release
+
+// --- helper classes ---
+
+   public static class Item {
+      public Object lock;
+      public Object o; // latest copy
+   }
+
+// --- construction ---
+
+   /**
+    * A package-private constructor for use by {@link Table}.
+    *
+    * @param view A dynamic view of the table, not transferred.
+    */
+   WorkQueue(Table table, TableView view) {
+      this.table = table;
+      this.view = view;
+
+      stamp = 0;
+      releasing = null;
+
+      view.addListener(this);
+   }
+
+// --- methods ---
+
+   /**
+    * Get the view that the queue takes work from.
+    */
+   public View getView() {
+      return view;
+   }
+
+   /**
+    * Lock the first object in the view that isn't already locked.
+    *
+    * @return The lock and the latest copy of the object,
+    *         or null if every object in the view is locked.
+    */
+   public Item poll() {
+      view.suspend();
+      try {
+
+         for (int i=0; i<view.size(); i++) {
+            Object o = view.get(i);
+            Object lock = table.lockTry(o);
+            if (lock != null) {
+               try {
+                  Item item = new Item();
+                  item.lock = lock;
+                  item.o = table.get(o); // get latest copy
+                  return item;
+               } catch (TableException e) {
+                  // can't happen -- we locked the object, so it exists
+               }
+            }
+         }
+
+         return null; // no object available
+
+      } finally {
+         view.resume();
+      }
+   }
+
+   /**
+    * Release an object that was polled but isn't wanted after all.
+    * The unlock doesn't count as a change, so it doesn't end the next
+    * wait.  That's also true for any other thread waiting on the queue,
+    * but the object was unlocked before the poll and is unlocked again
+    * now, so those threads already had their chance at it.
+    */
+   public void release(Item item) throws TableException {
+      setReleasing(item.lock);
+      try {
+         table.release(item.o,item.lock);
+      } finally {
+         setReleasing(null);
+      }
+   }
+
+   private synchronized void setReleasing(Object lock) {
+      releasing = lock;
+   }
+
+   /**
+    * Get the current change count.  Call this <i>before</i> polling,
+    * and pass the result to {@link #await(long,long) await}.
+    */
+   public synchronized long getStamp() {
+      return stamp;
+   }
+
+   /**
+    * Wait until something changes that might make an object available,
+    * or until the timeout expires.  If anything has changed since the
+    * stamp was taken, return right away.
+    */
+   public synchronized void await(long stamp, long timeout) throws InterruptedException {
+      if (this.stamp == stamp) wait(timeout);
+   }
+
+   /**
+    * Wake up anyone waiting on the queue, for example to let a thread stop.
+    */
+   public synchronized void wake() {
+      stamp++;
+      notifyAll();
+   }
+
+   /**
+    * Report that an object has been unlocked.
+    * This should be called only by {@link Table}.
+    */
+   void reportUnlock(String key, Object lock) {
+      synchronized (this) {
+         if (lock == releasing) return;
+      }
+      if (view.contains(key)) wake();
+   }
+
+// --- implementation of ViewListener ---
+
+   public void reportInsert(int j, Object o) { wake(); }
+   public void reportUpdate(int i, int j, Object o) { wake(); }
+   public void reportDelete(int i) {}
+   public void reportChange() { wake(); }
+
+}
@@ -11,6 +11,7 @@ import com.lifepics.neuron.core.Text;
 import com.lifepics.neuron.table.Table;
 import com.lifepics.neuron.table.TableException;
 import com.lifepics.neuron.table.View;
+import com.lifepics.neuron.table.WorkQueue;
 
 import java.util.Comparator;
 import java.util.Date;
@@ -48,6 +49,7 @@ public abstract class EntityThread extends StoppableThread {
    private   long idlePollInterval; // or scanInterval, if scanFlag is set
    protected ThreadStatus threadStatus;
 
+   private   WorkQueue queue;
    private   View view;
    protected boolean doNonEntityFirst;
 
@@ -72,7 +74,8 @@ public abstract class EntityThread extends StoppableThread {
       this.idlePollInterval = idlePollInterval;
       this.threadStatus = threadStatus;
 
-      view = table.select(manipulator,comparator,true,false);
+      queue = table.queue(manipulator,comparator);
+      view = queue.getView();
       doNonEntityFirst = false;
       // doNonEntityFirst could easily be a constructor arg,
       // but I'll be lazy and just let subclasses set it directly.
@@ -109,6 +112,7 @@ public abstract class EntityThread extends StoppableThread {
    }
 
    protected void doStop() {
+      queue.wake(); // in case we're waiting
    }
 
 // --- main loop (scan) ---
@@ -169,60 +173,50 @@ public abstract class EntityThread extends StoppableThread {
 
    private void loopFind() throws Exception {
       while ( ! regulateIsStopping() ) {
+         long stamp = queue.getStamp(); // before looking, see WorkQueue
          if (doNonEntityFirst && hasNonEntity()) {
             if (doNonEntityTryCatch()) scanEntities();
          } else if (findEntity()) { // set entity, and lock if successful
             doEntityTryCatch();
          } else if ((!doNonEntityFirst) && hasNonEntity()) {
             if (doNonEntityTryCatch()) scanEntities();
-         } else {
-            sleepNice(idlePollInterval);
+         } else if ( ! isStopping() ) { // see note below
+            queue.await(stamp,idlePollInterval);
          }
       }
+
+      // the queue wakes us as soon as an entity arrives or is unlocked,
+      // but we still need the timeout for things that depend on time,
+      // like the non-entity work and entities that are pausing to retry.
+      //
+      // about the isStopping test: doStop wakes the queue, but if that
+      // happened before we took the stamp, the wake is already used up.
+      // stopSignal sets the stop flag in the same block where it calls doStop,
+      // so if the flag isn't set yet, the wake is still to come.
    }
 
    /**
     * Find (and lock) a suitable entity, if there is one.
     */
    protected boolean findEntity() {
-      view.suspend();
-      try {
 
-         for (int i=0; i<view.size(); i++) {
-            Object o = view.get(i);
-            lock = table.lockTry(o);
-            if (lock != null) {
-               try {
-                  entity = table.get(o); // get latest copy
-                  if (isLoopEndingEntity(entity)) { table.release(entity,lock); break; }
-                  return true;
-               } catch (TableException e) {
-                  // can't happen -- we locked the object, so it exists
-               }
-            }
-         }
+      WorkQueue.Item item = queue.poll();
+      if (item == null) { lock = null; return false; } // no entity available
 
-         return false; // no entity available
+      lock = item.lock;
+      entity = item.o;
 
-      } finally {
-         view.resume();
+      if (isLoopEndingEntity(entity)) {
+         try {
+            queue.release(item); // doesn't wake us, see WorkQueue
+         } catch (TableException e) {
+            // can't happen -- we have the lock
+         }
+         lock = null;
+         return false;
       }
 
-      // originally I wanted to make a non-polling system,
-      // by having some method that would pick an unlocked element
-      // of a query, or block until one was available.
-      // that sounds nifty, but it's difficult to come up with a design,
-      // not least because you have to lock an object while notifying
-      // (which produces more notifications before the first is complete)
-
-      // but, with that caveat, here's what I'd figured out ...
-      // (1) add lock and unlock notifications to TableListener
-      // (2) add another flag to select, telling whether to insert
-      //     another TableListenerUtil filter that would restrict to
-      //     unlocked objects. (you can't do that with a selector,
-      //     because being locked is not a property of the object)
-      // (3) if the view is empty, block, and get a notification
-      //     when a new element is inserted into the view.
+      return true;
    }
 
    /**
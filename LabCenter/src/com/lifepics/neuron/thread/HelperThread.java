@@ -0,0 +1,140 @@
+/*
+ * HelperThread.java
+ */
+
+package com.lifepics.neuron.thread;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * A thread that does part of the work of another {@link StoppableThread},
+ * so that the owner can have several blocking operations going at once.
+ * A helper counts as stopping whenever its owner is stopping; the owner
+ * keeps its helpers in a {@link Group} and passes the stop signal along
+ * from doStop, so that any stop actions run in the helpers too.
+ */
+
+public abstract class HelperThread extends StoppableThread {
+
+// --- fields ---
+
+   private StoppableThread owner;
+   private Exception exception; // read only after join
+
+// --- construction ---
+
+   public HelperThread(StoppableThread owner, String name) {
+      super(name);
+      this.owner = owner;
+   }
+
+// --- accessors ---
+
+   // this must not be synchronized.  the owner's doStop runs with the
+   // owner locked and then locks each helper to signal it, so a helper
+   // that held its own lock while waiting for the owner's would deadlock.
+
+   public boolean isStopping() {
+      return super.isStopping() || owner.isStopping();
+   }
+
+// --- subclass hook ---
+
+   /**
+    * Do the work.  An exception here doesn't get logged, it's passed
+    * back to the owner through {@link Group#join() Group.join}.
+    */
+   protected abstract void doHelp() throws Exception;
+
+// --- implementation of StoppableThread ---
+
+   protected void doInit() {
+   }
+
+   protected void doRun() {
+      try {
+         doHelp();
+      } catch (Exception e) {
+         exception = e;
+      }
+   }
+
+   protected void doExit() {
+   }
+
+   protected void doStop() {
+   }
+
+// --- group class ---
+
+   /**
+    * The set of helpers that an owner has running.  The functions should
+    * all be called from the owner thread, except {@link #stop() stop},
+    * which should be called from the owner's doStop.
+    */
+   public static class Group {
+
+      private StoppableThread owner;
+      private LinkedList helpers;
+
+      public Group(StoppableThread owner) {
+         this.owner = owner;
+         helpers = new LinkedList();
+      }
+
+      /**
+       * Start a helper, unless the owner is stopping.
+       *
+       * @return False if the owner is stopping.
+       */
+      public boolean start(HelperThread helper) {
+
+         synchronized (owner) { // same lock that doStop runs under
+            if (owner.isStopping()) return false;
+            helpers.add(helper);
+         }
+         // now if the owner stops, the helper will hear about it
+
+         helper.start();
+         return true;
+      }
+
+      public void stop() {
+         Iterator i = helpers.iterator();
+         while (i.hasNext()) {
+            ((HelperThread) i.next()).stopSignal();
+         }
+      }
+
+      /**
+       * Wait for all the helpers to finish, and clear the group.
+       *
+       * @return The first exception that a helper threw, or null.
+       */
+      public Exception join() {
+         Exception result = null;
+
+         Iterator i = helpers.iterator();
+         while (i.hasNext()) {
+            HelperThread helper = (HelperThread) i.next();
+            while (true) {
+               try {
+                  helper.join();
+                  break;
+               } catch (InterruptedException e) {
+                  // won't happen, but if it does, keep waiting
+               }
+            }
+            if (result == null) result = helper.exception;
+         }
+
+         synchronized (owner) {
+            helpers.clear();
+         }
+
+         return result;
+      }
+   }
+
+}
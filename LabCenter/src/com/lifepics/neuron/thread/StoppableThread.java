@@ -191,19 +191,7 @@ public abstract class StoppableThread extends Thread implements Stoppable {
     */
    public void stopNice(Frame owner) {
 
-      synchronized (this) {
-
-         if (stopped) return; // ignore all stop calls after the first
-
-         if (state == STATE_RUN && inited) {
-            if (stopAction != null) stopAction.run();
-            doStop();
-         }
-         // in all other states, the thread will exit by itself
-
-         stopped = true;
-         notify(); // in case we're sleeping
-      }
+      if ( ! stopSignal() ) return; // ignore all stop calls after the first
 
       // this can't be synchronized, the thread needs to acquire the lock to exit
       if (owner == null) {
@@ -220,6 +208,29 @@ public abstract class StoppableThread extends Thread implements Stoppable {
       stopNice(null);
    }
 
+   /**
+    * Tell the thread to stop, but don't wait for it.
+    * This is for a thread that has helpers, which it should signal
+    * from doStop and then join before it exits; see {@link HelperThread}.
+    *
+    * @return False if the thread had already been told to stop.
+    */
+   public synchronized boolean stopSignal() {
+
+      if (stopped) return false;
+
+      if (state == STATE_RUN && inited) {
+         if (stopAction != null) stopAction.run();
+         doStop();
+      }
+      // in all other states, the thread will exit by itself
+
+      stopped = true;
+      notify(); // in case we're sleeping
+
+      return true;
+   }
+
 // --- stop action ---
 
    // The deal here is, first you identify some scope in the code in which